@@ -236,8 +236,8 @@ Ext.define('MyApp.view.MathTraxView', {
                             flex: 1
                         });
                     }
-                    Ext.get('graph').dom.innerHTML = 
-                    "<embed id='svg' src='data/graph.svg' width='600' height='800' />";
+                    Ext.get('graph').dom.innerHTML = o.result.data.graph ?
+                    "<embed id='svg' src='" + o.result.data.graph + "' width='600' height='800' />" : "";
                 },
                 failure: function() {
                     Ext.Msg.alert('Error', 'Unable to load form data');
@@ -268,8 +268,8 @@ Ext.define('MyApp.view.MathTraxView', {
                         flex: 1
                     });
                 }
-                Ext.get('graph').dom.innerHTML = 
-                "<embed id='svg' src='data/graph.svg' width='600' height='800' />";
+                Ext.get('graph').dom.innerHTML = o.result.data.graph ?
+                "<embed id='svg' src='" + o.result.data.graph + "' width='600' height='800' />" : "";
             },
             failure: function() {
                 Ext.Msg.alert('Error', 'Unable to load form data');
@@ -1,14 +1,20 @@
 package com.benetech.mde.bean;
 
 public class EquationDescriptionFileDataBean extends EquationDescriptionBean{
-	private double[][] table;
+	private double[][] columnValues;
 	private String [] column;
-	public double[][] getTable() {
-		return table;
+	private int rowCount;
+
+	/**
+	 * The table is kept column by column, sharing the arrays of the parsed
+	 * data rather than copying them into rows.
+	 */
+	public double[][] getColumnValues() {
+		return columnValues;
 	}
 
-	public void setTable(double[][] table) {
-		this.table = table;
+	public void setColumnValues(double[][] columnValues) {
+		this.columnValues = columnValues;
 	}
 
 	public String[] getColumn() {
@@ -17,5 +23,13 @@ public class EquationDescriptionFileDataBean extends EquationDescriptionBean{
 
 	public void setColumn(String[] column) {
 		this.column = column;
-	}	
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public void setRowCount(int rowCount) {
+		this.rowCount = rowCount;
+	}
 }
@@ -5,6 +5,7 @@ import java.util.HashMap;
 public class EquationDescriptionParamsBean extends EquationDescriptionBean{
 	HashMap<String, String> params;
 	String svg;
+	String svgKey;
 	
 	public HashMap<String, String> getParams() {
 		return params;
@@ -21,4 +22,12 @@ public class EquationDescriptionParamsBean extends EquationDescriptionBean{
 	public void setSvg(String svg) {
 		this.svg = svg;
 	}
+
+	public String getSvgKey() {
+		return svgKey;
+	}
+
+	public void setSvgKey(String svgKey) {
+		this.svgKey = svgKey;
+	}
 }
@@ -0,0 +1,421 @@
+package com.benetech.mde.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.benetech.mde.util.WorkerPool;
+
+/**
+ * Moves the work of a request off the container's request thread onto a
+ * <code>WorkerPool</code> using a Servlet 3.0 <code>AsyncContext</code>, so
+ * that a burst of expensive equations cannot tie up every connector thread.
+ * <p>
+ * When the pool's queue is full the request is shed right away with 503 and
+ * a Retry-After header. Requests that are not async-capable (for example
+ * because a filter in front of the servlet is not) are run inline.
+ */
+abstract class AsyncWork {
+	public static final int RETRY_AFTER_SECONDS = 5;
+	public static final long DEFAULT_TIMEOUT_MILLIS = 60000L;
+
+	/**
+	 * The part of the request handling that runs on a worker thread.
+	 */
+	protected abstract void run(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException;
+
+	/**
+	 * Queues this work for the request and returns immediately.
+	 */
+	public void dispatch(HttpServletRequest request, HttpServletResponse response, WorkerPool workers)
+			throws ServletException, IOException {
+		if (!request.isAsyncSupported()) {
+			run(request, response);
+			return;
+		}
+		final AsyncContext context = request.startAsync(request, response);
+		// The worker writes through this guard. Whichever path finishes the
+		// response first holds the guard's lock while it writes and calls
+		// complete(), and every later write from the worker fails, so the
+		// worker never touches a response the container has recycled.
+		final GuardedResponse guarded = new GuardedResponse(response);
+		context.setTimeout(DEFAULT_TIMEOUT_MILLIS);
+		context.addListener(new AsyncListener() {
+			public void onTimeout(AsyncEvent event) throws IOException {
+				synchronized (guarded.lock) {
+					if (guarded.finish()) {
+						sendUnavailable((HttpServletResponse) event.getSuppliedResponse());
+						event.getAsyncContext().complete();
+					}
+				}
+			}
+
+			public void onError(AsyncEvent event) {
+				synchronized (guarded.lock) {
+					if (guarded.finish())
+						event.getAsyncContext().complete();
+				}
+			}
+
+			public void onComplete(AsyncEvent event) {
+			}
+
+			public void onStartAsync(AsyncEvent event) {
+			}
+		});
+		try {
+			workers.execute(new Runnable() {
+				public void run() {
+					try {
+						if (!guarded.isFinished())
+							AsyncWork.this.run((HttpServletRequest) context.getRequest(), guarded);
+					} catch (Throwable t) {
+						// A write after the timeout fails on purpose; that is
+						// not worth a stack trace.
+						if (!guarded.isFinished()) {
+							t.printStackTrace();
+							try {
+								if (!guarded.isCommitted())
+									guarded.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+							} catch (IOException e) {
+								e.printStackTrace();
+							}
+						}
+					} finally {
+						synchronized (guarded.lock) {
+							if (guarded.finish())
+								context.complete();
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			synchronized (guarded.lock) {
+				if (guarded.finish()) {
+					sendUnavailable(response);
+					context.complete();
+				}
+			}
+		}
+	}
+
+	private static void sendUnavailable(HttpServletResponse response) throws IOException {
+		if (response.isCommitted())
+			return;
+		response.setHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+		response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+	}
+
+	/**
+	 * The response the worker writes to. Every change to the underlying
+	 * response is made while holding <code>lock</code> and only before
+	 * <code>finish()</code>; after that it throws an
+	 * <code>IOException</code> (or an <code>IllegalStateException</code> for
+	 * the methods that cannot throw one) instead.
+	 */
+	private static class GuardedResponse extends HttpServletResponseWrapper {
+		final Object lock = new Object();
+		private volatile boolean finished = false;
+		private PrintWriter writer;
+		private ServletOutputStream stream;
+
+		GuardedResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		/**
+		 * Marks the response finished. Call while holding <code>lock</code>.
+		 * 
+		 * @return true if this call finished it, false if it already was.
+		 */
+		boolean finish() {
+			if (finished)
+				return false;
+			finished = true;
+			return true;
+		}
+
+		boolean isFinished() {
+			return finished;
+		}
+
+		private void checkOpen() throws IOException {
+			if (finished)
+				throw new IOException("The response has already been completed");
+		}
+
+		private void checkState() {
+			if (finished)
+				throw new IllegalStateException("The response has already been completed");
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			synchronized (lock) {
+				checkOpen();
+				if (writer == null) {
+					final PrintWriter out = super.getWriter();
+					writer = new PrintWriter(new Writer() {
+						@Override
+						public void write(char[] buf, int off, int len) throws IOException {
+							synchronized (lock) {
+								checkOpen();
+								out.write(buf, off, len);
+							}
+						}
+
+						@Override
+						public void write(String str, int off, int len) throws IOException {
+							synchronized (lock) {
+								checkOpen();
+								out.write(str, off, len);
+							}
+						}
+
+						@Override
+						public void flush() throws IOException {
+							synchronized (lock) {
+								checkOpen();
+								out.flush();
+							}
+						}
+
+						@Override
+						public void close() throws IOException {
+							synchronized (lock) {
+								checkOpen();
+								out.close();
+							}
+						}
+					});
+				}
+				return writer;
+			}
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			synchronized (lock) {
+				checkOpen();
+				if (stream == null) {
+					final ServletOutputStream out = super.getOutputStream();
+					stream = new ServletOutputStream() {
+						@Override
+						public void write(int b) throws IOException {
+							synchronized (lock) {
+								checkOpen();
+								out.write(b);
+							}
+						}
+
+						@Override
+						public void write(byte[] buf, int off, int len) throws IOException {
+							synchronized (lock) {
+								checkOpen();
+								out.write(buf, off, len);
+							}
+						}
+
+						@Override
+						public void flush() throws IOException {
+							synchronized (lock) {
+								checkOpen();
+								out.flush();
+							}
+						}
+
+						@Override
+						public void close() throws IOException {
+							synchronized (lock) {
+								checkOpen();
+								out.close();
+							}
+						}
+					};
+				}
+				return stream;
+			}
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			synchronized (lock) {
+				checkOpen();
+				super.sendError(sc, msg);
+			}
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			synchronized (lock) {
+				checkOpen();
+				super.sendError(sc);
+			}
+		}
+
+		@Override
+		public void sendRedirect(String location) throws IOException {
+			synchronized (lock) {
+				checkOpen();
+				super.sendRedirect(location);
+			}
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			synchronized (lock) {
+				checkOpen();
+				super.flushBuffer();
+			}
+		}
+
+		@Override
+		public boolean isCommitted() {
+			synchronized (lock) {
+				return finished || super.isCommitted();
+			}
+		}
+
+		@Override
+		public void addCookie(Cookie cookie) {
+			synchronized (lock) {
+				checkState();
+				super.addCookie(cookie);
+			}
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			synchronized (lock) {
+				checkState();
+				super.setStatus(sc);
+			}
+		}
+
+		@SuppressWarnings("deprecation")
+		@Override
+		public void setStatus(int sc, String sm) {
+			synchronized (lock) {
+				checkState();
+				super.setStatus(sc, sm);
+			}
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			synchronized (lock) {
+				checkState();
+				super.setHeader(name, value);
+			}
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			synchronized (lock) {
+				checkState();
+				super.addHeader(name, value);
+			}
+		}
+
+		@Override
+		public void setDateHeader(String name, long date) {
+			synchronized (lock) {
+				checkState();
+				super.setDateHeader(name, date);
+			}
+		}
+
+		@Override
+		public void addDateHeader(String name, long date) {
+			synchronized (lock) {
+				checkState();
+				super.addDateHeader(name, date);
+			}
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			synchronized (lock) {
+				checkState();
+				super.setIntHeader(name, value);
+			}
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			synchronized (lock) {
+				checkState();
+				super.addIntHeader(name, value);
+			}
+		}
+
+		@Override
+		public void setContentType(String type) {
+			synchronized (lock) {
+				checkState();
+				super.setContentType(type);
+			}
+		}
+
+		@Override
+		public void setCharacterEncoding(String charset) {
+			synchronized (lock) {
+				checkState();
+				super.setCharacterEncoding(charset);
+			}
+		}
+
+		@Override
+		public void setContentLength(int len) {
+			synchronized (lock) {
+				checkState();
+				super.setContentLength(len);
+			}
+		}
+
+		@Override
+		public void setLocale(Locale loc) {
+			synchronized (lock) {
+				checkState();
+				super.setLocale(loc);
+			}
+		}
+
+		@Override
+		public void setBufferSize(int size) {
+			synchronized (lock) {
+				checkState();
+				super.setBufferSize(size);
+			}
+		}
+
+		@Override
+		public void reset() {
+			synchronized (lock) {
+				checkState();
+				super.reset();
+			}
+		}
+
+		@Override
+		public void resetBuffer() {
+			synchronized (lock) {
+				checkState();
+				super.resetBuffer();
+			}
+		}
+	}
+}
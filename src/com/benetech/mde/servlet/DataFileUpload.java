@@ -3,7 +3,8 @@ package com.benetech.mde.servlet;
 import gov.nasa.ial.mde.solver.symbolic.AnalyzedData;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.Collection;
 import java.util.List;
 
@@ -17,16 +18,14 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.Part;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import com.benetech.mde.bean.EquationDescriptionBean;
 import com.benetech.mde.bean.EquationDescriptionFileDataBean;
-import com.benetech.mde.bean.JSONResponseBean;
+import com.benetech.mde.util.DataTableWriter;
 import com.benetech.mde.util.EquationUtil;
 
-@WebServlet("/DataFileUpload")
-@MultipartConfig(location="/", fileSizeThreshold=512*512, maxFileSize=512*512*5, maxRequestSize=512*512*5*5)
+@WebServlet(urlPatterns = "/DataFileUpload", asyncSupported = true)
+// Parts above the threshold spill to the container's own temp file for the
+// request, so heap use follows the parsed data, not the size of the upload.
+@MultipartConfig(fileSizeThreshold=64*1024, maxFileSize=512*512*5, maxRequestSize=512*512*5*5)
 public class DataFileUpload extends HttpServlet {
 	private static final long serialVersionUID = 2L;
 	
@@ -35,6 +34,14 @@ public class DataFileUpload extends HttpServlet {
 		// TODO Auto-generated constructor stub
 	}
 
+	@Override
+	public void init() throws ServletException {
+		super.init();
+		EquationUtil.initEnginePool(getServletContext().getInitParameter(EquationUtil.ENGINE_POOL_SIZE_PARAM));
+		EquationUtil.initRequestWorkers(getServletContext().getInitParameter(EquationUtil.WORKER_THREADS_PARAM),
+				getServletContext().getInitParameter(EquationUtil.WORKER_QUEUE_SIZE_PARAM));
+	}
+
 	@Override
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
 			throws ServletException, IOException {
@@ -46,26 +53,54 @@ public class DataFileUpload extends HttpServlet {
 	@Override
 	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
 			throws ServletException, IOException {
+		new AsyncWork() {
+			@Override
+			protected void run(HttpServletRequest req, HttpServletResponse resp)
+					throws ServletException, IOException {
+				describe(req, resp);
+			}
+		}.dispatch(req, resp, EquationUtil.getRequestWorkers());
+	}
+
+	private void describe(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
 	    resp.setHeader("Cache-Control", "no-cache");
 	    resp.setHeader("Pragma", "no-cache");
 		resp.setContentType("text/html");
-		PrintWriter out = resp.getWriter();
-		Collection<Part> parts = req.getParts();
-		for(Part part : parts) 
-			part.write("datafile");
-		//String filePath = this.getServletContext().getRealPath("datafile");
-		List<AnalyzedData> data = EquationUtil.getAnalyzedData("/datafile");
+		Part part = getDataPart(req.getParts());
+		List<AnalyzedData> data = null;
+		if(part != null){
+			Reader reader = new InputStreamReader(part.getInputStream(), "UTF-8");
+			try{
+				data = EquationUtil.getAnalyzedData(reader);
+			}finally{
+				reader.close();
+				part.delete();
+			}
+		}
+		if(data == null || data.isEmpty()){
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unable to parse the data file");
+			return;
+		}
 		EquationDescriptionFileDataBean bean = EquationUtil.getEquationDescriptionFileDataBean(data);
-		EquationDescriptionBean base = new EquationDescriptionBean(null, bean.getDescription());
-	    JSONResponseBean respData = EquationUtil.getJSONResponseBean(true, base);
-	    JSONObject respJson = new JSONObject(respData);
-	    try{
-	    	respJson.getJSONObject("data").put("column", bean.getColumn());
-	    	respJson.getJSONObject("data").put("table", bean.getTable());
-	    }catch(JSONException e){
-	    	e.printStackTrace();
-	    }
-	    out.println(respJson);
+		int offset = DataTableWriter.parseRowParam(req.getParameter(DataTableWriter.OFFSET_PARAM), 0);
+		int limit = DataTableWriter.parseRowParam(req.getParameter(DataTableWriter.LIMIT_PARAM), -1);
+		new DataTableWriter(resp.getWriter()).write(bean, offset, limit);
+	}
+	
+	/**
+	 * Picks the uploaded file out of the form parts, falling back to the last
+	 * part for clients that do not send a file name.
+	 */
+	private static Part getDataPart(Collection<Part> parts){
+		Part last = null;
+		for(Part part : parts){
+			String disposition = part.getHeader("content-disposition");
+			if(disposition != null && disposition.contains("filename="))
+				return part;
+			last = part;
+		}
+		return last;
 	}
 	
 }
@@ -1,10 +1,10 @@
 package com.benetech.mde.servlet;
 
-import gov.nasa.ial.mde.util.ResourceUtil;
-
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -18,10 +18,13 @@ import org.json.JSONObject;
 import com.benetech.mde.bean.EquationDescriptionBean;
 import com.benetech.mde.bean.EquationDescriptionParamsBean;
 import com.benetech.mde.bean.JSONResponseBean;
+import com.benetech.mde.util.DescriptionCache;
 import com.benetech.mde.util.EquationUtil;
+import com.benetech.mde.util.HttpUtil;
+import com.benetech.mde.util.SvgStore;
 
 
-@WebServlet("/EquationDescription")
+@WebServlet(urlPatterns = "/EquationDescription", asyncSupported = true)
 public class EquationDescription extends HttpServlet {
 	private static final long serialVersionUID = 1L;
 	
@@ -30,16 +33,64 @@ public class EquationDescription extends HttpServlet {
 		// TODO Auto-generated constructor stub
 	}
 
+	@Override
+	public void init() throws ServletException {
+		super.init();
+		EquationUtil.initEnginePool(getServletContext().getInitParameter(EquationUtil.ENGINE_POOL_SIZE_PARAM));
+		EquationUtil.initRequestWorkers(getServletContext().getInitParameter(EquationUtil.WORKER_THREADS_PARAM),
+				getServletContext().getInitParameter(EquationUtil.WORKER_QUEUE_SIZE_PARAM));
+	}
+
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
+		String[] modes = getModes(request);
+		if (modes == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown description mode in: " + request.getParameter("modes"));
+			return;
+		}
+		// Cached descriptions are cheap, so they are answered right here and
+		// never wait behind (or get shed with) the expensive ones.
+		if (EquationUtil.isDescriptionCached(request.getParameter("equation"), modes)) {
+			describe(request, response);
+			return;
+		}
+		new AsyncWork() {
+			@Override
+			protected void run(HttpServletRequest request, HttpServletResponse response)
+					throws ServletException, IOException {
+				describe(request, response);
+			}
+		}.dispatch(request, response, EquationUtil.getRequestWorkers());
+	}
+
+	private void describe(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+	    // no-cache lets clients keep the response but makes them revalidate
+	    // it with the ETag or Last-Modified below.
 	    response.setHeader("Cache-Control", "no-cache");
-	    response.setHeader("Pragma", "no-cache");
 	    response.setContentType("text/javascript");
 	    String equation = request.getParameter("equation");
-	    EquationDescriptionParamsBean data = EquationUtil.getEquationDescriptionParamsBean(equation);
-	    String graphFilePath = getServletContext().getRealPath("/") + "data/graph.svg";
-	    ResourceUtil.saveFile(graphFilePath, data.getSvg().getBytes());
+	    String[] modes = getModes(request);
+	    Map<String, DescriptionCache.Entry> entries = EquationUtil.getDescriptionEntries(equation, modes);
+	    DescriptionCache.Entry entry = entries.get(modes[0]);
+	    String etag = entry.getETag(equation);
+	    long lastModified = entry.getLastModified();
+	    if (entries.size() > 1) {
+	    	StringBuilder sb = new StringBuilder();
+	    	for (DescriptionCache.Entry e : entries.values()) {
+	    		sb.append(e.getETag(equation));
+	    		lastModified = Math.max(lastModified, e.getLastModified());
+	    	}
+	    	etag = "\"" + SvgStore.sha1Hex(sb.toString()) + "\"";
+	    }
+	    response.setHeader("ETag", etag);
+	    response.setDateHeader("Last-Modified", lastModified);
+	    if (HttpUtil.isNotModified(request, etag, lastModified)) {
+	    	response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+	    	return;
+	    }
+	    EquationDescriptionParamsBean data = entry.toBean(equation);
 	    EquationDescriptionBean base = new EquationDescriptionBean(data.getEquation(), data.getDescription());
 	    PrintWriter out = response.getWriter();
 	    JSONResponseBean resp = EquationUtil.getJSONResponseBean(true, base);
@@ -47,12 +98,44 @@ public class EquationDescription extends HttpServlet {
 	    try{
 	    	respJson.getJSONObject("data").remove("params");
 	    	respJson.getJSONObject("data").put("params", data.getParams());
+	    	if (data.getSvgKey() != null)
+	    		respJson.getJSONObject("data").put("graph", GraphSVG.getURL(request, data.getSvgKey()));
+	    	if (request.getParameter("modes") != null) {
+	    		JSONObject descriptions = new JSONObject();
+	    		for (Map.Entry<String, DescriptionCache.Entry> e : entries.entrySet())
+	    			descriptions.put(e.getKey(), e.getValue().toBean(equation).getDescription());
+	    		respJson.getJSONObject("data").put("descriptions", descriptions);
+	    	}
 	    }catch(JSONException e){
 	    	e.printStackTrace();
 	    }
 	    out.println(respJson);
 	}
 
+	/**
+	 * Reads the comma-separated <code>modes</code> parameter, such as
+	 * "visual,math". The first mode is the one returned as
+	 * <code>description</code>; all of them are returned in
+	 * <code>descriptions</code>.
+	 * 
+	 * @return the modes, the default mode if the parameter is missing, or
+	 * null if any mode is unknown.
+	 */
+	private static String[] getModes(HttpServletRequest request) {
+		String param = request.getParameter("modes");
+		if (param == null || param.trim().length() == 0)
+			return new String[] {EquationUtil.DEFAULT_DESCRIPTION_MODE};
+		List<String> modes = new ArrayList<String>();
+		for (String mode : param.split(",")) {
+			mode = mode.trim();
+			if (!EquationUtil.isDescriptionMode(mode))
+				return null;
+			if (!modes.contains(mode))
+				modes.add(mode);
+		}
+		return modes.toArray(new String[modes.size()]);
+	}
+
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
@@ -0,0 +1,137 @@
+package com.benetech.mde.servlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.benetech.mde.bean.EquationDescriptionParamsBean;
+import com.benetech.mde.util.DescriptionBatch;
+import com.benetech.mde.util.EquationUtil;
+
+/**
+ * Describes a whole worksheet of equations in one round trip. The equations
+ * are sent as a JSON array, either as the <code>equations</code> parameter
+ * or as the request body, and the optional <code>mode</code> parameter picks
+ * the description mode. Results come back in input order; an equation that
+ * cannot be described gets <code>success: "false"</code> and an
+ * <code>error</code> without failing the rest of the batch.
+ */
+@WebServlet("/EquationDescriptionBatch")
+public class EquationDescriptionBatch extends HttpServlet {
+	private static final long serialVersionUID = 4L;
+
+	public EquationDescriptionBatch() {
+		super();
+	}
+
+	@Override
+	public void init() throws ServletException {
+		super.init();
+		EquationUtil.initEnginePool(getServletContext().getInitParameter(EquationUtil.ENGINE_POOL_SIZE_PARAM));
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		doPost(request, response);
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		response.setHeader("Cache-Control", "no-cache");
+		response.setHeader("Pragma", "no-cache");
+		response.setContentType("text/javascript");
+
+		String mode = request.getParameter("mode");
+		if (mode == null || mode.length() == 0)
+			mode = EquationUtil.DEFAULT_DESCRIPTION_MODE;
+		if (!EquationUtil.isDescriptionMode(mode)) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown description mode: " + mode);
+			return;
+		}
+		List<String> equations;
+		try {
+			equations = readEquations(request);
+		} catch (JSONException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected a JSON array of equations");
+			return;
+		}
+		if (equations.size() > DescriptionBatch.MAX_SIZE) {
+			response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+					"At most " + DescriptionBatch.MAX_SIZE + " equations per batch");
+			return;
+		}
+
+		List<DescriptionBatch.Result> results = EquationUtil.getDescriptionBatch().describe(equations, mode);
+		JSONArray items = new JSONArray();
+		try {
+			for (DescriptionBatch.Result result : results) {
+				JSONObject item = new JSONObject();
+				item.put("equation", result.getEquation());
+				if (result.isSuccess()) {
+					EquationDescriptionParamsBean data = result.getEntry().toBean(result.getEquation());
+					item.put("success", "true");
+					item.put("description", data.getDescription());
+					item.put("params", data.getParams());
+					if (data.getSvgKey() != null)
+						item.put("graph", GraphSVG.getURL(request, data.getSvgKey()));
+				} else {
+					item.put("success", "false");
+					item.put("error", result.getError());
+				}
+				items.put(item);
+			}
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+		JSONObject respJson = new JSONObject();
+		try {
+			respJson.put("success", "true");
+			respJson.put("mode", mode);
+			respJson.put("data", items);
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+		PrintWriter out = response.getWriter();
+		out.println(respJson);
+	}
+
+	/**
+	 * Reads the JSON array of equations from the <code>equations</code>
+	 * parameter, or from the request body if there is no such parameter.
+	 * Entries that are not strings are kept as null so the results still
+	 * line up with the input.
+	 */
+	private static List<String> readEquations(HttpServletRequest request) throws IOException, JSONException {
+		String json = request.getParameter("equations");
+		if (json == null) {
+			StringBuilder sb = new StringBuilder();
+			BufferedReader reader = request.getReader();
+			char[] buf = new char[4096];
+			int n;
+			while ((n = reader.read(buf)) != -1)
+				sb.append(buf, 0, n);
+			json = sb.toString();
+		}
+		JSONArray array = new JSONArray(json.trim());
+		List<String> equations = new ArrayList<String>(array.length());
+		for (int i = 0; i < array.length(); i++) {
+			Object value = array.get(i);
+			equations.add((value instanceof String) ? (String) value : null);
+		}
+		return equations;
+	}
+}
@@ -0,0 +1,62 @@
+package com.benetech.mde.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.benetech.mde.util.HttpUtil;
+import com.benetech.mde.util.SvgStore;
+
+/**
+ * Serves graphs rendered by EquationDescription out of the in-memory
+ * SvgStore. The id is a hash of the render inputs, so responses never change
+ * for a given id and carry a strong ETag.
+ */
+@WebServlet("/GraphSVG")
+public class GraphSVG extends HttpServlet {
+	private static final long serialVersionUID = 3L;
+
+	public static final String PATH = "/graph-svg";
+
+	public GraphSVG() {
+		super();
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		String id = request.getParameter("id");
+		if (id == null || id.length() == 0) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		String etag = "\"" + id + "\"";
+		response.setHeader("ETag", etag);
+		response.setHeader("Cache-Control", "public, max-age=86400");
+		// The same id always means the same graph, so a client holding it is
+		// up to date even if the store has since dropped the entry.
+		if (HttpUtil.isNotModified(request, etag, -1)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		byte[] svg = SvgStore.getSharedInstance().get(id);
+		if (svg == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		response.setContentType("image/svg+xml;charset=UTF-8");
+		response.setContentLength(svg.length);
+		response.getOutputStream().write(svg);
+	}
+
+	/**
+	 * @return the URL of the stored graph with the given id.
+	 */
+	public static String getURL(HttpServletRequest request, String id) {
+		return request.getContextPath() + PATH + "?id=" + id;
+	}
+}
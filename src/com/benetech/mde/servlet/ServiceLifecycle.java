@@ -0,0 +1,25 @@
+package com.benetech.mde.servlet;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import com.benetech.mde.util.EquationUtil;
+import com.benetech.mde.util.StageMetrics;
+
+/**
+ * Releases the service's shared threads and per-thread state when the
+ * webapp stops, so that a redeploy does not leak the worker threads or,
+ * through them, the webapp's classloader.
+ */
+@WebListener
+public class ServiceLifecycle implements ServletContextListener {
+
+	public void contextInitialized(ServletContextEvent event) {
+	}
+
+	public void contextDestroyed(ServletContextEvent event) {
+		EquationUtil.shutdown();
+		StageMetrics.getSharedInstance().shutdown();
+	}
+}
@@ -0,0 +1,171 @@
+package com.benetech.mde.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.benetech.mde.util.DescribeEnginePool;
+import com.benetech.mde.util.DescriptionCache;
+import com.benetech.mde.util.EquationUtil;
+import com.benetech.mde.util.LatencyHistogram;
+import com.benetech.mde.util.StageMetrics;
+import com.benetech.mde.util.SvgStore;
+import com.benetech.mde.util.WorkerPool;
+
+import gov.nasa.ial.mde.solver.symbolic.EquationCache;
+
+/**
+ * Exposes the service metrics in the Prometheus text format: per-stage
+ * latency summaries broken down by equation type, cache hit ratios, and the
+ * worker and engine pool counters.
+ * <p>
+ * Only requests from the local host are answered unless the
+ * <code>mde.metrics.remote</code> context parameter is "true".
+ */
+@WebServlet("/ServiceMetrics")
+public class ServiceMetrics extends HttpServlet {
+	private static final long serialVersionUID = 6L;
+
+	public static final String REMOTE_PARAM = "mde.metrics.remote";
+	public static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+	public ServiceMetrics() {
+		super();
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		if (!"true".equals(getServletContext().getInitParameter(REMOTE_PARAM)) && !isLocal(request)) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		response.setHeader("Cache-Control", "no-cache");
+		response.setContentType("text/plain; version=0.0.4");
+		response.setCharacterEncoding("UTF-8");
+		PrintWriter out = response.getWriter();
+
+		writeHeader(out, "mde_stage_duration_seconds", "summary",
+				"Time spent in each stage of the describe pipeline, by equation type.");
+		for (Map.Entry<String, ? extends Map<String, LatencyHistogram>> stage
+				: StageMetrics.getSharedInstance().getHistograms().entrySet()) {
+			for (Map.Entry<String, LatencyHistogram> type : stage.getValue().entrySet()) {
+				String labels = "stage=\"" + escape(stage.getKey()) + "\",type=\"" + escape(type.getKey()) + "\"";
+				LatencyHistogram histogram = type.getValue();
+				for (double q : QUANTILES)
+					writeSample(out, "mde_stage_duration_seconds", labels + ",quantile=\"" + q + "\"",
+							histogram.getQuantileNanos(q) / 1e9);
+				writeSample(out, "mde_stage_duration_seconds_sum", labels, histogram.getSumNanos() / 1e9);
+				writeSample(out, "mde_stage_duration_seconds_count", labels, histogram.getCount());
+			}
+		}
+
+		DescriptionCache descriptions = DescriptionCache.getSharedInstance();
+		SvgStore graphs = SvgStore.getSharedInstance();
+		EquationCache equations = EquationCache.getSharedInstance();
+		writeHeader(out, "mde_cache_hits_total", "counter", "Cache lookups that found an entry.");
+		writeSample(out, "mde_cache_hits_total", "cache=\"description\"", descriptions.getHitCount());
+		writeSample(out, "mde_cache_hits_total", "cache=\"graph\"", graphs.getHitCount());
+		writeSample(out, "mde_cache_hits_total", "cache=\"equation\"", equations.getHitCount());
+		writeHeader(out, "mde_cache_misses_total", "counter", "Cache lookups that found no entry.");
+		writeSample(out, "mde_cache_misses_total", "cache=\"description\"", descriptions.getMissCount());
+		writeSample(out, "mde_cache_misses_total", "cache=\"graph\"", graphs.getMissCount());
+		writeSample(out, "mde_cache_misses_total", "cache=\"equation\"", equations.getMissCount());
+		writeHeader(out, "mde_cache_hit_ratio", "gauge", "Share of cache lookups that found an entry.");
+		writeSample(out, "mde_cache_hit_ratio", "cache=\"description\"",
+				ratio(descriptions.getHitCount(), descriptions.getMissCount()));
+		writeSample(out, "mde_cache_hit_ratio", "cache=\"graph\"", ratio(graphs.getHitCount(), graphs.getMissCount()));
+		writeSample(out, "mde_cache_hit_ratio", "cache=\"equation\"",
+				ratio(equations.getHitCount(), equations.getMissCount()));
+		writeHeader(out, "mde_cache_entries", "gauge", "Entries held in each cache.");
+		writeSample(out, "mde_cache_entries", "cache=\"description\"", descriptions.size());
+		writeSample(out, "mde_cache_entries", "cache=\"graph\"", graphs.size());
+		writeSample(out, "mde_cache_entries", "cache=\"equation\"", equations.size());
+
+		// Pools that were never built are skipped rather than started.
+		List<WorkerPool> pools = new ArrayList<WorkerPool>();
+		for (WorkerPool pool : new WorkerPool[] {EquationUtil.peekRequestWorkers(), EquationUtil.peekBatchWorkers(),
+				EquationUtil.peekTransformWorkers()}) {
+			if (pool != null)
+				pools.add(pool);
+		}
+		writeHeader(out, "mde_worker_queue_depth", "gauge", "Tasks waiting for a worker.");
+		for (WorkerPool pool : pools)
+			writeSample(out, "mde_worker_queue_depth", poolLabel(pool), pool.getQueueDepth());
+		writeHeader(out, "mde_worker_active", "gauge", "Workers running a task.");
+		for (WorkerPool pool : pools)
+			writeSample(out, "mde_worker_active", poolLabel(pool), pool.getActiveCount());
+		writeHeader(out, "mde_worker_completed_total", "counter", "Tasks completed by the workers.");
+		for (WorkerPool pool : pools)
+			writeSample(out, "mde_worker_completed_total", poolLabel(pool), pool.getCompletedCount());
+		writeHeader(out, "mde_worker_rejected_total", "counter", "Tasks shed because the queue was full.");
+		for (WorkerPool pool : pools)
+			writeSample(out, "mde_worker_rejected_total", poolLabel(pool), pool.getRejectedCount());
+
+		DescribeEnginePool engines = EquationUtil.getEnginePool();
+		writeHeader(out, "mde_engine_pool_idle", "gauge", "Describe engines waiting to be borrowed.");
+		writeSample(out, "mde_engine_pool_idle", null, engines.getIdleCount());
+		writeHeader(out, "mde_engine_pool_borrows_total", "counter", "Describe engines borrowed.");
+		writeSample(out, "mde_engine_pool_borrows_total", null, engines.getBorrowCount());
+		writeHeader(out, "mde_engine_pool_timeouts_total", "counter",
+				"Borrows that gave up waiting and built a temporary engine.");
+		writeSample(out, "mde_engine_pool_timeouts_total", null, engines.getTimeoutCount());
+		out.flush();
+	}
+
+	private static boolean isLocal(HttpServletRequest request) {
+		try {
+			// The remote address is a literal, so this does not hit DNS.
+			return InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static String poolLabel(WorkerPool pool) {
+		return "pool=\"" + escape(pool.getName()) + "\"";
+	}
+
+	private static double ratio(long hits, long misses) {
+		long total = hits + misses;
+		return (total == 0) ? 0.0 : (double) hits / total;
+	}
+
+	private static void writeHeader(PrintWriter out, String name, String type, String help) {
+		out.print("# HELP ");
+		out.print(name);
+		out.print(' ');
+		out.println(help);
+		out.print("# TYPE ");
+		out.print(name);
+		out.print(' ');
+		out.println(type);
+	}
+
+	private static void writeSample(PrintWriter out, String name, String labels, double value) {
+		out.print(name);
+		if (labels != null) {
+			out.print('{');
+			out.print(labels);
+			out.print('}');
+		}
+		out.print(' ');
+		if (value == Math.rint(value) && Math.abs(value) < 1e15)
+			out.println((long) value);
+		else
+			out.println(value);
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
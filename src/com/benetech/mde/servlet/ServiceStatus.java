@@ -0,0 +1,86 @@
+package com.benetech.mde.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.benetech.mde.util.DescribeEnginePool;
+import com.benetech.mde.util.EquationUtil;
+import com.benetech.mde.util.WorkerPool;
+
+/**
+ * Reports how loaded the service is: the depth of each worker queue, how
+ * many requests were shed because a queue was full, and how long requests
+ * waited for a pooled engine.
+ */
+@WebServlet("/ServiceStatus")
+public class ServiceStatus extends HttpServlet {
+	private static final long serialVersionUID = 5L;
+
+	public ServiceStatus() {
+		super();
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		response.setHeader("Cache-Control", "no-cache");
+		response.setHeader("Pragma", "no-cache");
+		response.setContentType("text/javascript");
+
+		JSONObject data = new JSONObject();
+		try {
+			// Pools that were never built are left out rather than started.
+			putWorkers(data, "requestWorkers", EquationUtil.peekRequestWorkers());
+			putWorkers(data, "batchWorkers", EquationUtil.peekBatchWorkers());
+			putWorkers(data, "transformWorkers", EquationUtil.peekTransformWorkers());
+			data.put("enginePool", toJSON(EquationUtil.getEnginePool()));
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+		JSONObject respJson = new JSONObject();
+		try {
+			respJson.put("success", "true");
+			respJson.put("data", data);
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+		PrintWriter out = response.getWriter();
+		out.println(respJson);
+	}
+
+	private static void putWorkers(JSONObject data, String name, WorkerPool workers) throws JSONException {
+		if (workers != null)
+			data.put(name, toJSON(workers));
+	}
+
+	private static JSONObject toJSON(WorkerPool workers) throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("threads", workers.getThreadCount());
+		json.put("active", workers.getActiveCount());
+		json.put("queueDepth", workers.getQueueDepth());
+		json.put("queueCapacity", workers.getQueueCapacity());
+		json.put("completed", workers.getCompletedCount());
+		json.put("rejected", workers.getRejectedCount());
+		return json;
+	}
+
+	private static JSONObject toJSON(DescribeEnginePool pool) throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("size", pool.getSize());
+		json.put("idle", pool.getIdleCount());
+		json.put("borrows", pool.getBorrowCount());
+		json.put("timeouts", pool.getTimeoutCount());
+		json.put("averageWaitMillis", pool.getAverageWaitMillis());
+		json.put("maxWaitMillis", pool.getMaxWaitMillis());
+		return json;
+	}
+}
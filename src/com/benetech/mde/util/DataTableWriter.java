@@ -0,0 +1,107 @@
+package com.benetech.mde.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.json.JSONObject;
+
+import com.benetech.mde.bean.EquationDescriptionFileDataBean;
+
+/**
+ * Writes the JSON response for an uploaded data table straight to the
+ * response writer. Values are read out of the column arrays as each row is
+ * written, so the table is never copied into rows or boxed into a
+ * <code>JSONObject</code>.
+ * <p>
+ * The table is still sent as an array of rows, which is what the page's
+ * grid store expects. Only the rows in the requested window are written;
+ * <code>rows</code> always gives the full row count and
+ * <code>nextOffset</code> is present when more rows follow the window.
+ */
+public class DataTableWriter {
+	public static final String OFFSET_PARAM = "offset";
+	public static final String LIMIT_PARAM = "limit";
+
+	private final Writer out;
+
+	public DataTableWriter(Writer out) {
+		super();
+		this.out = out;
+	}
+
+	/**
+	 * @param offset the first row to write.
+	 * @param limit the most rows to write, or a negative number for all of
+	 * them.
+	 */
+	public void write(EquationDescriptionFileDataBean bean, int offset, int limit) throws IOException {
+		int rowCount = bean.getRowCount();
+		int start = Math.max(0, Math.min(offset, rowCount));
+		int end = (limit < 0 || limit > rowCount - start) ? rowCount : start + limit;
+
+		out.write("{\"success\":\"true\",\"data\":{\"description\":");
+		out.write(JSONObject.quote(bean.getDescription()));
+		out.write(",\"column\":[");
+		String[] column = bean.getColumn();
+		for (int i = 0; i < column.length; i++) {
+			if (i > 0)
+				out.write(',');
+			out.write(JSONObject.quote(column[i]));
+		}
+		out.write("],\"rows\":");
+		out.write(Integer.toString(rowCount));
+		out.write(",\"offset\":");
+		out.write(Integer.toString(start));
+		if (end < rowCount) {
+			out.write(",\"nextOffset\":");
+			out.write(Integer.toString(end));
+		}
+		out.write(",\"table\":[");
+		double[][] columnValues = bean.getColumnValues();
+		for (int row = start; row < end; row++) {
+			if (row > start)
+				out.write(',');
+			out.write('[');
+			for (int i = 0; i < columnValues.length; i++) {
+				if (i > 0)
+					out.write(',');
+				double[] values = columnValues[i];
+				// Segments of the data can be shorter than the first column.
+				if (row < values.length)
+					writeNumber(values[row]);
+				else
+					out.write("null");
+			}
+			out.write(']');
+		}
+		out.write("]}}");
+		out.flush();
+	}
+
+	private void writeNumber(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			out.write("null");
+		} else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			out.write(Long.toString((long) value));
+		} else {
+			out.write(Double.toString(value));
+		}
+	}
+
+	/**
+	 * Reads a non-negative row count parameter.
+	 *
+	 * @return the value, or <code>defaultValue</code> if it is missing or
+	 * not a valid number.
+	 */
+	public static int parseRowParam(String value, int defaultValue) {
+		if (value == null || value.trim().length() == 0)
+			return defaultValue;
+		try {
+			int n = Integer.parseInt(value.trim());
+			return (n < 0) ? defaultValue : n;
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+}
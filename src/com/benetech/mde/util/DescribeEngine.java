@@ -0,0 +1,47 @@
+package com.benetech.mde.util;
+
+import gov.nasa.ial.mde.properties.MdeSettings;
+import gov.nasa.ial.mde.solver.Solver;
+
+/**
+ * A pre-initialized MDE <code>Solver</code> and <code>MdeSettings</code>
+ * pair. Building these reads the settings file, so engines are kept in a
+ * <code>DescribeEnginePool</code> and reset between requests instead of being
+ * rebuilt for every call. A solver holds one request's equations, so each
+ * request borrows its own; the <code>Describer</code> is stateless per call
+ * and shared by all of them.
+ *
+ * @see DescribeEnginePool
+ * @see EquationUtil#getDescriber()
+ */
+public class DescribeEngine {
+	public static final String SETTINGS_FILE = "myAppsMdeProperties";
+
+	private final MdeSettings settings;
+	private final Solver solver;
+
+	public DescribeEngine() {
+		super();
+		this.settings = new MdeSettings(SETTINGS_FILE);
+		this.solver = new Solver();
+	}
+
+	public MdeSettings getSettings() {
+		return settings;
+	}
+
+	public Solver getSolver() {
+		return solver;
+	}
+
+	/**
+	 * Returns this engine to the state it was in right after construction so
+	 * the next borrower does not see the previous request's solutions or
+	 * bounds.
+	 */
+	public void reset() {
+		solver.removeAll();
+		solver.setBounds(Solver.DEFAULT_BOUNDS);
+		solver.setPreferredBounds(Solver.DEFAULT_BOUNDS);
+	}
+}
@@ -0,0 +1,138 @@
+package com.benetech.mde.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of warm <code>DescribeEngine</code> instances shared by the
+ * servlets. Callers must hand every borrowed engine back with
+ * {@link #release(DescribeEngine)}, normally from a <code>finally</code>
+ * block.
+ * <p>
+ * If no engine becomes free within the borrow timeout a temporary engine is
+ * built so the request still completes; it is discarded on release because
+ * the pool is already full. The wait-time counters make it visible when the
+ * pool is too small for the load.
+ */
+public class DescribeEnginePool {
+	public static final int DEFAULT_SIZE = 4;
+	public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 10000L;
+
+	private final int size;
+	private final long borrowTimeoutMillis;
+	private final BlockingQueue<DescribeEngine> idle;
+
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	public DescribeEnginePool() {
+		this(DEFAULT_SIZE, DEFAULT_BORROW_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Creates a pool and builds all of its engines up front.
+	 *
+	 * @param size number of engines kept in the pool, at least 1.
+	 * @param borrowTimeoutMillis how long a borrower waits for a free engine
+	 * before a temporary one is built.
+	 */
+	public DescribeEnginePool(int size, long borrowTimeoutMillis) {
+		super();
+		if (size < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1: " + size);
+		}
+		this.size = size;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.idle = new ArrayBlockingQueue<DescribeEngine>(size);
+		for (int i = 0; i < size; i++)
+			idle.offer(new DescribeEngine());
+	}
+
+	/**
+	 * Takes an engine out of the pool, waiting up to the borrow timeout for
+	 * one to be released.
+	 *
+	 * @return a reset engine, never null.
+	 */
+	public DescribeEngine borrow() {
+		long start = System.nanoTime();
+		DescribeEngine engine = null;
+		try {
+			engine = idle.poll(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		recordWait(System.nanoTime() - start);
+		if (engine == null) {
+			timeoutCount.incrementAndGet();
+			engine = new DescribeEngine();
+		}
+		return engine;
+	}
+
+	/**
+	 * Resets the engine and puts it back in the pool. Engines that do not
+	 * fit, such as the temporary ones built after a timeout, are dropped.
+	 *
+	 * @param engine the engine returned by {@link #borrow()}.
+	 */
+	public void release(DescribeEngine engine) {
+		if (engine == null)
+			return;
+		try {
+			engine.reset();
+		} catch (RuntimeException e) {
+			// A half-reset engine must not be handed out again.
+			e.printStackTrace();
+			idle.offer(new DescribeEngine());
+			return;
+		}
+		idle.offer(engine);
+	}
+
+	private void recordWait(long waitNanos) {
+		borrowCount.incrementAndGet();
+		totalWaitNanos.addAndGet(waitNanos);
+		long max = maxWaitNanos.get();
+		while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos))
+			max = maxWaitNanos.get();
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	/**
+	 * @return number of borrows that gave up waiting and used a temporary engine.
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	public double getAverageWaitMillis() {
+		long count = borrowCount.get();
+		return (count == 0) ? 0.0 : totalWaitNanos.get() / (count * 1000000.0);
+	}
+
+	public double getMaxWaitMillis() {
+		return maxWaitNanos.get() / 1000000.0;
+	}
+
+	public String toString() {
+		return "DescribeEnginePool[size=" + size + ", idle=" + getIdleCount()
+				+ ", borrows=" + getBorrowCount() + ", timeouts=" + getTimeoutCount()
+				+ ", avgWaitMs=" + getAverageWaitMillis() + ", maxWaitMs=" + getMaxWaitMillis() + "]";
+	}
+}
@@ -0,0 +1,118 @@
+package com.benetech.mde.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Describes a list of equations in parallel on a <code>WorkerPool</code>.
+ * Every equation is solved on its own pooled <code>DescribeEngine</code>,
+ * results come back in input order, and an equation that fails only marks
+ * its own result as failed.
+ */
+public class DescriptionBatch {
+	public static final int MAX_SIZE = 500;
+
+	private final WorkerPool workers;
+
+	public DescriptionBatch(WorkerPool workers) {
+		super();
+		this.workers = workers;
+	}
+
+	public WorkerPool getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Describes every equation and waits for all of them.
+	 *
+	 * @param equations the equations, at most {@link #MAX_SIZE}.
+	 * @param mode the description mode used for every equation.
+	 * @return one result per equation, in the same order.
+	 */
+	public List<Result> describe(List<String> equations, final String mode) {
+		if (equations.size() > MAX_SIZE)
+			throw new IllegalArgumentException("At most " + MAX_SIZE + " equations per batch: " + equations.size());
+		List<Future<DescriptionCache.Entry>> futures = new ArrayList<Future<DescriptionCache.Entry>>(equations.size());
+		for (final String equation : equations) {
+			Future<DescriptionCache.Entry> future = null;
+			if (equation != null) {
+				try {
+					future = workers.submit(new Callable<DescriptionCache.Entry>() {
+						public DescriptionCache.Entry call() {
+							return EquationUtil.getDescriptionEntry(equation, mode);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					// Reported below as a failure of this equation only.
+				}
+			}
+			futures.add(future);
+		}
+
+		List<Result> results = new ArrayList<Result>(equations.size());
+		boolean interrupted = false;
+		for (int i = 0; i < equations.size(); i++) {
+			String equation = equations.get(i);
+			Future<DescriptionCache.Entry> future = futures.get(i);
+			if (equation == null) {
+				results.add(new Result(equation, null, "Missing equation"));
+			} else if (future == null) {
+				results.add(new Result(equation, null, "Server busy"));
+			} else if (interrupted) {
+				future.cancel(true);
+				results.add(new Result(equation, null, "Interrupted"));
+			} else {
+				try {
+					results.add(new Result(equation, future.get(), null));
+				} catch (ExecutionException e) {
+					Throwable cause = (e.getCause() == null) ? e : e.getCause();
+					results.add(new Result(equation, null, "Equation `" + equation + "` could not be described: " + cause));
+				} catch (InterruptedException e) {
+					interrupted = true;
+					future.cancel(true);
+					results.add(new Result(equation, null, "Interrupted"));
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		return results;
+	}
+
+	/**
+	 * The outcome for one equation of a batch: either a cache entry or an
+	 * error message.
+	 */
+	public static class Result {
+		private final String equation;
+		private final DescriptionCache.Entry entry;
+		private final String error;
+
+		Result(String equation, DescriptionCache.Entry entry, String error) {
+			this.equation = equation;
+			this.entry = entry;
+			this.error = error;
+		}
+
+		public String getEquation() {
+			return equation;
+		}
+
+		public boolean isSuccess() {
+			return entry != null;
+		}
+
+		public DescriptionCache.Entry getEntry() {
+			return entry;
+		}
+
+		public String getError() {
+			return error;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package com.benetech.mde.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.benetech.mde.bean.EquationDescriptionParamsBean;
+
+/**
+ * A bounded LRU cache of finished equation descriptions: the description
+ * text, the parameter map and the rendered SVG. Entries are keyed by the
+ * description mode and the normalized equation, so "y = x^2" and "y=x^2"
+ * share one entry.
+ * <p>
+ * Each entry carries a strong validator (a hash of its content) and the time
+ * it was computed, which the servlet sends as ETag and Last-Modified so that
+ * repeat requests can be answered with 304 without reaching the Solver.
+ */
+public class DescriptionCache {
+	public static final int DEFAULT_MAX_ENTRIES = 500;
+	public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+	private static final DescriptionCache sharedInstance = new DescriptionCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private long totalBytes = 0;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	public DescriptionCache(int maxEntries, long maxBytes) {
+		super();
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	public static DescriptionCache getSharedInstance() {
+		return sharedInstance;
+	}
+
+	/**
+	 * Removes whitespace that the equation parser ignores. Whitespace between
+	 * two letters or digits is kept as a single space because it can separate
+	 * tokens.
+	 */
+	public static String normalize(String equation) {
+		if (equation == null)
+			return null;
+		StringBuilder sb = new StringBuilder(equation.length());
+		boolean pendingSpace = false;
+		for (int i = 0; i < equation.length(); i++) {
+			char c = equation.charAt(i);
+			if (Character.isWhitespace(c)) {
+				pendingSpace = true;
+				continue;
+			}
+			if (pendingSpace && sb.length() > 0 && isWordChar(sb.charAt(sb.length() - 1)) && isWordChar(c))
+				sb.append(' ');
+			pendingSpace = false;
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the cache key for the equation described in the given mode.
+	 */
+	public static String key(String equation, String mode) {
+		if (equation == null)
+			return null;
+		return mode + "\n" + normalize(equation);
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '.';
+	}
+
+	/**
+	 * @return the cached entry for the normalized equation, or null.
+	 */
+	public Entry get(String key) {
+		Entry entry;
+		synchronized (this) {
+			entry = (key == null) ? null : entries.get(key);
+		}
+		if (entry == null)
+			missCount.incrementAndGet();
+		else
+			hitCount.incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * Tests for an entry without touching the hit and miss counts or the LRU order.
+	 */
+	public synchronized boolean contains(String key) {
+		return key != null && entries.containsKey(key);
+	}
+
+	public synchronized Entry put(String key, EquationDescriptionParamsBean bean) {
+		Entry entry = new Entry(key, bean);
+		if (entry.size > maxBytes)
+			return entry;
+		Entry old = entries.put(key, entry);
+		if (old != null)
+			totalBytes -= old.size;
+		totalBytes += entry.size;
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while ((entries.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+			totalBytes -= it.next().getValue().size;
+			it.remove();
+		}
+		return entry;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * One cached description. The stored bean is never handed out; callers
+	 * get a copy carrying the equation exactly as they sent it.
+	 */
+	public static class Entry {
+		private final EquationDescriptionParamsBean bean;
+		private final String contentHash;
+		private final long lastModified;
+		private final long size;
+
+		Entry(String key, EquationDescriptionParamsBean bean) {
+			this.bean = bean;
+			StringBuilder sb = new StringBuilder(256);
+			sb.append(key).append('\n')
+				.append(bean.getDescription()).append('\n')
+				.append(bean.getSvgKey()).append('\n')
+				.append(bean.getParams());
+			this.contentHash = SvgStore.sha1Hex(sb.toString());
+			// HTTP dates only carry whole seconds.
+			this.lastModified = (System.currentTimeMillis() / 1000) * 1000;
+			this.size = 2L * (sb.length() + (bean.getSvg() == null ? 0 : bean.getSvg().length()));
+		}
+
+		public EquationDescriptionParamsBean toBean(String equation) {
+			EquationDescriptionParamsBean copy = new EquationDescriptionParamsBean();
+			copy.setEquation(equation);
+			copy.setDescription(bean.getDescription());
+			copy.setSvg(bean.getSvg());
+			copy.setSvgKey(bean.getSvgKey());
+			if (bean.getParams() != null)
+				copy.setParams(new HashMap<String, String>(bean.getParams()));
+			return copy;
+		}
+
+		/**
+		 * @return a strong ETag for the response to the given equation string.
+		 */
+		public String getETag(String equation) {
+			return "\"" + SvgStore.sha1Hex(contentHash + "\n" + equation) + "\"";
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+	}
+}
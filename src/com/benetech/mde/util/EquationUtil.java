@@ -2,11 +2,14 @@ package com.benetech.mde.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
-import javax.swing.JFrame;
+import java.util.Map;
 
 import com.benetech.mde.bean.EquationDescriptionBean;
 import com.benetech.mde.bean.EquationDescriptionFileDataBean;
@@ -20,9 +23,24 @@ import gov.nasa.ial.mde.solver.Solver;
 import gov.nasa.ial.mde.solver.symbolic.AnalyzedData;
 import gov.nasa.ial.mde.solver.symbolic.AnalyzedEquation;
 import gov.nasa.ial.mde.solver.symbolic.AnalyzedItem;
-import gov.nasa.ial.mde.ui.graph.CartesianGraph;
+import gov.nasa.ial.mde.ui.graph.CartesianGraphRenderer;
 
 public class EquationUtil {
+	public static final String ENGINE_POOL_SIZE_PARAM = "mde.engine.pool.size";
+	public static final String WORKER_THREADS_PARAM = "mde.worker.threads";
+	public static final String WORKER_QUEUE_SIZE_PARAM = "mde.worker.queue.size";
+	public static final int DEFAULT_WORKER_QUEUE_SIZE = 64;
+	public static final String DEFAULT_DESCRIPTION_MODE = Describer.STANDARDS;
+	public static final String[] DESCRIPTION_MODES = {Describer.VISUAL, Describer.MATH, Describer.STANDARDS};
+	
+	// Volatile so that the getters, which every request calls, only take the
+	// class lock while the object is first being built.
+	private static volatile DescribeEnginePool enginePool;
+	private static volatile DescriptionBatch descriptionBatch;
+	private static volatile WorkerPool requestWorkers;
+	private static volatile WorkerPool transformWorkers;
+	private static volatile Describer describer;
+	
 	public static String getMathDescription(String equation) {
     	return getDescription(equation);
     }
@@ -33,22 +51,29 @@ public class EquationUtil {
 	
 	public static String getDescription(Object data){
 		String description = null;
-    	MdeSettings currentSettings = new MdeSettings("myAppsMdeProperties");
-        Solver solver = new Solver();
-        Describer describer = new Describer(solver, currentSettings);
-        describer.setOutputFormat(Describer.TEXT_OUTPUT);
-        if(data instanceof String)
-        	solver.add((String)data);
-        else if(data instanceof AnalyzedData)
-        	solver.add((AnalyzedItem)data);
-        solver.solve();
-        //solver.get(0).getAnalyzedItem().getFeatures();
-        if (solver.anyDescribable())
-            description = describer.getDescriptions("standards");
-        else 
-        	description = "Equation `" + data + " ` is not supported by MDE.";
-        solver.removeAll(); 
-    	return description;
+		StageMetrics metrics = StageMetrics.getSharedInstance();
+		String type = StageMetrics.UNKNOWN_TYPE;
+		long start = System.nanoTime();
+		DescribeEngine engine = getEnginePool().borrow();
+		metrics.begin();
+		try {
+			Solver solver = engine.getSolver();
+			if(data instanceof String)
+				solver.add((String)data);
+			else if(data instanceof AnalyzedData)
+				solver.add((AnalyzedItem)data);
+			solver.solve();
+			type = StageMetrics.typeOf(solver);
+			//solver.get(0).getAnalyzedItem().getFeatures();
+			if (solver.anyDescribable())
+				description = getDescriber().describe(solver, Describer.STANDARDS, Describer.TEXT_OUTPUT);
+			else 
+				description = "Equation `" + data + " ` is not supported by MDE.";
+		} finally {
+			getEnginePool().release(engine);
+			metrics.end(type, System.nanoTime() - start);
+		}
+		return description;
 	}
 	
 	public static List<AnalyzedData> getAnalyzedData(String fileName){
@@ -68,33 +93,168 @@ public class EquationUtil {
 		return list;
 	}
 	
+	/**
+	 * Parses uploaded data straight from the reader in one pass, without
+	 * writing it to disk first. Each call uses its own parser, so concurrent
+	 * uploads cannot see each other's data.
+	 * 
+	 * @return the data segments, or null if the data could not be parsed.
+	 */
+	public static List<AnalyzedData> getAnalyzedData(Reader reader){
+		TextDataFileParser fileParser = new TextDataFileParser(reader);
+		List<AnalyzedData> list = null;
+		try {
+			list = fileParser.parse();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (ParseException e) {
+			e.printStackTrace();
+		} catch (IllegalArgumentException e) {
+			System.out.println("Invalid data file: " + e.getMessage());
+		} finally {
+			fileParser.dispose();
+		}
+		return list;
+	}
+	
 	public static EquationDescriptionParamsBean getEquationDescriptionParamsBean(String equation){
+		return getDescriptionEntry(equation).toBean(equation);
+	}
+	
+	public static DescriptionCache.Entry getDescriptionEntry(String equation){
+		return getDescriptionEntry(equation, DEFAULT_DESCRIPTION_MODE);
+	}
+	
+	/**
+	 * Returns the cached description of the equation, solving and rendering
+	 * it only if it is not in the cache yet.
+	 * 
+	 * @param mode one of {@link #DESCRIPTION_MODES}.
+	 */
+	public static DescriptionCache.Entry getDescriptionEntry(String equation, String mode){
+		return getDescriptionEntries(equation, new String[] {mode}).get(mode);
+	}
+	
+	/**
+	 * Returns the cached descriptions of the equation in each of the modes.
+	 * The modes that are not cached yet are all described from a single
+	 * solve, with their stylesheets run in parallel.
+	 * 
+	 * @param modes some of {@link #DESCRIPTION_MODES}.
+	 * @return the entries keyed by mode, in the order of <code>modes</code>.
+	 */
+	public static Map<String, DescriptionCache.Entry> getDescriptionEntries(String equation, String[] modes){
+		DescriptionCache cache = DescriptionCache.getSharedInstance();
+		LinkedHashMap<String, DescriptionCache.Entry> entries = new LinkedHashMap<String, DescriptionCache.Entry>();
+		List<String> missing = new ArrayList<String>();
+		for(String mode : modes){
+			DescriptionCache.Entry entry = cache.get(DescriptionCache.key(equation, mode));
+			entries.put(mode, entry);
+			if(entry == null)
+				missing.add(mode);
+			else
+				republishGraph(entry, equation);
+		}
+		if(!missing.isEmpty()){
+			Map<String, EquationDescriptionParamsBean> beans = computeEquationDescriptionParamsBeans(
+					DescriptionCache.normalize(equation), missing.toArray(new String[missing.size()]));
+			for(String mode : missing)
+				entries.put(mode, cache.put(DescriptionCache.key(equation, mode), beans.get(mode)));
+		}
+		return entries;
+	}
+	
+	/**
+	 * The graph store is bounded separately, so make sure the graph URL in a
+	 * cached response still resolves.
+	 */
+	private static void republishGraph(DescriptionCache.Entry entry, String equation){
+		EquationDescriptionParamsBean bean = entry.toBean(equation);
+		SvgStore svgStore = SvgStore.getSharedInstance();
+		if(bean.getSvgKey() != null && svgStore.get(bean.getSvgKey()) == null)
+			svgStore.put(bean.getSvgKey(), bean.getSvg());
+	}
+	
+	private static Map<String, EquationDescriptionParamsBean> computeEquationDescriptionParamsBeans(String equation, String[] modes){
+		LinkedHashMap<String, EquationDescriptionParamsBean> beans = new LinkedHashMap<String, EquationDescriptionParamsBean>();
 		EquationDescriptionParamsBean bean = new EquationDescriptionParamsBean();
-    	MdeSettings currentSettings = new MdeSettings("myAppsMdeProperties");
-        Solver solver = new Solver();
-        Describer describer = new Describer(solver, currentSettings);
-        describer.setOutputFormat(Describer.TEXT_OUTPUT);
+		StageMetrics metrics = StageMetrics.getSharedInstance();
+		String type = StageMetrics.UNKNOWN_TYPE;
+		long start = System.nanoTime();
+		DescribeEngine engine = getEnginePool().borrow();
+		metrics.begin();
+		try {
+			Solver solver = engine.getSolver();
+			Describer describer = getDescriber();
+			solver.add((String)equation);
+			solver.solve();
+			type = StageMetrics.typeOf(solver);
 
-        solver.add((String)equation);
-        solver.solve();
-        
-        bean.setEquation(equation);
-        bean.setSvg(getGraphSVG(solver));
-        
-        if (solver.anyDescribable())
-            bean.setDescription(describer.getDescriptions("standards"));
-        else 
-        	bean.setDescription("Equation `" + equation + " ` is not supported by MDE.");
-        AnalyzedItem item = solver.get(0).getAnalyzedItem();
-        if(item instanceof AnalyzedEquation){
-        	AnalyzedEquation ae = (AnalyzedEquation)item;
-        	HashMap<String, String> params = new HashMap<String, String>();
-        	for(String key : ae.getParameters())
-        		params.put(key, String.valueOf(ae.getParameterValue(key)));
-        	bean.setParams(params);	
-        }
-        solver.removeAll(); 
-        return bean;        
+			bean.setEquation(equation);
+			bean.setSvg(getGraphSVG(solver, engine.getSettings()));
+			if (bean.getSvg() != null) {
+				String key = SvgStore.key(equation, solver.getBounds(), CartesianGraphRenderer.DEFAULT_WIDTH,
+						CartesianGraphRenderer.DEFAULT_HEIGHT, engine.getSettings());
+				SvgStore.getSharedInstance().put(key, bean.getSvg());
+				bean.setSvgKey(key);
+			}
+
+			Map<String, String> descriptions = null;
+			if (solver.anyDescribable() && modes.length == 1)
+				descriptions = Collections.singletonMap(modes[0], describer.describe(solver, modes[0], Describer.TEXT_OUTPUT));
+			else if (solver.anyDescribable())
+				descriptions = describer.describe(solver, modes, Describer.TEXT_OUTPUT, getTransformWorkers());
+			AnalyzedItem item = solver.get(0).getAnalyzedItem();
+			if(item instanceof AnalyzedEquation){
+				AnalyzedEquation ae = (AnalyzedEquation)item;
+				HashMap<String, String> params = new HashMap<String, String>();
+				for(String key : ae.getParameters())
+					params.put(key, String.valueOf(ae.getParameterValue(key)));
+				bean.setParams(params);	
+			}
+			for (String mode : modes) {
+				EquationDescriptionParamsBean modeBean = new EquationDescriptionParamsBean();
+				modeBean.setEquation(equation);
+				modeBean.setSvg(bean.getSvg());
+				modeBean.setSvgKey(bean.getSvgKey());
+				modeBean.setParams(bean.getParams());
+				if (descriptions != null)
+					modeBean.setDescription(descriptions.get(mode));
+				else
+					modeBean.setDescription("Equation `" + equation + " ` is not supported by MDE.");
+				beans.put(mode, modeBean);
+			}
+		} finally {
+			getEnginePool().release(engine);
+			metrics.end(type, System.nanoTime() - start);
+		}
+		return beans;        
+	}
+	
+	/**
+	 * Tests whether a description can be answered from the cache, without
+	 * counting it as a cache hit or miss.
+	 */
+	public static boolean isDescriptionCached(String equation, String mode){
+		return DescriptionCache.getSharedInstance().contains(DescriptionCache.key(equation, mode));
+	}
+	
+	/**
+	 * Tests whether the descriptions in all of the modes can be answered from
+	 * the cache.
+	 */
+	public static boolean isDescriptionCached(String equation, String[] modes){
+		for(String mode : modes)
+			if(!isDescriptionCached(equation, mode))
+				return false;
+		return true;
+	}
+	
+	public static boolean isDescriptionMode(String mode){
+		for(String m : DESCRIPTION_MODES)
+			if(m.equals(mode))
+				return true;
+		return false;
 	}
 	
 	public static EquationDescriptionBean getEquationDescriptionBean(String equation){
@@ -105,23 +265,19 @@ public class EquationUtil {
 	public static EquationDescriptionFileDataBean getEquationDescriptionFileDataBean(List<AnalyzedData>data){
 		EquationDescriptionFileDataBean bean = new EquationDescriptionFileDataBean();
 		int columns = data.size();
-		int rows = data.get(0).getDataSize();
-		double[][] table = new double[rows][columns + 1];
+		double[][] columnValues = new double[columns + 1][];
 		String [] column = new String[columns + 1];
 		int i = 1;
-		double [] x = data.get(0).getXValues();
-		for(int k = 0; k < x.length; k++)
-			table[k][0] = x[k];
+		columnValues[0] = data.get(0).getXValues();
 		column[0] = data.get(0).getXName();
 		for(AnalyzedData element : data){
-			double [] y  = element.getYValues();
-			for(int j = 0; j < y.length; j ++)
-				table[j][i] = y[j];
+			columnValues[i] = element.getYValues();
 			column[i] = element.getYName();
 			i++;
 		}
-		bean.setTable(table);
+		bean.setColumnValues(columnValues);
 		bean.setColumn(column);
+		bean.setRowCount(data.get(0).getDataSize());
 		bean.setDescription(getMathDescription(data.get(0)));
 		return bean;
 	}
@@ -138,15 +294,169 @@ public class EquationUtil {
 	}
 	
 	public static String getGraphSVG(Solver solver){
-		MdeSettings currentSettings = new MdeSettings("myAppsMdeProperties");
-		CartesianGraph grapher = new CartesianGraph(solver, currentSettings);
-		JFrame window = new JFrame("Tutorial_CartesianGraph");
-        window.getContentPane().add(grapher);
-        window.pack();
+		return getGraphSVG(solver, new MdeSettings(DescribeEngine.SETTINGS_FILE));
+	}
+	
+	public static String getGraphSVG(Solver solver, MdeSettings currentSettings){
 		if (solver.anyGraphable()) {
-			return grapher.getSVG();
+			CartesianGraphRenderer renderer = new CartesianGraphRenderer(currentSettings);
+			return renderer.getSVG(solver, CartesianGraphRenderer.DEFAULT_WIDTH, CartesianGraphRenderer.DEFAULT_HEIGHT);
 		}else{
 			return null;
 		}
 	}
+	
+	/**
+	 * Builds the shared engine pool. Safe to call from every servlet's
+	 * <code>init</code>; only the first call creates the pool.
+	 * 
+	 * @param size the pool size as configured in web.xml, or null for the default.
+	 */
+	public static synchronized void initEnginePool(String size){
+		if(enginePool != null)
+			return;
+		int poolSize = parseSize(ENGINE_POOL_SIZE_PARAM, size, DescribeEnginePool.DEFAULT_SIZE);
+		enginePool = new DescribeEnginePool(Math.max(1, poolSize), DescribeEnginePool.DEFAULT_BORROW_TIMEOUT_MILLIS);
+	}
+	
+	public static DescribeEnginePool getEnginePool(){
+		DescribeEnginePool pool = enginePool;
+		if(pool == null){
+			initEnginePool(null);
+			pool = enginePool;
+		}
+		return pool;
+	}
+	
+	/**
+	 * Builds the worker pool that runs the servlets' solve, describe and
+	 * render work. Like {@link #initEnginePool(String)}, only the first call
+	 * creates the pool.
+	 * 
+	 * @param threads the number of workers as configured in web.xml, or null
+	 * for one per pooled engine.
+	 * @param queueSize the number of requests that may wait for a worker, or
+	 * null for the default.
+	 */
+	public static synchronized void initRequestWorkers(String threads, String queueSize){
+		if(requestWorkers != null)
+			return;
+		int workerThreads = parseSize(WORKER_THREADS_PARAM, threads, getEnginePool().getSize());
+		int workerQueueSize = parseSize(WORKER_QUEUE_SIZE_PARAM, queueSize, DEFAULT_WORKER_QUEUE_SIZE);
+		requestWorkers = new WorkerPool("mde-request", Math.max(1, workerThreads), Math.max(1, workerQueueSize));
+	}
+	
+	public static WorkerPool getRequestWorkers(){
+		WorkerPool workers = requestWorkers;
+		if(workers == null){
+			initRequestWorkers(null, null);
+			workers = requestWorkers;
+		}
+		return workers;
+	}
+	
+	/**
+	 * Returns the request workers, or null if they have not been built.
+	 * Unlike {@link #getRequestWorkers()} this never starts the workers, so
+	 * reporting on them does not start threads.
+	 */
+	public static WorkerPool peekRequestWorkers(){
+		return requestWorkers;
+	}
+	
+	/**
+	 * Returns the transform workers, or null if they have not been built.
+	 */
+	public static WorkerPool peekTransformWorkers(){
+		return transformWorkers;
+	}
+	
+	/**
+	 * Returns the batch describer's workers, or null if they have not been
+	 * built.
+	 */
+	public static WorkerPool peekBatchWorkers(){
+		DescriptionBatch batch = descriptionBatch;
+		return (batch == null) ? null : batch.getWorkers();
+	}
+	
+	/**
+	 * Stops the worker pools so their threads do not outlive the webapp and
+	 * keep its classloader alive across a redeploy. Called when the webapp
+	 * stops; a later request would build the pools again.
+	 */
+	public static synchronized void shutdown(){
+		if(requestWorkers != null)
+			requestWorkers.shutdown();
+		if(transformWorkers != null)
+			transformWorkers.shutdown();
+		if(descriptionBatch != null)
+			descriptionBatch.getWorkers().shutdown();
+		requestWorkers = null;
+		transformWorkers = null;
+		descriptionBatch = null;
+	}
+	
+	private static int parseSize(String name, String value, int defaultValue){
+		if(value != null && value.trim().length() > 0){
+			try{
+				return Integer.parseInt(value.trim());
+			}catch(NumberFormatException e){
+				System.out.println("Invalid " + name + " \"" + value + "\", using " + defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+	
+	/**
+	 * Returns the describer shared by all requests. It takes the solver,
+	 * mode and output format on every call, so unlike the solvers it needs
+	 * no pooling.
+	 */
+	public static Describer getDescriber(){
+		Describer d = describer;
+		if(d == null){
+			synchronized(EquationUtil.class){
+				if(describer == null)
+					describer = new Describer(new MdeSettings(DescribeEngine.SETTINGS_FILE));
+				d = describer;
+			}
+		}
+		return d;
+	}
+	
+	/**
+	 * Returns the workers that run the stylesheets when one equation is
+	 * described in several modes. The describing thread runs any transform
+	 * these workers have not started, so one per pooled engine is enough.
+	 */
+	public static WorkerPool getTransformWorkers(){
+		WorkerPool workers = transformWorkers;
+		if(workers == null){
+			synchronized(EquationUtil.class){
+				if(transformWorkers == null)
+					transformWorkers = new WorkerPool("mde-transform", getEnginePool().getSize(), 4 * getEnginePool().getSize());
+				workers = transformWorkers;
+			}
+		}
+		return workers;
+	}
+	
+	/**
+	 * Returns the shared batch describer. It runs one worker per pooled
+	 * engine, since more workers would only wait for an engine.
+	 */
+	public static DescriptionBatch getDescriptionBatch(){
+		DescriptionBatch batch = descriptionBatch;
+		if(batch == null){
+			synchronized(EquationUtil.class){
+				if(descriptionBatch == null){
+					WorkerPool workers = new WorkerPool("mde-batch", getEnginePool().getSize(), 4 * DescriptionBatch.MAX_SIZE);
+					descriptionBatch = new DescriptionBatch(workers);
+				}
+				batch = descriptionBatch;
+			}
+		}
+		return batch;
+	}
 }
@@ -0,0 +1,40 @@
+package com.benetech.mde.util;
+
+import javax.servlet.http.HttpServletRequest;
+
+public class HttpUtil {
+	
+	/**
+	 * Tests whether a conditional GET can be answered with 304. If-None-Match
+	 * takes precedence; If-Modified-Since is only used when it is absent.
+	 * 
+	 * @param lastModified the last-modified time of the resource, or -1 if unknown.
+	 */
+	public static boolean isNotModified(HttpServletRequest request, String etag, long lastModified){
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if(ifNoneMatch != null)
+			return etagMatches(ifNoneMatch, etag);
+		if(lastModified < 0)
+			return false;
+		long ifModifiedSince;
+		try{
+			ifModifiedSince = request.getDateHeader("If-Modified-Since");
+		}catch(IllegalArgumentException e){
+			return false;
+		}
+		return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+	}
+	
+	public static boolean etagMatches(String ifNoneMatch, String etag){
+		if(ifNoneMatch == null)
+			return false;
+		for(String tag : ifNoneMatch.split(",")){
+			tag = tag.trim();
+			if(tag.startsWith("W/"))
+				tag = tag.substring(2);
+			if(tag.equals("*") || tag.equals(etag))
+				return true;
+		}
+		return false;
+	}
+}
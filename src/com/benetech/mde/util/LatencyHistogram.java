@@ -0,0 +1,91 @@
+package com.benetech.mde.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in nanoseconds. Each power of two is
+ * split into four buckets, so a quantile is off by at most a quarter of its
+ * value, and recording costs three atomic increments with no allocation.
+ * Counts are kept since startup.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sumNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		counts.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		sumNanos.addAndGet(nanos);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getSumNanos() {
+		return sumNanos.get();
+	}
+
+	/**
+	 * Estimates a quantile by interpolating inside the bucket it falls in.
+	 *
+	 * @param q the quantile, between 0 and 1.
+	 * @return the estimated duration in nanoseconds, or 0 if nothing was
+	 * recorded.
+	 */
+	public double getQuantileNanos(double q) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0)
+			return 0.0;
+		double rank = Math.max(1.0, Math.ceil(q * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			if (snapshot[i] == 0)
+				continue;
+			if (seen + snapshot[i] >= rank) {
+				double lower = lowerBound(i);
+				double upper = lowerBound(i + 1);
+				// Spread the samples evenly over the bucket and take the
+				// middle of the one at the rank.
+				return lower + (upper - lower) * (rank - seen - 0.5) / snapshot[i];
+			}
+			seen += snapshot[i];
+		}
+		return lowerBound(BUCKETS);
+	}
+
+	/**
+	 * Values below four get a bucket each; above that, the bucket is the
+	 * power of two followed by the next two bits of the value.
+	 */
+	static int bucketOf(long nanos) {
+		if (nanos < SUB_BUCKETS)
+			return (int) nanos;
+		int exp = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exp << SUB_BUCKET_BITS) | sub;
+	}
+
+	static double lowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exp = bucket >>> SUB_BUCKET_BITS;
+		int sub = bucket & (SUB_BUCKETS - 1);
+		if (exp < SUB_BUCKET_BITS)
+			return SUB_BUCKETS;
+		return Math.scalb((double) (SUB_BUCKETS + sub), exp - SUB_BUCKET_BITS);
+	}
+}
@@ -0,0 +1,141 @@
+package com.benetech.mde.util;
+
+import gov.nasa.ial.mde.solver.SolvedGraph;
+import gov.nasa.ial.mde.solver.Solver;
+import gov.nasa.ial.mde.util.StageTimer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms for each stage of the describe pipeline, broken down
+ * by the type of graph the equation turned out to be.
+ * <p>
+ * The type is only known once the equation has been classified, so while a
+ * request is being described its stage times are held per thread between
+ * {@link #begin()} and {@link #end(String, long)} and recorded under the
+ * type at the end. Stages that run outside such a request are recorded
+ * under {@link #UNKNOWN_TYPE}. A thread holds nothing once
+ * {@link #end(String, long)} returns, so no value is left behind on the
+ * container's threads when the webapp is undeployed.
+ */
+public class StageMetrics implements StageTimer.Listener {
+	/** The whole describe call, from borrowing an engine to releasing it. */
+	public static final String DESCRIBE = "describe";
+	public static final String UNKNOWN_TYPE = "unknown";
+	public static final String UNSUPPORTED_TYPE = "unsupported";
+
+	private static final StageMetrics sharedInstance = new StageMetrics();
+
+	static {
+		StageTimer.setListener(sharedInstance);
+	}
+
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, LatencyHistogram>> histograms =
+			new ConcurrentHashMap<String, ConcurrentHashMap<String, LatencyHistogram>>();
+
+	private final ThreadLocal<Pending> pending = new ThreadLocal<Pending>();
+
+	public StageMetrics() {
+		super();
+	}
+
+	/**
+	 * Returns the shared instance, which receives the stage times from
+	 * <code>StageTimer</code>.
+	 */
+	public static StageMetrics getSharedInstance() {
+		return sharedInstance;
+	}
+
+	/**
+	 * Names the type of the first solution for the per-type breakdown, such
+	 * as "SolvedParabola".
+	 */
+	public static String typeOf(Solver solver) {
+		if (solver.size() == 0 || !solver.anyDescribable())
+			return UNSUPPORTED_TYPE;
+		SolvedGraph features = solver.get(0).getAnalyzedItem().getFeatures();
+		return (features == null) ? UNKNOWN_TYPE : features.getClass().getSimpleName();
+	}
+
+	/**
+	 * Starts holding this thread's stage times until {@link #end(String, long)}.
+	 */
+	public void begin() {
+		pending.set(new Pending());
+	}
+
+	/**
+	 * Records the stage times held since {@link #begin()}, and the time of the
+	 * whole call, under the given type.
+	 */
+	public void end(String type, long describeNanos) {
+		Pending p = pending.get();
+		pending.remove();
+		if (p != null) {
+			for (int i = 0; i < p.size; i++)
+				record(p.stages[i], type, p.nanos[i]);
+		}
+		record(DESCRIBE, type, describeNanos);
+	}
+
+	public void stageCompleted(String stage, long nanos) {
+		Pending p = pending.get();
+		if (p != null)
+			p.add(stage, nanos);
+		else
+			record(stage, UNKNOWN_TYPE, nanos);
+	}
+
+	/**
+	 * Stops receiving stage times from <code>StageTimer</code> and drops
+	 * the calling thread's held times. Called when the webapp stops.
+	 */
+	public void shutdown() {
+		if (StageTimer.getListener() == this)
+			StageTimer.setListener(null);
+		pending.remove();
+	}
+
+	public void record(String stage, String type, long nanos) {
+		ConcurrentHashMap<String, LatencyHistogram> byType = histograms.get(stage);
+		if (byType == null) {
+			histograms.putIfAbsent(stage, new ConcurrentHashMap<String, LatencyHistogram>());
+			byType = histograms.get(stage);
+		}
+		LatencyHistogram histogram = byType.get(type);
+		if (histogram == null) {
+			byType.putIfAbsent(type, new LatencyHistogram());
+			histogram = byType.get(type);
+		}
+		histogram.record(nanos);
+	}
+
+	/**
+	 * @return the histograms keyed by stage and then by type.
+	 */
+	public Map<String, ? extends Map<String, LatencyHistogram>> getHistograms() {
+		return histograms;
+	}
+
+	private static class Pending {
+		String[] stages = new String[8];
+		long[] nanos = new long[8];
+		int size;
+
+		void add(String stage, long n) {
+			if (size == stages.length) {
+				String[] s = new String[2 * size];
+				long[] t = new long[2 * size];
+				System.arraycopy(stages, 0, s, 0, size);
+				System.arraycopy(nanos, 0, t, 0, size);
+				stages = s;
+				nanos = t;
+			}
+			stages[size] = stage;
+			nanos[size] = n;
+			size++;
+		}
+	}
+}
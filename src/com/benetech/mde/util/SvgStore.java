@@ -0,0 +1,132 @@
+package com.benetech.mde.util;
+
+import gov.nasa.ial.mde.math.Bounds;
+import gov.nasa.ial.mde.properties.MdeSettings;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, in-memory store of rendered graphs. Each SVG is stored under a
+ * hash of everything that went into drawing it, so the same key always
+ * means the same bytes and can be used as a strong ETag.
+ * <p>
+ * The store is bounded both by entry count and by total size; the least
+ * recently used graphs are dropped first.
+ */
+public class SvgStore {
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+	private static final SvgStore sharedInstance = new SvgStore(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private long totalBytes = 0;
+	private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	public SvgStore(int maxEntries, long maxBytes) {
+		super();
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	public static SvgStore getSharedInstance() {
+		return sharedInstance;
+	}
+
+	/**
+	 * Builds the key for a graph from the equation and every render input
+	 * that changes the drawing.
+	 */
+	public static String key(String equation, Bounds bounds, int width, int height, MdeSettings settings) {
+		StringBuilder sb = new StringBuilder(128);
+		sb.append(equation).append('\n')
+			.append(bounds).append('\n')
+			.append(width).append('x').append(height).append('\n')
+			.append(settings);
+		return sha1Hex(sb.toString());
+	}
+
+	public synchronized void put(String key, String svg) {
+		if (key == null || svg == null)
+			return;
+		byte[] data;
+		try {
+			data = svg.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		if (data.length > maxBytes)
+			return;
+		byte[] old = entries.put(key, data);
+		if (old != null)
+			totalBytes -= old.length;
+		totalBytes += data.length;
+		evict();
+	}
+
+	/**
+	 * @return the UTF-8 encoded SVG, or null if it is not (or no longer) stored.
+	 */
+	public byte[] get(String key) {
+		byte[] data;
+		synchronized (this) {
+			data = (key == null) ? null : entries.get(key);
+		}
+		if (data == null)
+			missCount.incrementAndGet();
+		else
+			hitCount.incrementAndGet();
+		return data;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, byte[]>> it = entries.entrySet().iterator();
+		while ((entries.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+			totalBytes -= it.next().getValue().length;
+			it.remove();
+		}
+	}
+
+	public static String sha1Hex(String text) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(text.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+				hex.append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.benetech.mde.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size pool of daemon worker threads in front of a bounded queue.
+ * Work that does not fit in the queue is rejected with a
+ * <code>RejectedExecutionException</code> instead of piling up, and the
+ * rejections are counted so overload is visible.
+ */
+public class WorkerPool implements Executor {
+	private final String name;
+	private final int queueCapacity;
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	/**
+	 * @param name prefix for the worker thread names.
+	 * @param threads number of worker threads, at least 1.
+	 * @param queueCapacity number of tasks that may wait for a worker, at least 1.
+	 */
+	public WorkerPool(final String name, int threads, int queueCapacity) {
+		super();
+		this.name = name;
+		this.queueCapacity = queueCapacity;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * @throws RejectedExecutionException if the queue is full.
+	 */
+	public <T> Future<T> submit(Callable<T> task) {
+		try {
+			return executor.submit(task);
+		} catch (RejectedExecutionException e) {
+			rejectedCount.incrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * @throws RejectedExecutionException if the queue is full.
+	 */
+	public void execute(Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			rejectedCount.incrementAndGet();
+			throw e;
+		}
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getThreadCount() {
+		return executor.getCorePoolSize();
+	}
+
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public long getCompletedCount() {
+		return executor.getCompletedTaskCount();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public String toString() {
+		return "WorkerPool[" + name + ", threads=" + getThreadCount() + ", active=" + getActiveCount()
+				+ ", queued=" + getQueueDepth() + "/" + queueCapacity + ", completed=" + getCompletedCount()
+				+ ", rejected=" + getRejectedCount() + "]";
+	}
+}
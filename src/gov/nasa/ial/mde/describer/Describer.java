@@ -10,23 +10,34 @@ import gov.nasa.ial.mde.properties.MdeSettings;
 import gov.nasa.ial.mde.solver.Solution;
 import gov.nasa.ial.mde.solver.SolvedGraph;
 import gov.nasa.ial.mde.solver.Solver;
-import gov.nasa.ial.mde.util.LocalResourceResolver;
+import gov.nasa.ial.mde.util.StageTimer;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.text.BreakIterator;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.TransformerFactoryConfigurationError;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
 
 /**
  * <code>Describer</code> works with a MDE <code>Solver</code> object to
@@ -51,6 +62,12 @@ import javax.xml.transform.stream.StreamSource;
  * <code>Describer</code> uses a <code>MdeSettings</code> object to get
  * and set description mode changes.
  * <p>
+ * The <code>describe</code> methods take the solver, description mode and
+ * output format as arguments and leave the describer unchanged, so they can
+ * be called from several threads at once and one describer can serve a whole
+ * application. The methods that use the current description mode and output
+ * format are for a describer owned by a single thread.
+ * <p>
  * <a href="http://prime.jsc.nasa.gov/MDE">Math Description Engine Programmers
  * Guide </a>
  * 
@@ -91,41 +108,55 @@ public class Describer {
     public static final String STANDARDS         = "standards";
 
     /**
-     * MDE <code>Solver</code> object which provides the graph data to be
-     * described textually.
+     * Name of the root element of the feature document the stylesheets
+     * transform.
      */
-    private Solver             solver;
+    public static final String MDE_ELEMENT = "MDE";
 
     /**
-     * Comment for <code>tFactory</code>
+     * The features the visual stylesheets read. The solved graphs put off
+     * some of their more expensive features until they are asked for, and a
+     * visual description only asks for these.
      */
-    private TransformerFactory tFactory;
+    public static final String[] VISUAL_FEATURES = {
+        "equationPrint", "graphName", "slope", "slopeDefined", "openDirection",
+        "center", "radius", "semiMajorAxis", "semiMinorAxis", "eccentricity",
+        "focalLength", "vertex", "axisInclination", "isConvex", "asymptotes",
+        "inclination", "intersectionPoint", "separation", "petalLength",
+        "numPetals", "thetaMultiple", "FunctionAnalysisData", "DataID",
+        "ComputedFunctionData" };
 
     /**
-     * Table of initialized XSLT transformers. One per description mode.
+     * MDE <code>Solver</code> object which provides the graph data to be
+     * described textually.
      */
-    
-	private Hashtable<String, Transformer>          transformers;
+    private final Solver       solver;
 
     /**
-     * Comment for <code>currentDescriptionMode</code>
+     * Shared cache of compiled XSLT stylesheets.
      */
-    private String             currentDescriptionMode;
+    private final TemplatesCache templatesCache;
 
     /**
-     * Comment for <code>currentTransformer</code>
+     * Table of the description modes: the XSLT stylesheet of each and the
+     * features it reads.
      */
-    private Transformer        currentTransformer = null;
+    private final Hashtable<String, DescriptionMode> modes;
+
+    /**
+     * Comment for <code>currentDescriptionMode</code>
+     */
+    private volatile String    currentDescriptionMode;
 
     /**
      * Comment for <code>currentOutputFormat</code>
      */
-    private String             currentOutputFormat;
+    private volatile String    currentOutputFormat;
 
     /**
      * Number of words per line for text format
      */
-    private int                wordsPerLine;
+    private volatile int       wordsPerLine;
 
     // Default constructor not allowed.
     @SuppressWarnings("unused")
@@ -133,6 +164,17 @@ public class Describer {
         throw new RuntimeException("Default constructor not allowed.");
     }
 
+    /**
+     * Construct a Describer object that is not tied to a <code>Solver</code>.
+     * It can only be used through the <code>describe</code> methods, which
+     * take the solver as an argument. Use default XSLT template files.
+     * 
+     * @param settings the MDE settings.
+     */
+    public Describer(MdeSettings settings) {
+        this(null, settings);
+    }
+
     /**
      * Construct a Describer object with the given <code>Solver</code> object.
      * An instance of MdeSettings will be created internally. Use default XSLT
@@ -157,17 +199,16 @@ public class Describer {
         this.currentOutputFormat = TEXT_OUTPUT;
         this.wordsPerLine = 15;
 
-        configureTranformerFactory();
+        this.templatesCache = TemplatesCache.getSharedInstance();
 
         //TODO: The template/mode defaults should probably be set in MdeSettings
 
-        transformers = new Hashtable<String, Transformer>();
-        addDescriptionMode("visual", "mdeApplyVisual1.xsl");
+        modes = new Hashtable<String, DescriptionMode>();
+        addDescriptionMode("visual", "mdeApplyVisual1.xsl", VISUAL_FEATURES);
         addDescriptionMode("math", "mdeApplyMath1.xsl");
         addDescriptionMode("standards", "mdeApplyStandards1.xsl");
 
         this.currentDescriptionMode = settings.getDescriptionMode();
-        this.currentTransformer = transformers.get(currentDescriptionMode);
     }
 
     /**
@@ -182,21 +223,18 @@ public class Describer {
         // Use current description mode
         String result = null;
 
-        Solution[] sol = solver.get(equation);
+        Solution[] sol = requireSolver().get(equation);
         if ((sol != null) && (sol.length > 0)) {
             if (MdeSettings.DEBUG) {
                 System.out.println(getClass().getName() + ".getDescription() solution is not null");
             }
 
-            StringBuffer sb = new StringBuffer(128);
-            sb.append("\n<MDE>");
+            ArrayList<SolvedGraph> features = new ArrayList<SolvedGraph>(1);
             SolvedGraph sg = sol[0].getFeatures();
             if (sg != null) {
-                String sgxml = sg.getXMLString();
-                sb.append(sgxml);
+                features.add(sg);
             }
-            sb.append("\n</MDE>");
-            result = transformXML(sb.toString());
+            result = transformFeatures(features, currentDescriptionMode, currentOutputFormat);
         }
         return result;
     }
@@ -242,55 +280,156 @@ public class Describer {
      * @return MDE descriptions for all items in the Solver object's solution list.
      */
     public String getDescriptions() {
-        String xmlToTransform;
-        String result;
+        return describe(requireSolver(), currentDescriptionMode, currentOutputFormat);
+    }
 
-        xmlToTransform = getFeatureXML(); // magic
-        //  	System.out.println(xmlToTransform);
-        result = transformXML(xmlToTransform);
-        return result;
+    /**
+     * Return MDE descriptions for all items in the solver's solution list in
+     * the given description mode and output format. Safe to call from several
+     * threads at once, as long as each uses its own solver.
+     * 
+     * @param solver the solver holding the solved equations.
+     * @param mode the description mode.
+     * @param outputFormat the output format, such as TEXT_OUTPUT.
+     * @return MDE descriptions for all items in the solver's solution list,
+     *         or an empty string if the mode is unknown or the transform
+     *         failed.
+     */
+    public String describe(Solver solver, String mode, String outputFormat) {
+        return transformFeatures(getFeatures(solver), mode, outputFormat);
+    }
+
+    /**
+     * Return MDE descriptions for all items in the Solver object's solution
+     * list in each of the given description modes, one after another on the
+     * calling thread.
+     * 
+     * @param modes the description modes.
+     * @return the descriptions keyed by mode.
+     * @see #getDescriptions(String[], Executor)
+     */
+    public Map<String, String> getDescriptions(String[] modes) {
+        return getDescriptions(modes, null);
+    }
+
+    /**
+     * Return MDE descriptions for all items in the Solver object's solution
+     * list in each of the given description modes. The feature document is
+     * built once and each mode's stylesheet is run on it as a separate task.
+     * <p>
+     * The calling thread runs the first mode itself, and then any task the
+     * executor has not started yet, so a busy executor only costs
+     * parallelism. The current description mode is not changed.
+     * 
+     * @param modes the description modes. Unknown and repeated modes are
+     *            skipped.
+     * @param executor runs the other modes' tasks, or null to run all of them
+     *            on the calling thread.
+     * @return the descriptions keyed by mode, in the order of
+     *         <code>modes</code>.
+     */
+    public Map<String, String> getDescriptions(String[] modes, Executor executor) {
+        return describe(requireSolver(), modes, currentOutputFormat, executor);
     }
 
     /**
-     * Change the output format to the requested type for each description mode
-     * transformer.
+     * Return MDE descriptions for all items in the solver's solution list in
+     * each of the given description modes and the given output format, as
+     * {@link #getDescriptions(String[], Executor)} does. Safe to call from
+     * several threads at once, as long as each uses its own solver.
+     * 
+     * @param solver the solver holding the solved equations.
+     * @param modes the description modes. Unknown and repeated modes are
+     *            skipped.
+     * @param outputFormat the output format, such as TEXT_OUTPUT.
+     * @param executor runs the other modes' tasks, or null to run all of them
+     *            on the calling thread.
+     * @return the descriptions keyed by mode, in the order of
+     *         <code>modes</code>.
+     */
+    public Map<String, String> describe(Solver solver, String[] modes, final String outputFormat, Executor executor) {
+        final List<SolvedGraph> features = getFeatures(solver);
+        computeFeatures(features, modes);
+
+        long start = StageTimer.start();
+        final FeatureDocument document = FeatureDocument.record(features);
+
+        LinkedHashMap<String, FutureTask<String>> tasks = new LinkedHashMap<String, FutureTask<String>>();
+        for (final String mode : modes) {
+            if (!this.modes.containsKey(mode) || tasks.containsKey(mode)) {
+                continue;
+            }
+            tasks.put(mode, new FutureTask<String>(new Callable<String>() {
+                public String call() {
+                    return transform(mode, outputFormat, FeatureXMLReader.newSource(document), features);
+                }
+            }));
+        }
+        if (executor != null) {
+            boolean first = true;
+            for (FutureTask<String> task : tasks.values()) {
+                if (first) {
+                    first = false;
+                    continue;
+                }
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // Run below on the calling thread.
+                }
+            }
+        }
+
+        LinkedHashMap<String, String> results = new LinkedHashMap<String, String>();
+        boolean interrupted = false;
+        for (Map.Entry<String, FutureTask<String>> entry : tasks.entrySet()) {
+            FutureTask<String> task = entry.getValue();
+            // Does nothing if the executor has already started the task.
+            task.run();
+            String result = "";
+            try {
+                result = task.get();
+            } catch (ExecutionException e) {
+                System.out.println(e.getCause());
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                task.cancel(true);
+            }
+            results.put(entry.getKey(), result);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        StageTimer.stop(StageTimer.TRANSFORM, start);
+        return results;
+    }
+
+    /**
+     * Change the output format to the requested type. The format is applied to
+     * the transformer created for each description.
      * 
      * @param outputFormat
      *            the desired output format - text or html
      */
     public void setOutputFormat(String outputFormat) {
         //TODO: handle invalid outputFormat
-        boolean notXML = (outputFormat.equals(TEXT_OUTPUT) || outputFormat.equals(HTML_OUTPUT));
         this.currentOutputFormat = outputFormat;
 
         if (MdeSettings.DEBUG) {
             System.out.println(getClass().getName() + ".setOutputFormat() " + outputFormat);
         }
-        Transformer tf;
-        Enumeration<Transformer> en = transformers.elements();
-        while (en.hasMoreElements()) {
-            tf = en.nextElement();
-            if (notXML) {
-                omitXMLDeclaration(tf, true);
-            } else {
-                omitXMLDeclaration(tf, false);
-            }
-            tf.setOutputProperty(OutputKeys.METHOD, outputFormat);
-        }
     }
 
     /**
-     * Return the MDE XML String for all items in the Solver object's solution
-     * list which have a showGraph=true.
+     * Return the features of all items in the solver's solution list which
+     * have a showGraph=true.
      * 
-     * @return The feature in XML form.
+     * @param solver the solver holding the solved equations.
+     * @return the features to describe, in solution order.
      */
-    private String getFeatureXML() {
-        //Build the XML stream:
-        StringBuffer b = new StringBuffer(128);
-        b.append("\n<MDE>");
-
-        // Get the XML block from the features.
+    private static List<SolvedGraph> getFeatures(Solver solver) {
+        ArrayList<SolvedGraph> list = new ArrayList<SolvedGraph>();
         Solution solution;
         SolvedGraph features;
         for (@SuppressWarnings("rawtypes")
@@ -301,33 +440,103 @@ public class Describer {
             if (solution.isShowGraph()) {
                 features = solution.getFeatures();
                 if (features != null) {
-                    b.append(features.getXMLString());
+                    list.add(features);
                 }
             }
         }
+        return list;
+    }
 
-        b.append("\n</MDE>");
-
-//        if (MdeConstants.DEBUG) {
-//    	      System.out.println(getClass().getName()+".getFeatureXML()"+b.toString());
-//    	  }
+    /**
+     * Computes the deferred features that the stylesheets of the given modes
+     * read. The time is counted as part of classifying the equation.
+     * 
+     * @param features the features to describe.
+     * @param modes the description modes.
+     */
+    private void computeFeatures(List<SolvedGraph> features, String[] modes) {
+        long start = StageTimer.start();
+        Set<String> keys = new HashSet<String>();
+        for (String mode : modes) {
+            DescriptionMode m = this.modes.get(mode);
+            if (m == null) {
+                continue;
+            }
+            Set<String> f = m.features;
+            if (f == null) {
+                keys = null;
+                break;
+            }
+            keys.addAll(f);
+        }
+        for (SolvedGraph sg : features) {
+            sg.computeFeatures(keys);
+        }
+        StageTimer.stop(StageTimer.CLASSIFY, start);
+    }
 
+    /**
+     * Return the MDE XML String for the given features, as the stylesheets
+     * see it. Only used for error reports.
+     * 
+     * @param features the features.
+     * @return The features in XML form.
+     */
+    private static String getFeatureXML(List<SolvedGraph> features) {
+        StringBuilder b = new StringBuilder(1024);
+        b.append("\n<").append(MDE_ELEMENT).append('>');
+        try {
+            for (SolvedGraph sg : features) {
+                sg.writeXML(b);
+            }
+        } catch (IOException e) {
+            // A StringBuilder never throws.
+            throw new IllegalStateException(e);
+        }
+        b.append("\n</").append(MDE_ELEMENT).append('>');
         return b.toString();
     }
 
     /**
-     * Not yet supported. Lets you specify your own text description mode with
-     * corresponding XSLT description templates file.
+     * Lets you specify your own text description mode with corresponding XSLT
+     * description templates file. The stylesheet is compiled once and shared
+     * with every other <code>Describer</code> through the
+     * <code>TemplatesCache</code>, so registering a mode that another
+     * describer already uses costs nothing.
      * 
      * @param modeName either "visual" or "math".
      * @param xslFilename the name of the XSL file.
      */
     public void addDescriptionMode(String modeName, String xslFilename) {
+        addDescriptionMode(modeName, xslFilename, null);
+    }
+
+    /**
+     * Lets you specify your own text description mode with corresponding XSLT
+     * description templates file, and the features its stylesheet reads.
+     * Features the solved graphs put off computing are only computed for
+     * this mode if they are in the list.
+     * 
+     * @param modeName the name of the mode.
+     * @param xslFilename the name of the XSL file.
+     * @param features the names of the features the stylesheet reads, or
+     *            null if it may read any of them.
+     */
+    public void addDescriptionMode(String modeName, String xslFilename, String[] features) {
         //TODO: handle other than default path to xsl
         //TODO: check for/handle duplicate mode names...
-        //Map transformer to description mode
-        Transformer tf = getTransformer(xslFilename);
-        transformers.put(modeName, tf);
+        //Map stylesheet to description mode, compiling it now so that a bad
+        //stylesheet is reported here rather than on the first description.
+        try {
+            templatesCache.getTemplates(xslFilename);
+            modes.put(modeName, new DescriptionMode(xslFilename, features));
+        } catch (Exception e) {
+            if (MdeSettings.DEBUG) {
+                System.out.println("Failed to initialize Transformer, styleSheet is !" + xslFilename + "!");
+            }
+            System.out.println(e);
+            e.printStackTrace(System.out);
+        }
     }
 
     /**
@@ -337,13 +546,11 @@ public class Describer {
      */
     public void setCurrentDescriptionMode(String mode) {
         //TODO: We could handle an invalid mode condition better than we do.
-        Transformer tf = transformers.get(mode);
-        if (tf == null) {
+        if (!modes.containsKey(mode)) {
             if (MdeSettings.DEBUG) {
                 System.out.println("Invalid description mode. Previously set mode will be used.");
             }
         } else {
-            currentTransformer = tf;
             currentDescriptionMode = mode;
         }
     }
@@ -357,34 +564,6 @@ public class Describer {
         return currentDescriptionMode;
     }
 
-    private void configureTranformerFactory() throws TransformerFactoryConfigurationError {
-        tFactory = TransformerFactory.newInstance();
-
-        // Use a resource resolver to find the resources in the resources 
-        // "/resources/" path of the Jar file. DDexter 1/19/2004
-        tFactory.setURIResolver(new LocalResourceResolver(MdeSettings.RESOURCES_PATH));
-    }
-
-    private Transformer getTransformer(String xslFilename) {
-        Transformer tf = null;
-        try {
-            if (MdeSettings.DEBUG) {
-                System.out.println(getClass().getName() + ".getTransformer() Get resource \"" + xslFilename
-                        + "\"");
-            }
-
-            LocalResourceResolver resolver = (LocalResourceResolver) tFactory.getURIResolver();
-            tf = tFactory.newTransformer(resolver.resolve(xslFilename, null));
-        } catch (Exception e) {
-            if (MdeSettings.DEBUG) {
-                System.out.println("Failed to initialize Transformer, styleSheet is !" + xslFilename + "!");
-            }
-            System.out.println(e);
-            e.printStackTrace(System.out);
-        }
-        return tf;
-    }
-
     /**
      * Specify whether the (XSLT-transformed XML) text description output should
      * include an XML declaration.
@@ -400,13 +579,41 @@ public class Describer {
         }
     }
 
-    private String transformXML(String xmlData) {
+    /**
+     * Transforms the features with the stylesheet of the given description
+     * mode. The feature trees are read by a <code>FeatureXMLReader</code>, so
+     * no XML text is built or parsed.
+     * 
+     * @param features the features to describe.
+     * @param mode the description mode.
+     * @param outputFormat the output format.
+     * @return the description, or an empty string if the transform failed.
+     */
+    private String transformFeatures(List<SolvedGraph> features, String mode, String outputFormat) {
+        computeFeatures(features, new String[] { mode });
+        long start = StageTimer.start();
+        String finalResult = transform(mode, outputFormat, FeatureXMLReader.newSource(features), features);
+        StageTimer.stop(StageTimer.TRANSFORM, start);
+        return finalResult;
+    }
+
+    /**
+     * Transforms the feature document with the stylesheet of the given
+     * description mode. Safe to call from several threads at once.
+     * 
+     * @param mode the description mode.
+     * @param outputFormat the output format.
+     * @param source the feature document.
+     * @param features the features in the document, for error reports.
+     * @return the description, or an empty string if the transform failed.
+     */
+    private String transform(String mode, String outputFormat, Source source, List<SolvedGraph> features) {
         String finalResult = "";
 
         ByteArrayOutputStream result = new ByteArrayOutputStream();
         try {
-            currentTransformer.transform(new StreamSource(new ByteArrayInputStream(xmlData.getBytes())),
-                    new StreamResult(result));
+            Transformer currentTransformer = newTransformer(mode, outputFormat);
+            currentTransformer.transform(source, new StreamResult(result));
             String resultStr = result.toString();
             if(MdeSettings.DEBUG)
             {
@@ -414,20 +621,55 @@ public class Describer {
                 System.out.println("transformed Str = "+resultStr);
             }
 
-            if (currentOutputFormat.equals(TEXT_OUTPUT)) {
+            if (outputFormat.equals(TEXT_OUTPUT)) {
                 finalResult = cleanUpText(resultStr, 40);
             } else {
                 finalResult = resultStr;
             }
 
         } catch (Exception e) {
-            System.out.println("Failed to transform XML string: !" + xmlData + "!");
+            System.out.println("Failed to transform XML string: !" + getFeatureXML(features) + "!");
             System.out.println(e);
             e.printStackTrace();
         }
         return finalResult;
     }
 
+    /**
+     * Create a single-use transformer for the given description mode, set up
+     * for the given output format. The transformer comes from the shared
+     * compiled stylesheet, so nothing shared is changed.
+     * 
+     * @param mode the description mode.
+     * @param outputFormat the output format.
+     * @return a new transformer.
+     * @throws TransformerConfigurationException if the stylesheet could not be compiled.
+     */
+    private Transformer newTransformer(String mode, String outputFormat) throws TransformerConfigurationException {
+        DescriptionMode m = modes.get(mode);
+        if (m == null) {
+            throw new TransformerConfigurationException("Invalid description mode: " + mode);
+        }
+        Transformer tf = templatesCache.newTransformer(m.xslFilename);
+        boolean notXML = (outputFormat.equals(TEXT_OUTPUT) || outputFormat.equals(HTML_OUTPUT));
+        omitXMLDeclaration(tf, notXML);
+        tf.setOutputProperty(OutputKeys.METHOD, outputFormat);
+        return tf;
+    }
+
+    /**
+     * Return the solver this describer was built with.
+     * 
+     * @return the solver.
+     * @throws IllegalStateException if the describer has no solver.
+     */
+    private Solver requireSolver() {
+        if (solver == null) {
+            throw new IllegalStateException("This Describer has no Solver; use describe(Solver, ...).");
+        }
+        return solver;
+    }
+
     private String cleanUpText(String result1, int textLineLength) {
         int i = 0;
 
@@ -491,4 +733,19 @@ public class Describer {
         this.wordsPerLine = wordsPerLine;
     }
 
+    /**
+     * A description mode: its stylesheet and the features the stylesheet
+     * reads. Never changed once registered.
+     */
+    private static class DescriptionMode {
+        final String xslFilename;
+        final Set<String> features;
+
+        DescriptionMode(String xslFilename, String[] features) {
+            this.xslFilename = xslFilename;
+            this.features = (features == null) ? null
+                    : Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(features)));
+        }
+    }
+
 } // end class Describer
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2006, United States Government as represented by the Administrator
+ * for the National Aeronautics and Space Administration. No copyright is
+ * claimed in the United States under Title 17, U.S. Code. All Other Rights
+ * Reserved.
+ */
+package gov.nasa.ial.mde.describer;
+
+import gov.nasa.ial.mde.solver.SolvedGraph;
+
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A recorded copy of the <code>MDE</code> feature document, built once from
+ * the solved graphs and replayed as SAX events for every stylesheet that
+ * describes it. A recorded document is never changed, so it can be replayed
+ * from several threads at the same time.
+ *
+ * @version 1.0
+ * @see FeatureXMLReader
+ */
+public class FeatureDocument {
+
+    private static final byte START = 0, END = 1, TEXT = 2;
+
+    private final byte[] types;
+    private final String[] names;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final char[] text;
+
+    private FeatureDocument(Recorder r) {
+        this.types = new byte[r.size];
+        this.names = new String[r.size];
+        this.offsets = new int[r.size];
+        this.lengths = new int[r.size];
+        System.arraycopy(r.types, 0, types, 0, r.size);
+        System.arraycopy(r.names, 0, names, 0, r.size);
+        System.arraycopy(r.offsets, 0, offsets, 0, r.size);
+        System.arraycopy(r.lengths, 0, lengths, 0, r.size);
+        this.text = new char[r.text.length()];
+        r.text.getChars(0, text.length, text, 0);
+    }
+
+    /**
+     * Walks the feature trees of the solved graphs once and records the
+     * resulting document.
+     *
+     * @param graphs the solved graphs to describe.
+     * @return the recorded document.
+     */
+    public static FeatureDocument record(List<SolvedGraph> graphs) {
+        Recorder recorder = new Recorder();
+        FeatureXMLReader reader = new FeatureXMLReader(graphs);
+        reader.setContentHandler(recorder);
+        try {
+            reader.parse((String)null);
+        } catch (SAXException e) {
+            // The recorder never throws.
+            throw new IllegalStateException(e);
+        }
+        return new FeatureDocument(recorder);
+    }
+
+    /**
+     * Sends the recorded document to the content handler.
+     *
+     * @param handler the content handler to receive the document.
+     * @throws SAXException if the handler fails.
+     */
+    public void replay(ContentHandler handler) throws SAXException {
+        AttributesImpl noAttributes = new AttributesImpl();
+        int i, n = types.length;
+
+        handler.startDocument();
+        for (i = 0; i < n; i++) {
+            switch (types[i]) {
+            case START:
+                handler.startElement("", names[i], names[i], noAttributes);
+                break;
+            case END:
+                handler.endElement("", names[i], names[i]);
+                break;
+            default:
+                handler.characters(text, offsets[i], lengths[i]);
+            }
+        }
+        handler.endDocument();
+    }
+
+    private static class Recorder extends DefaultHandler {
+        byte[] types = new byte[64];
+        String[] names = new String[64];
+        int[] offsets = new int[64];
+        int[] lengths = new int[64];
+        int size;
+        StringBuilder text = new StringBuilder(256);
+
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            add(START, qName, 0, 0);
+        }
+
+        public void endElement(String uri, String localName, String qName) {
+            add(END, qName, 0, 0);
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            add(TEXT, null, text.length(), length);
+            text.append(ch, start, length);
+        }
+
+        private void add(byte type, String name, int offset, int length) {
+            if (size == types.length) {
+                int capacity = 2 * size;
+                byte[] t = new byte[capacity];
+                String[] s = new String[capacity];
+                int[] o = new int[capacity];
+                int[] l = new int[capacity];
+                System.arraycopy(types, 0, t, 0, size);
+                System.arraycopy(names, 0, s, 0, size);
+                System.arraycopy(offsets, 0, o, 0, size);
+                System.arraycopy(lengths, 0, l, 0, size);
+                types = t;
+                names = s;
+                offsets = o;
+                lengths = l;
+            }
+            types[size] = type;
+            names[size] = name;
+            offsets[size] = offset;
+            lengths[size] = length;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2006, United States Government as represented by the Administrator
+ * for the National Aeronautics and Space Administration. No copyright is
+ * claimed in the United States under Title 17, U.S. Code. All Other Rights
+ * Reserved.
+ */
+package gov.nasa.ial.mde.describer;
+
+import gov.nasa.ial.mde.solver.SolvedGraph;
+
+import java.util.HashMap;
+import java.util.List;
+
+import javax.xml.transform.sax.SAXSource;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * An <code>XMLReader</code> that "parses" solved graphs by walking their
+ * feature trees and sending SAX events for the <code>MDE</code> document
+ * that <code>Describer</code> transforms. Used as a <code>SAXSource</code>,
+ * it feeds the features straight into the XSLT transformer without building,
+ * encoding and re-parsing an XML string.
+ * <p>
+ * The events match what parsing the XML string would produce, including
+ * the whitespace between elements. The reader can also replay a recorded
+ * <code>FeatureDocument</code>. The input source passed to
+ * <code>parse</code> is ignored.
+ *
+ * @version 1.0
+ */
+public class FeatureXMLReader implements XMLReader {
+
+    private static final String NAMESPACES_FEATURE = "http://xml.org/sax/features/namespaces";
+    private static final String NAMESPACE_PREFIXES_FEATURE = "http://xml.org/sax/features/namespace-prefixes";
+
+    private final List<SolvedGraph> graphs;
+
+    private final FeatureDocument document;
+
+    private ContentHandler contentHandler;
+    private DTDHandler dtdHandler;
+    private EntityResolver entityResolver;
+    private ErrorHandler errorHandler;
+    private HashMap<String, Boolean> features = new HashMap<String, Boolean>();
+    private HashMap<String, Object> properties = new HashMap<String, Object>();
+
+    /**
+     * Creates a reader for the <code>MDE</code> document holding the given
+     * solved graphs, in order.
+     *
+     * @param graphs the solved graphs to describe.
+     */
+    public FeatureXMLReader(List<SolvedGraph> graphs) {
+        this(graphs, null);
+    }
+
+    /**
+     * Creates a reader that replays a recorded feature document.
+     *
+     * @param document the recorded document.
+     */
+    public FeatureXMLReader(FeatureDocument document) {
+        this(null, document);
+    }
+
+    private FeatureXMLReader(List<SolvedGraph> graphs, FeatureDocument document) {
+        this.graphs = graphs;
+        this.document = document;
+        features.put(NAMESPACES_FEATURE, Boolean.TRUE);
+        features.put(NAMESPACE_PREFIXES_FEATURE, Boolean.FALSE);
+    }
+
+    /**
+     * Returns a <code>SAXSource</code> that reads the given solved graphs.
+     *
+     * @param graphs the solved graphs to describe.
+     * @return the source to hand to a <code>Transformer</code>.
+     */
+    public static SAXSource newSource(List<SolvedGraph> graphs) {
+        return new SAXSource(new FeatureXMLReader(graphs), new InputSource());
+    }
+
+    /**
+     * Returns a <code>SAXSource</code> that replays a recorded feature
+     * document.
+     *
+     * @param document the recorded document.
+     * @return the source to hand to a <code>Transformer</code>.
+     */
+    public static SAXSource newSource(FeatureDocument document) {
+        return new SAXSource(new FeatureXMLReader(document), new InputSource());
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.XMLReader#parse(org.xml.sax.InputSource)
+     */
+    public void parse(InputSource input) throws SAXException {
+        if (contentHandler == null) {
+            throw new SAXException("No content handler.");
+        }
+        if (document != null) {
+            document.replay(contentHandler);
+            return;
+        }
+        AttributesImpl noAttributes = new AttributesImpl();
+        char[] newline = { '\n' };
+
+        contentHandler.startDocument();
+        contentHandler.startElement("", Describer.MDE_ELEMENT, Describer.MDE_ELEMENT, noAttributes);
+        for (SolvedGraph graph : graphs) {
+            graph.toSAX(contentHandler);
+        }
+        contentHandler.characters(newline, 0, 1);
+        contentHandler.endElement("", Describer.MDE_ELEMENT, Describer.MDE_ELEMENT);
+        contentHandler.endDocument();
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.XMLReader#parse(java.lang.String)
+     */
+    public void parse(String systemId) throws SAXException {
+        parse(new InputSource(systemId));
+    }
+
+    public boolean getFeature(String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+        Boolean value = features.get(name);
+        return (value != null) && value.booleanValue();
+    }
+
+    public void setFeature(String name, boolean value) throws SAXNotRecognizedException, SAXNotSupportedException {
+        features.put(name, Boolean.valueOf(value));
+    }
+
+    public Object getProperty(String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+        return properties.get(name);
+    }
+
+    /* (non-Javadoc)
+     * Properties such as a lexical handler are kept but never used, since
+     * the feature tree has no comments, CDATA sections or DTD.
+     * @see org.xml.sax.XMLReader#setProperty(java.lang.String, java.lang.Object)
+     */
+    public void setProperty(String name, Object value) throws SAXNotRecognizedException, SAXNotSupportedException {
+        properties.put(name, value);
+    }
+
+    public void setEntityResolver(EntityResolver resolver) {
+        this.entityResolver = resolver;
+    }
+
+    public EntityResolver getEntityResolver() {
+        return entityResolver;
+    }
+
+    public void setDTDHandler(DTDHandler handler) {
+        this.dtdHandler = handler;
+    }
+
+    public DTDHandler getDTDHandler() {
+        return dtdHandler;
+    }
+
+    public void setContentHandler(ContentHandler handler) {
+        this.contentHandler = handler;
+    }
+
+    public ContentHandler getContentHandler() {
+        return contentHandler;
+    }
+
+    public void setErrorHandler(ErrorHandler handler) {
+        this.errorHandler = handler;
+    }
+
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+}
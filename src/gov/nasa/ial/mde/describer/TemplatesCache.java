@@ -0,0 +1,184 @@
+/*
+ * Copyright 2006, United States Government as represented by the Administrator
+ * for the National Aeronautics and Space Administration. No copyright is
+ * claimed in the United States under Title 17, U.S. Code. All Other Rights
+ * Reserved.
+ */
+package gov.nasa.ial.mde.describer;
+
+import gov.nasa.ial.mde.properties.MdeSettings;
+import gov.nasa.ial.mde.util.LocalResourceResolver;
+
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+/**
+ * Process-wide cache of compiled XSLT stylesheets. Each stylesheet is
+ * compiled once into a thread-safe <code>Templates</code> object and shared
+ * by every <code>Describer</code>; callers get a cheap, single-use
+ * <code>Transformer</code> from {@link #newTransformer(String)}.
+ * <p>
+ * Stylesheets are keyed by file name. The cached entry is recompiled when
+ * the last-modified time of the stylesheet resource changes, checked at most
+ * once every {@link #RELOAD_CHECK_INTERVAL_MILLIS}. Only the named
+ * stylesheet is checked, not the stylesheets it imports.
+ *
+ * @version 1.0
+ */
+public class TemplatesCache {
+
+    /**
+     * Minimum time between two checks of the same stylesheet for changes.
+     */
+    public static final long RELOAD_CHECK_INTERVAL_MILLIS = 2000L;
+
+    private static final TemplatesCache sharedInstance = new TemplatesCache(MdeSettings.RESOURCES_PATH);
+
+    /**
+     * Not thread-safe, so all compiles are done while holding its lock.
+     */
+    private final TransformerFactory tFactory;
+
+    private final LocalResourceResolver resolver;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Creates a cache that loads stylesheets from the specified resource path.
+     * Most callers should use {@link #getSharedInstance()} instead.
+     *
+     * @param pathToResources the class path location of the stylesheets.
+     */
+    public TemplatesCache(String pathToResources) {
+        resolver = new LocalResourceResolver(pathToResources);
+        tFactory = TransformerFactory.newInstance();
+
+        // Use a resource resolver to find the resources in the resources
+        // "/resources/" path of the Jar file. DDexter 1/19/2004
+        tFactory.setURIResolver(resolver);
+    }
+
+    /**
+     * Returns the cache shared by every <code>Describer</code> in this
+     * class loader.
+     *
+     * @return the shared templates cache.
+     */
+    public static TemplatesCache getSharedInstance() {
+        return sharedInstance;
+    }
+
+    /**
+     * Returns the compiled form of the specified stylesheet, compiling it on
+     * first use or if the stylesheet has changed since it was compiled.
+     *
+     * @param xslFilename the name of the XSL file.
+     * @return the compiled stylesheet.
+     * @throws TransformerConfigurationException if the stylesheet could not be compiled.
+     */
+    public Templates getTemplates(String xslFilename) throws TransformerConfigurationException {
+        Entry entry = entries.get(xslFilename);
+        if ((entry != null) && !entry.isStale()) {
+            return entry.templates;
+        }
+        synchronized (tFactory) {
+            // Another thread may have compiled it while we waited.
+            Entry current = entries.get(xslFilename);
+            if ((current != null) && (current != entry)) {
+                return current.templates;
+            }
+            if (MdeSettings.DEBUG) {
+                System.out.println(getClass().getName() + ".getTemplates() Compile resource \"" + xslFilename
+                        + "\"");
+            }
+            URL url = getResourceURL(xslFilename);
+            long modified = lastModified(url);
+            Templates templates = tFactory.newTemplates(resolver.resolve(xslFilename, null));
+            entries.put(xslFilename, new Entry(templates, url, modified));
+            return templates;
+        }
+    }
+
+    /**
+     * Returns a new <code>Transformer</code> for the specified stylesheet.
+     * The transformer must only be used by one thread at a time.
+     *
+     * @param xslFilename the name of the XSL file.
+     * @return a new transformer.
+     * @throws TransformerConfigurationException if the stylesheet could not be compiled.
+     */
+    public Transformer newTransformer(String xslFilename) throws TransformerConfigurationException {
+        return getTemplates(xslFilename).newTransformer();
+    }
+
+    /**
+     * Tests whether the specified stylesheet has already been compiled.
+     *
+     * @param xslFilename the name of the XSL file.
+     * @return true if the stylesheet is in the cache.
+     */
+    public boolean contains(String xslFilename) {
+        return entries.containsKey(xslFilename);
+    }
+
+    /**
+     * Removes the specified stylesheet so it is compiled again on next use.
+     *
+     * @param xslFilename the name of the XSL file.
+     */
+    public void invalidate(String xslFilename) {
+        entries.remove(xslFilename);
+    }
+
+    private URL getResourceURL(String xslFilename) {
+        ClassLoader cl = TemplatesCache.class.getClassLoader();
+        return cl.getResource(resolver.resolvePathTo(xslFilename));
+    }
+
+    private static long lastModified(URL url) {
+        if (url == null) {
+            return 0L;
+        }
+        try {
+            if ("file".equals(url.getProtocol())) {
+                return new File(url.toURI()).lastModified();
+            }
+            return url.openConnection().getLastModified();
+        } catch (Exception e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * A compiled stylesheet and the resource version it was compiled from.
+     */
+    private static class Entry {
+        final Templates templates;
+        final URL url;
+        final long lastModified;
+        volatile long lastChecked;
+
+        Entry(Templates templates, URL url, long lastModified) {
+            this.templates = templates;
+            this.url = url;
+            this.lastModified = lastModified;
+            this.lastChecked = System.currentTimeMillis();
+        }
+
+        boolean isStale() {
+            long now = System.currentTimeMillis();
+            if ((url == null) || (now - lastChecked < RELOAD_CHECK_INTERVAL_MILLIS)) {
+                return false;
+            }
+            lastChecked = now;
+            return lastModified(url) != lastModified;
+        }
+    }
+
+} // end class TemplatesCache
@@ -14,6 +14,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -60,6 +61,9 @@ public class TextDataFileParser implements FileParser {
     /** A referene to the file */
 	File file;
 
+    /** The reader to parse from instead of the file, read in a single pass. */
+	private Reader reader;
+
     /** The number of columns of data. */
 	int columnCnt;
     
@@ -120,6 +124,23 @@ public class TextDataFileParser implements FileParser {
 		clear();
 	}
 
+	/**
+	 * Creates an instance of <code>TextDataFileParser</code> that will parse
+	 * the data from the specified <code>Reader</code>. The text is read only
+	 * once and never buffered as a whole, so only the numeric data is kept in
+	 * memory. The reader is not closed by the parser.
+	 * 
+	 * @param reader
+	 *            the specified <code>Reader</code> to parse the data from
+	 */
+	public TextDataFileParser(Reader reader) {
+		if (reader == null) {
+			throw new NullPointerException("Null reader.");
+		}
+		this.reader = reader;
+		clear();
+	}
+
 	/**
 	 * Parse the file and return a <code>List</code> of
 	 * <code>AnalyzedData</code> item's, where each entry in the
@@ -133,21 +154,31 @@ public class TextDataFileParser implements FileParser {
 	 * @see gov.nasa.ial.mde.solver.symbolic.AnalyzedData
 	 */
 	public List<AnalyzedData> parse() throws IOException, ParseException {
-		analyzeFile();
+		if (reader != null) {
+			// A reader can only be read once, so the header and data are
+			// collected in the same pass.
+			parseReader();
 
-		if (columnCnt < 2) {
-			throw new IllegalArgumentException("Data file must have at least two columns of data.");
-		}
+			if (columnCnt < 2) {
+				throw new IllegalArgumentException("Data file must have at least two columns of data.");
+			}
+		} else {
+			analyzeFile();
 
-		// Parse the file for the column header information.
-		parseFileForHeader();
+			if (columnCnt < 2) {
+				throw new IllegalArgumentException("Data file must have at least two columns of data.");
+			}
+
+			// Parse the file for the column header information.
+			parseFileForHeader();
+
+			// Parse the file for the data.
+			parseFileForData();
+		}
 
 		// Use a default header name for the columns that do not have a header.
 		checkHeaders();
 
-		// Parse the file for the data.
-		parseFileForData();
-
 		// Make sure we have some data.
 		if ((data == null) || (data.length <= 0) || (data[0].length <= 0)) {
 			throw new IllegalArgumentException("Data file does not contain any data.");
@@ -188,6 +219,7 @@ public class TextDataFileParser implements FileParser {
 		clear();
 		this.numberFormat = null;
 		this.file = null;
+		this.reader = null;
 	}
 
 	/**
@@ -384,6 +416,100 @@ public class TextDataFileParser implements FileParser {
 		}
 	}
 
+	/**
+	 * Reads the header and the data from the reader in a single pass. The
+	 * column arrays grow as rows arrive and are trimmed to the row count at
+	 * the end, so the raw text is never held in memory.
+	 * 
+	 * @throws IOException thrown if the reader could not be read.
+	 * @throws ParseException thrown if a data cell is not a number.
+	 */
+	private void parseReader() throws IOException, ParseException {
+		BufferedReader in = (reader instanceof BufferedReader) ? (BufferedReader) reader
+				: new BufferedReader(reader);
+		String line;
+		String[] columnValues;
+		boolean findHeader = true;
+		char delimValue = ',';
+		int col;
+		columnCnt = 0;
+		headerRowCnt = 0;
+		dataRowCnt = 0;
+		delimType = UNKNOWN_DELIM;
+
+		while ((line = in.readLine()) != null) {
+			line = line.trim();
+
+			// Skip blank lines.
+			if (line.length() <= 0) {
+				continue;
+			}
+
+			// Determine what deliminator is being used.
+			if (delimType == UNKNOWN_DELIM) {
+				delimType = lineUsesWhichDelim(line);
+				delimValue = valueOf(delimType);
+			}
+
+			columnValues = splitLine(line, delimValue);
+
+			// Set the column count from the first line.
+			if (columnCnt == 0) {
+				columnCnt = columnValues.length;
+				headers = new String[columnCnt];
+				for (col = 0; col < columnCnt; col++) {
+					headers[col] = "";
+				}
+				data = new double[columnCnt][64];
+			}
+
+			// Do a consistancy check against the expected number of
+			// columns.
+			if ((columnValues == null) || (columnValues.length != columnCnt)) {
+				throw new IllegalArgumentException(
+						"Inconsistent number of columns in the data file.");
+			}
+
+			// We have reached the end of the header once we find a row of
+			// all numbers.
+			if (findHeader && isAllNumbers(columnValues)) {
+				findHeader = false;
+			}
+
+			if (findHeader) {
+				for (col = 0; col < columnCnt; col++) {
+					if (columnValues[col].length() > 0) {
+						if (headers[col].length() <= 0) {
+							headers[col] = columnValues[col];
+						} else {
+							// Just append the column value to the header text.
+							headers[col] += " " + columnValues[col];
+						}
+					}
+				}
+				headerRowCnt++;
+			} else {
+				if (dataRowCnt == data[0].length) {
+					for (col = 0; col < columnCnt; col++) {
+						data[col] = Arrays.copyOf(data[col], 2 * dataRowCnt);
+					}
+				}
+				for (col = 0; col < columnCnt; col++) {
+					// Use 0.0 for an empty/blank cell.
+					data[col][dataRowCnt] = (columnValues[col].length() > 0) ? numberFormat.parse(
+							columnValues[col]).doubleValue() : 0.0;
+				}
+				dataRowCnt++;
+			}
+		}
+
+		if (data != null) {
+			for (col = 0; col < columnCnt; col++) {
+				data[col] = Arrays.copyOf(data[col], dataRowCnt);
+			}
+		}
+	}
+
 	private List<AnalyzedData> getAnalyzedDataList() {
 		if (columnCnt < 2) {
 			throw new IllegalArgumentException("Data file must have at least two columns of data.");
@@ -8,10 +8,17 @@ package gov.nasa.ial.mde.solver;
 
 import gov.nasa.ial.mde.properties.MdeSettings;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 
 /**
  * The represents nodes of MDE features.
@@ -22,8 +29,16 @@ import java.util.LinkedHashMap;
  */
 public class MdeFeatureNode {
     
+    // Element names for the keys, with the characters XML does not allow
+    // removed. The keys are field and feature names, so this stays small.
+    private static final ConcurrentHashMap<String, String> elementNames = new ConcurrentHashMap<String, String>();
+
     private LinkedHashMap<String, ArrayList<Object>> values = new LinkedHashMap<String, ArrayList<Object>>();
 
+    // Counts the changes to the child nodes, so MdeFeatureNodeManager can
+    // tell whether a path it looked up before still leads to the same nodes.
+    private int structureVersion;
+
     /**
      * Default constructor.
      */
@@ -114,6 +129,7 @@ public class MdeFeatureNode {
 
         //l.add (new MdeFeatureNode());
         values.put(key, l);
+        structureVersion++;
     } // end addKey
 
     /**
@@ -129,7 +145,8 @@ public class MdeFeatureNode {
             throw new IllegalArgumentException("Key \"" + key + "\" not found.");
 
         l.add(value);
-        values.put(key, l);
+        if (value instanceof MdeFeatureNode)
+            structureVersion++;
     } // end addValue
 
     /**
@@ -141,6 +158,16 @@ public class MdeFeatureNode {
         return values.size();
     } // end numKeys
 
+    /**
+     * Returns a number that changes whenever a key is added or a child node
+     * is added to this node.
+     * 
+     * @return the structure version.
+     */
+    int getStructureVersion() {
+        return structureVersion;
+    } // end getStructureVersion
+
     /**
      * Returns an array of all the keys.
      * 
@@ -163,39 +190,126 @@ public class MdeFeatureNode {
      * @return an XML string representation of the MDE feature node.
      */
     public String getXMLString() {
-        return MdeFeatureNode.toXML(this);
+        StringBuilder b = new StringBuilder(256);
+
+        try {
+            writeXML(b);
+        } catch (IOException e) {
+            // A StringBuilder never throws.
+            throw new IllegalStateException(e);
+        }
+        return b.toString();
     } // end getXMLString
-    
 
+    /**
+     * Writes the XML representation of the MDE feature node to the output in
+     * a single pass, without building a string for each child node.
+     * 
+     * @param out the output to append the XML to.
+     * @throws IOException if the output fails.
+     * @see #getXMLString()
+     */
+    public void writeXML(Appendable out) throws IOException {
+        MdeFeatureNode.toXML(this, out);
+    } // end writeXML
+
+    private static void toXML(MdeFeatureNode r, Appendable out) throws IOException {
+        for (Map.Entry<String, ArrayList<Object>> e : r.values.entrySet()) {
+            ArrayList<Object> l = e.getValue();
+            String k = null;
+            int i, n = l.size();
+
+            for (i = 0; i < n; i++) {
+                Object o = l.get(i);
+
+                // Blank values and child nodes without content are left out.
+                if (!MdeFeatureNode.hasContent(o))
+                    continue;
+                if (k == null)
+                    k = MdeFeatureNode.elementName(e.getKey());
+
+                out.append("\n<").append(k).append('>');
+                if (o instanceof MdeFeatureNode) {
+                    MdeFeatureNode.toXML((MdeFeatureNode)o, out);
+                    out.append('\n');
+                } else {
+                    MdeFeatureNode.escape((String)o, out);
+                }
+                out.append("</").append(k).append('>');
+            } // end for
+        } // end for
+    } // end toXML
 
     /**
-     * Converts the specifed MDE feature node into its XML representation.
+     * Sends the MDE feature node to the content handler as the same elements
+     * and character data that parsing {@link #getXMLString()} would produce,
+     * without building the string.
      * 
-     * @param r the MDE feature node.
-     * @return the XML representation of the node.
+     * @param handler the content handler to receive the elements.
+     * @throws SAXException if the handler fails.
      */
-    private static String toXML(MdeFeatureNode r) {
+    public void toSAX(ContentHandler handler) throws SAXException {
+        MdeFeatureNode.toSAX(this, handler, new AttributesImpl());
+    } // end toSAX
+
+    private static void toSAX(MdeFeatureNode r, ContentHandler handler, AttributesImpl noAttributes)
+            throws SAXException {
         int i, n = r.numKeys();
         String[] keys = r.keys();
-        StringBuffer b = new StringBuffer();
 
         for (i = 0; i < n; i++) {
             ArrayList<Object> l = r.values.get(keys[i]);
-            String k = MdeFeatureNode.massageKeyString(keys[i]);
+            String k = null;
             Iterator<Object> it = l.iterator();
 
             while (it.hasNext()) {
                 Object o = it.next();
-                String v = (o instanceof MdeFeatureNode) ? MdeFeatureNode.toXML((MdeFeatureNode)o) + "\n"
-                        : MdeFeatureNode.massageValueString((String)o);
 
-                if (v.trim().length() > 0)
-                    b.append("\n<" + k + ">" + v + "</" + k + ">");
+                if (!MdeFeatureNode.hasContent(o))
+                    continue;
+                if (k == null)
+                    k = MdeFeatureNode.elementName(keys[i]);
+
+                characters(handler, "\n");
+                handler.startElement("", k, k, noAttributes);
+                if (o instanceof MdeFeatureNode) {
+                    MdeFeatureNode.toSAX((MdeFeatureNode)o, handler, noAttributes);
+                    characters(handler, "\n");
+                } else {
+                    characters(handler, (String)o);
+                }
+                handler.endElement("", k, k);
             } // end while
         } // end for
+    } // end toSAX
+
+    // True if the value adds an element to the XML, which toXML only does for
+    // values that are not blank.
+    private static boolean hasContent(Object o) {
+        if (o instanceof MdeFeatureNode) {
+            for (ArrayList<Object> l : ((MdeFeatureNode)o).values.values()) {
+                int i, n = l.size();
+
+                for (i = 0; i < n; i++)
+                    if (MdeFeatureNode.hasContent(l.get(i)))
+                        return true;
+            }
+            return false;
+        }
 
-        return b.toString();
-    } // end toXML
+        String s = (String)o;
+        int i, n = s.length();
+
+        // Same test as trim(), without the copy.
+        for (i = 0; i < n; i++)
+            if (s.charAt(i) > ' ')
+                return true;
+        return false;
+    } // end hasContent
+
+    private static void characters(ContentHandler handler, String s) throws SAXException {
+        handler.characters(s.toCharArray(), 0, s.length());
+    } // end characters
 
     private ArrayList<Object> getChildList(String key, Class<?> c) {
         ArrayList<Object> l = getList(key);
@@ -216,24 +330,41 @@ public class MdeFeatureNode {
         return n;
     } // end getChildList
 
-    private static String massageKeyString(String k) {
-        return k.replaceAll("[^a-zA-Z0-9]", "");
-    } // end massageKeyString
-
-    private static String massageValueString(String theString) {
-        String outString = theString.replaceAll(">", "&gt;");
-        outString = outString.replaceAll("<", "&lt;");
-        //int i;
-
-        /*
-         * while((i = outString.indexOf("{"))>-1) { outString =
-         * outString.substring(0,i) + "_open_curly_bracket_"+
-         * outString.substring(i+1); } while((i = outString.indexOf("}"))>-1) {
-         * outString = outString.substring(0,i) + "_close_curly_bracket_"+
-         * outString.substring(i+1); }
-         */
-        return outString;
-    } // end massageValueString
+    // The key with everything but ASCII letters and digits removed.
+    private static String elementName(String k) {
+        String name = elementNames.get(k);
+
+        if (name == null) {
+            int i, n = k.length();
+            StringBuilder b = new StringBuilder(n);
+
+            for (i = 0; i < n; i++) {
+                char c = k.charAt(i);
+
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))
+                    b.append(c);
+            } // end for
+            name = b.toString();
+            elementNames.put(k, name);
+        }
+        return name;
+    } // end elementName
+
+    // Appends the value with '<' and '>' escaped. Nothing else is escaped,
+    // which is what the stylesheets have always been given.
+    private static void escape(String s, Appendable out) throws IOException {
+        int i, start = 0, n = s.length();
+
+        for (i = 0; i < n; i++) {
+            char c = s.charAt(i);
+
+            if (c == '<' || c == '>') {
+                out.append(s, start, i).append((c == '<') ? "&lt;" : "&gt;");
+                start = i + 1;
+            }
+        } // end for
+        out.append(s, start, n);
+    } // end escape
 
     public ArrayList<Object> getValues(String key) {
     	return this.values.get(key);
@@ -7,6 +7,8 @@
 package gov.nasa.ial.mde.solver;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The class manages the MDE feature nodes.
@@ -23,11 +25,19 @@ public class MdeFeatureNodeManager {
 	public static String GRAPH_DATA_NAME = "GraphData";
 	public static String GRAPH_DATA_PATH = MDE_PATH + GRAPH_DATA_NAME + "/";
 	
+    /** Most paths to parse or index before the caches start over. */
+    private final static int MAX_PATHS = 1024;
+
+    // Parsed paths, shared by all the managers. The paths are mostly string
+    // literals, so there are few of them.
+    private final static ConcurrentHashMap<String, Path> parsedPaths = new ConcurrentHashMap<String, Path>();
+
     private MdeFeatureNode root;
     private MdeFeatureNode current;
-    private String[] pathSegments;
-    private int numSegments;
-    private ArrayList<MdeFeatureNode> nodeList = new ArrayList<MdeFeatureNode>();
+
+    // The nodes found for each path, from the root and from the current node.
+    private HashMap<String, Lookup> rootIndex = new HashMap<String, Lookup>();
+    private HashMap<String, Lookup> currentIndex = new HashMap<String, Lookup>();
     
     /** Position to add a node. */
     protected final static int ADD_LAST = -2, ADD_ALL = -1;
@@ -68,6 +78,8 @@ public class MdeFeatureNodeManager {
 
         switch (n.length) {
         case 1:
+            if (current != n[0])
+                currentIndex.clear();
             current = n[0];
             return;
 
@@ -116,7 +128,7 @@ public class MdeFeatureNodeManager {
      * @param whichNode which node to add to and is one of ADD_ALL or ADD_LAST.
      */
     public void addKey(String path, String key, int whichNode) {
-        MdeFeatureNode[] n = getNodes(path);
+        MdeFeatureNode[] n = lookup(path);
         int i, l = n.length;
 
         switch (whichNode) {
@@ -146,7 +158,7 @@ public class MdeFeatureNodeManager {
      * @param whichNode which node to add to and is one of ADD_ALL or ADD_LAST.
      */
     public void addValue(String path, String key, Object value, int whichNode) {
-        MdeFeatureNode[] n = getNodes(path);
+        MdeFeatureNode[] n = lookup(path);
         int i, l = n.length;
 
         switch (whichNode) {
@@ -174,7 +186,7 @@ public class MdeFeatureNodeManager {
      * @param key the key to add.
      */
     public void addNode(String path, String key) {
-        MdeFeatureNode[] n = getNodes(path);
+        MdeFeatureNode[] n = lookup(path);
         int i, l = n.length;
 
         for (i = 0; i < l; i++) {
@@ -189,6 +201,8 @@ public class MdeFeatureNodeManager {
      * Resets the current node to the root node.
      */
     public void resetCurrent() {
+        if (current != root)
+            currentIndex.clear();
         current = root;
     } // end resetCurrent
 
@@ -199,13 +213,7 @@ public class MdeFeatureNodeManager {
      * @return the MDE feature nodes belonging to the path.
      */
     public MdeFeatureNode[] getNodes(String path) {
-        parsePath(path);
-        nodeList.clear();
-        if (path.trim().startsWith("/"))
-            collectMFNs(root, 0);
-        else
-            collectMFNs(current, 0);
-        return nodeList.toArray(new MdeFeatureNode[nodeList.size()]);
+        return lookup(path).clone();
     } // end getNodes
 
     /**
@@ -217,26 +225,66 @@ public class MdeFeatureNodeManager {
         return root.getXMLString();
     } // end toString
 
-    private void collectMFNs(MdeFeatureNode r, int segmentNumber) {
-        if (segmentNumber == numSegments) {
-            nodeList.add(r);
+    /*
+     * Returns the nodes for the path without copying them. A path looked up
+     * before is answered from the index as long as none of the nodes walked
+     * to reach it has gained a key or a child node since, so the cost is one
+     * version check per level of the path.
+     */
+    private MdeFeatureNode[] lookup(String path) {
+        Path p = parsePath(path);
+        HashMap<String, Lookup> index = p.absolute ? rootIndex : currentIndex;
+        Lookup l = index.get(path);
+
+        if (l != null && l.isValid())
+            return l.nodes;
+
+        Lookup.Builder b = new Lookup.Builder();
+
+        collectMFNs(p.absolute ? root : current, p.segments, 0, b);
+        l = b.build();
+        if (index.size() >= MAX_PATHS)
+            index.clear();
+        index.put(path, l);
+        return l.nodes;
+    } // end lookup
+
+    private static void collectMFNs(MdeFeatureNode r, String[] segments, int segmentNumber, Lookup.Builder b) {
+        if (segmentNumber == segments.length) {
+            b.nodes.add(r);
             return;
         } // end if
 
-        MdeFeatureNode[] nodes = r.getChildNodes(pathSegments[segmentNumber]);
-        int i, n = nodes.length;
+        ArrayList<Object> l = r.getList(segments[segmentNumber]);
+
+        if (l == null)
+            throw new IllegalArgumentException("Key \"" + segments[segmentNumber] + "\" not available");
 
-        for (i = 0; i < n; i++)
-            collectMFNs(nodes[i], segmentNumber + 1);
+        b.walked.add(r);
+        b.versions.add(r.getStructureVersion());
+
+        int i, n = l.size();
+
+        for (i = 0; i < n; i++) {
+            Object o = l.get(i);
+
+            if (o instanceof MdeFeatureNode)
+                collectMFNs((MdeFeatureNode)o, segments, segmentNumber + 1, b);
+        } // end for i
     } // end collectMFNs
 
-    private void parsePath(String path) {
-        String[] p = path.split("/");
+    private static Path parsePath(String path) {
+        Path p = parsedPaths.get(path);
+
+        if (p != null)
+            return p;
+
+        String[] s = path.split("/");
         ArrayList<String> t = new ArrayList<String>();
-        int i, n = p.length;
+        int i, n = s.length;
 
         for (i = 0; i < n; i++) {
-            String u = p[i].trim();
+            String u = s[i].trim();
 
             if (u.length() == 0)
                 continue;
@@ -244,8 +292,60 @@ public class MdeFeatureNodeManager {
             t.add(u);
         } // end for i
 
-        numSegments = t.size();
-        pathSegments = t.toArray(new String[numSegments]);
+        p = new Path(t.toArray(new String[t.size()]), path.trim().startsWith("/"));
+        if (parsedPaths.size() >= MAX_PATHS)
+            parsedPaths.clear();
+        parsedPaths.put(path, p);
+        return p;
     } // end parsePath
 
+    /** A path split into its segments. */
+    private static class Path {
+        final String[] segments;
+        final boolean absolute;
+
+        Path(String[] segments, boolean absolute) {
+            this.segments = segments;
+            this.absolute = absolute;
+        } // end Path
+    } // end class Path
+
+    /** The nodes found for a path, and the nodes walked to find them. */
+    private static class Lookup {
+        final MdeFeatureNode[] nodes;
+        final MdeFeatureNode[] walked;
+        final int[] versions;
+
+        Lookup(MdeFeatureNode[] nodes, MdeFeatureNode[] walked, int[] versions) {
+            this.nodes = nodes;
+            this.walked = walked;
+            this.versions = versions;
+        } // end Lookup
+
+        boolean isValid() {
+            int i, n = walked.length;
+
+            for (i = 0; i < n; i++)
+                if (walked[i].getStructureVersion() != versions[i])
+                    return false;
+            return true;
+        } // end isValid
+
+        static class Builder {
+            final ArrayList<MdeFeatureNode> nodes = new ArrayList<MdeFeatureNode>();
+            final ArrayList<MdeFeatureNode> walked = new ArrayList<MdeFeatureNode>();
+            final ArrayList<Integer> versions = new ArrayList<Integer>();
+
+            Lookup build() {
+                int i, n = versions.size();
+                int[] v = new int[n];
+
+                for (i = 0; i < n; i++)
+                    v[i] = versions.get(i);
+                return new Lookup(nodes.toArray(new MdeFeatureNode[nodes.size()]),
+                        walked.toArray(new MdeFeatureNode[walked.size()]), v);
+            } // end build
+        } // end class Builder
+    } // end class Lookup
+
 } // end class MdeFeatureNodeManager
@@ -18,7 +18,15 @@ import gov.nasa.ial.mde.solver.features.individual.RangeFeature;
 import gov.nasa.ial.mde.solver.features.individual.XInterceptFeature;
 import gov.nasa.ial.mde.solver.features.individual.YInterceptFeature;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 
 /**
  * The class represents a solved graph.
@@ -48,6 +56,23 @@ public class SolvedGraph implements DomainAndRangeFeature, InterceptsFeature, Mi
 
     private MdeFeatureNodeManager featureTree;
 
+    /**
+     * Computes features that are only needed by some description modes. The
+     * computation is run the first time one of its features is asked for.
+     * 
+     * @see SolvedGraph#deferFeatures(String[], DeferredFeatures)
+     */
+    protected interface DeferredFeatures {
+        /**
+         * Puts the deferred features.
+         */
+        public void compute();
+    } // end interface DeferredFeatures
+
+    // Computations not run yet, in the order they were deferred, with the
+    // keys each one puts.
+    private LinkedHashMap<DeferredFeatures, String[]> deferredFeatures = new LinkedHashMap<DeferredFeatures, String[]>();
+
     /**
      * Default constructor.
      */
@@ -173,8 +198,63 @@ public class SolvedGraph implements DomainAndRangeFeature, InterceptsFeature, Mi
      */
     public void copyFrom(SolvedGraph other) {
         featureTree = other.featureTree;
+        deferredFeatures = other.deferredFeatures;
     } // end copyFrom
 
+    /**
+     * Puts off computing the features for the specified keys until one of
+     * them is asked for. The keys must already exist, so that the order of
+     * the features does not depend on when they are computed.
+     * 
+     * @param keys the keys the computation puts features for.
+     * @param computation the computation.
+     */
+    protected void deferFeatures(String[] keys, DeferredFeatures computation) {
+        deferredFeatures.put(computation, keys);
+    } // end deferFeatures
+
+    /**
+     * Computes the deferred features for the specified keys. Deferred
+     * features for other keys are left for later.
+     * 
+     * @param keys the feature keys, or null for all of the features.
+     */
+    public void computeFeatures(Collection<String> keys) {
+        DeferredFeatures next;
+
+        // A computation may ask for other features, so look for the next one
+        // again after each has run.
+        do {
+            next = null;
+            for (Map.Entry<DeferredFeatures, String[]> e : deferredFeatures.entrySet()) {
+                if (keys == null || SolvedGraph.containsAny(keys, e.getValue())) {
+                    next = e.getKey();
+                    break;
+                }
+            } // end for
+            if (next != null) {
+                deferredFeatures.remove(next);
+                next.compute();
+            }
+        } while (next != null);
+    } // end computeFeatures
+
+    /**
+     * Computes all of the deferred features.
+     */
+    public void computeAllFeatures() {
+        computeFeatures(null);
+    } // end computeAllFeatures
+
+    private static boolean containsAny(Collection<String> keys, String[] k) {
+        int i, n = k.length;
+
+        for (i = 0; i < n; i++)
+            if (keys.contains(k[i]))
+                return true;
+        return false;
+    } // end containsAny
+
     /**
      * Returns the compass direction based on the angle.
      * 
@@ -228,18 +308,65 @@ public class SolvedGraph implements DomainAndRangeFeature, InterceptsFeature, Mi
      * @return an XML represntation of the solved graph.
      */
     public String getXMLString() {
-        MdeFeatureNode[] nodes = featureTree.getNodes("/MDE");
+        StringBuilder b = new StringBuilder(1024);
+
+        try {
+            writeXML(b);
+        } catch (IOException e) {
+            // A StringBuilder never throws.
+            throw new IllegalStateException(e);
+        }
+        return b.toString();
+    } // end getXMLString
+
+    /**
+     * Returns the top level nodes of the feature tree, the ones inside the
+     * <code>MDE</code> element, with all of the deferred features computed.
+     * 
+     * @return the top level feature nodes.
+     */
+    public MdeFeatureNode[] getFeatureNodes() {
+        computeAllFeatures();
+        return featureTree.getNodes("/MDE");
+    } // end getFeatureNodes
+
+    /**
+     * Writes the XML representation of the solved graph to the output.
+     * 
+     * @param out the output to append the XML to.
+     * @throws IOException if the output fails.
+     * @see #getXMLString()
+     */
+    public void writeXML(Appendable out) throws IOException {
+        MdeFeatureNode[] nodes = getFeatureNodes();
         int i, n = nodes.length;
-        StringBuffer b = new StringBuffer();
 
         for (i = 0; i < n; i++)
-            b.append(nodes[i].getXMLString());
+            nodes[i].writeXML(out);
+    } // end writeXML
 
-        return b.toString();
-    } // end getXMLString
+    /**
+     * Sends the solved graph to the content handler as the elements of its
+     * XML representation, without building the XML string. Deferred features
+     * that have not been computed are left out, so call
+     * {@link #computeFeatures(Collection)} first for the ones the reader
+     * needs.
+     * 
+     * @param handler the content handler to receive the elements.
+     * @throws SAXException if the handler fails.
+     * @see #getXMLString()
+     */
+    public void toSAX(ContentHandler handler) throws SAXException {
+        MdeFeatureNode[] nodes = featureTree.getNodes("/MDE");
+        int i, n = nodes.length;
+
+        for (i = 0; i < n; i++)
+            nodes[i].toSAX(handler);
+    } // end toSAX
     
     public Object getValue(String path, String key) throws NullPointerException {
     	Object value = null;
+    	computeFeatures(Collections.singleton(key));
     	//System.out.println(this.featureTree.getCurrent());
     	MdeFeatureNode[] nodes = this.featureTree.getNodes(path);
     	for(MdeFeatureNode node : nodes) {
@@ -258,6 +385,7 @@ public class SolvedGraph implements DomainAndRangeFeature, InterceptsFeature, Mi
     
     public Object getValues(String path, String key) throws NullPointerException {
     	Object value = null;
+    	computeFeatures(Collections.singleton(key));
     //	System.out.println(this.featureTree.getCurrent());
     	MdeFeatureNode[] nodes = this.featureTree.getNodes(path);
     	for(MdeFeatureNode node : nodes) {
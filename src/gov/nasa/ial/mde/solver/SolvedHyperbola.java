@@ -164,7 +164,14 @@ public class SolvedHyperbola extends SolvedConic implements VertexFeature, Asymp
         putFeature("conjugateAxis", QuadraticClassifier.getEquationOfALine(center, conjugateAxisInclination, vars));
         putFeature("asymptotes", QuadraticClassifier.getEquationOfALine(center, alpha + asymptoteInclination, vars));
         addToFeature("asymptotes", QuadraticClassifier.getEquationOfALine(center, alpha - asymptoteInclination, vars));
-        addDomainAndRange();
+
+        // Solves each asymptote as a separate equation, so only do it if the
+        // domain or range is described.
+        deferFeatures(new String[] { "domain", "range" }, new DeferredFeatures() {
+            public void compute() {
+                addDomainAndRange();
+            }
+        });
         
      
         //System.out.println(getXMLString());
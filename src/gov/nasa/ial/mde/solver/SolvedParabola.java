@@ -173,71 +173,16 @@ public class SolvedParabola extends SolvedConic implements VertexFeature, FocalL
             "line given by " + QuadraticClassifier.getEquationOfALine(directrixPoint, directrixInclination, analyzedEq.getActualVariables()));
         putFeature("openDirection", SolvedGraph.getGeneralDir(ope));
 
-        /* find domain, range and ascending/descending regions */
+        /* find domain, range and ascending/descending regions when asked for */
         if (alpha == 0.0) { // otherwise much more complicated -- defer for now
-            IntervalXY D, R; // domain and range
-            IntervalXY ar, dr; // ascending/descending regions
-
-            switch (ope) {
-                case UP :
-                    D = new IntervalXY(analyzedEq.getActualVariables()[0], Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
-                    D.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X | IntervalXY.EXCLUDE_HIGH_X);
-                    putFeature("domain", D);
-
-                    R = new IntervalXY(analyzedEq.getActualVariables()[1], vertex.y, Double.POSITIVE_INFINITY);
-                    R.setEndPointExclusions(IntervalXY.EXCLUDE_HIGH_X);
-                    putFeature("range", R);
-
-                    ar = new IntervalXY(analyzedEq.getActualVariables()[0], vertex.x, Double.POSITIVE_INFINITY);
-                    ar.setEndPointExclusions(IntervalXY.EXCLUDE_HIGH_X);
-                    putFeature("ascendingRegions", ar);
-
-                    dr = new IntervalXY(analyzedEq.getActualVariables()[0], Double.NEGATIVE_INFINITY, vertex.x);
-                    dr.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X);
-                    putFeature("descendingRegions", dr);
-                    break;
-
-                case DOWN :
-                    D = new IntervalXY(analyzedEq.getActualVariables()[0], Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
-                    D.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X | IntervalXY.EXCLUDE_HIGH_X);
-                    putFeature("domain", D);
-
-                    R = new IntervalXY(analyzedEq.getActualVariables()[1], Double.NEGATIVE_INFINITY, vertex.y);
-                    R.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X);
-                    putFeature("range", R);
-
-                    dr = new IntervalXY(analyzedEq.getActualVariables()[0], vertex.x, Double.POSITIVE_INFINITY);
-                    dr.setEndPointExclusions(IntervalXY.EXCLUDE_HIGH_X);
-                    putFeature("descendingRegions", dr);
-
-                    ar = new IntervalXY(analyzedEq.getActualVariables()[0], Double.NEGATIVE_INFINITY, vertex.x);
-                    ar.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X);
-                    putFeature("ascendingRegions", ar);
-                    break;
-
-                case RIGHT :
-                    D = new IntervalXY(analyzedEq.getActualVariables()[0], vertex.x, Double.POSITIVE_INFINITY);
-                    D.setEndPointExclusions(IntervalXY.EXCLUDE_HIGH_X);
-                    putFeature("domain", D);
-
-                    R = new IntervalXY(analyzedEq.getActualVariables()[1], Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
-                    R.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X | IntervalXY.EXCLUDE_HIGH_X);
-                    putFeature("range", R);
-                    break;
-
-                case LEFT :
-                    D = new IntervalXY(analyzedEq.getActualVariables()[0], Double.NEGATIVE_INFINITY, vertex.x);
-                    D.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X);
-                    putFeature("domain", D);
-
-                    R = new IntervalXY(analyzedEq.getActualVariables()[1], Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
-                    R.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X | IntervalXY.EXCLUDE_HIGH_X);
-                    putFeature("range", R);
-                    break;
-
-                default :
-                    throw new IllegalStateException("Invalid opening direction in SolvedParabola");
-            } // end switch
+            final PointXY v = vertex;
+
+            deferFeatures(new String[] { "domain", "range", "ascendingRegions", "descendingRegions" },
+                    new DeferredFeatures() {
+                        public void compute() {
+                            putDomainAndRegions(v);
+                        }
+                    });
         } // end if
         
         if(MdeSettings.DEBUG){
@@ -252,6 +197,78 @@ public class SolvedParabola extends SolvedConic implements VertexFeature, FocalL
 
     } // end SolvedParabola
 
+    /**
+     * Puts the domain, range and ascending and descending regions of an
+     * unrotated parabola.
+     * 
+     * @param vertex the vertex of the parabola.
+     */
+    private void putDomainAndRegions(PointXY vertex) {
+        IntervalXY D, R; // domain and range
+        IntervalXY ar, dr; // ascending/descending regions
+
+        switch (ope) {
+            case UP :
+                D = new IntervalXY(analyzedEq.getActualVariables()[0], Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+                D.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X | IntervalXY.EXCLUDE_HIGH_X);
+                putFeature("domain", D);
+
+                R = new IntervalXY(analyzedEq.getActualVariables()[1], vertex.y, Double.POSITIVE_INFINITY);
+                R.setEndPointExclusions(IntervalXY.EXCLUDE_HIGH_X);
+                putFeature("range", R);
+
+                ar = new IntervalXY(analyzedEq.getActualVariables()[0], vertex.x, Double.POSITIVE_INFINITY);
+                ar.setEndPointExclusions(IntervalXY.EXCLUDE_HIGH_X);
+                putFeature("ascendingRegions", ar);
+
+                dr = new IntervalXY(analyzedEq.getActualVariables()[0], Double.NEGATIVE_INFINITY, vertex.x);
+                dr.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X);
+                putFeature("descendingRegions", dr);
+                break;
+
+            case DOWN :
+                D = new IntervalXY(analyzedEq.getActualVariables()[0], Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+                D.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X | IntervalXY.EXCLUDE_HIGH_X);
+                putFeature("domain", D);
+
+                R = new IntervalXY(analyzedEq.getActualVariables()[1], Double.NEGATIVE_INFINITY, vertex.y);
+                R.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X);
+                putFeature("range", R);
+
+                dr = new IntervalXY(analyzedEq.getActualVariables()[0], vertex.x, Double.POSITIVE_INFINITY);
+                dr.setEndPointExclusions(IntervalXY.EXCLUDE_HIGH_X);
+                putFeature("descendingRegions", dr);
+
+                ar = new IntervalXY(analyzedEq.getActualVariables()[0], Double.NEGATIVE_INFINITY, vertex.x);
+                ar.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X);
+                putFeature("ascendingRegions", ar);
+                break;
+
+            case RIGHT :
+                D = new IntervalXY(analyzedEq.getActualVariables()[0], vertex.x, Double.POSITIVE_INFINITY);
+                D.setEndPointExclusions(IntervalXY.EXCLUDE_HIGH_X);
+                putFeature("domain", D);
+
+                R = new IntervalXY(analyzedEq.getActualVariables()[1], Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+                R.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X | IntervalXY.EXCLUDE_HIGH_X);
+                putFeature("range", R);
+                break;
+
+            case LEFT :
+                D = new IntervalXY(analyzedEq.getActualVariables()[0], Double.NEGATIVE_INFINITY, vertex.x);
+                D.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X);
+                putFeature("domain", D);
+
+                R = new IntervalXY(analyzedEq.getActualVariables()[1], Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+                R.setEndPointExclusions(IntervalXY.EXCLUDE_LOW_X | IntervalXY.EXCLUDE_HIGH_X);
+                putFeature("range", R);
+                break;
+
+            default :
+                throw new IllegalStateException("Invalid opening direction in SolvedParabola");
+        } // end switch
+    } // end putDomainAndRegions
+
 	
 	public PointXY getVertex() {
 		Object value = this.getValue(VertexFeature.PATH, VertexFeature.KEY);
@@ -68,6 +68,7 @@ public class SolvedTwoLines extends SolvedConic {
         putFeature("inclination", new NumberModel(inclination));
 
         if (Math.abs(inclination) <= 45.0) {
+            double[] yInts = getYInts();
             double d = 0.0;
 
             if (yInts.length == 2)
@@ -85,6 +86,7 @@ public class SolvedTwoLines extends SolvedConic {
                 addToFeature("equationStrings", QuadraticClassifier.getEquationOfALine(new PointXY(0.0, yInts[1]), inclination, vars));
         } // end if
         else {
+            double[] xInts = getXInts();
             double d = 0.0;
 
             if (xInts.length == 2)
@@ -22,10 +22,10 @@ public class SolvedXYGraph extends SolvedGraph {
     /** The analyzed equation for the graph. */
     protected AnalyzedEquation analyzedEq;
     
-    /** The x intercepts. */
+    /** The x intercepts, once computed by {@link #getXInts()}. */
     protected double[] xInts;
     
-    /** The y intercepts. */
+    /** The y intercepts, once computed by {@link #getYInts()}. */
     protected double[] yInts;
     
     private boolean nullOrAll = false;
@@ -76,8 +76,39 @@ public class SolvedXYGraph extends SolvedGraph {
         if (nullOrAll)
             return;
 
-        xInts = analyzedEq.getXIntercepts();
-        yInts = analyzedEq.getYIntercepts();
+        // Solving for the intercepts is only worth it if they are described.
+        deferFeatures(new String[] { XInterceptFeature.KEY, YInterceptFeature.KEY }, new DeferredFeatures() {
+            public void compute() {
+                putIntercepts();
+            }
+        });
+    } // end SolvedXYGraph
+
+    /**
+     * Returns the x intercepts, solving for them the first time.
+     * 
+     * @return the x intercepts.
+     */
+    protected double[] getXInts() {
+        if (xInts == null)
+            xInts = analyzedEq.getXIntercepts();
+        return xInts;
+    } // end getXInts
+
+    /**
+     * Returns the y intercepts, solving for them the first time.
+     * 
+     * @return the y intercepts.
+     */
+    protected double[] getYInts() {
+        if (yInts == null)
+            yInts = analyzedEq.getYIntercepts();
+        return yInts;
+    } // end getYInts
+
+    private void putIntercepts() {
+        double[] xInts = getXInts();
+        double[] yInts = getYInts();
 
         if (xInts != null) {
             for (int i = 0; i < xInts.length; i++) {
@@ -101,7 +132,7 @@ public class SolvedXYGraph extends SolvedGraph {
                     addToFeature(YInterceptFeature.KEY, MathUtil.trimDouble(yInts[i], 6));
             }
         }
-    } // end SolvedXYGraph
+    } // end putIntercepts
 
 //    public static void main(String[] args) {
 //        AnalyzedEquation e = new AnalyzedEquation(
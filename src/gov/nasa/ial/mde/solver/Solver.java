@@ -12,6 +12,7 @@ import gov.nasa.ial.mde.solver.Solution.SolutionFlagsStateChange;
 import gov.nasa.ial.mde.solver.symbolic.AnalyzedData;
 import gov.nasa.ial.mde.solver.symbolic.AnalyzedEquation;
 import gov.nasa.ial.mde.solver.symbolic.AnalyzedItem;
+import gov.nasa.ial.mde.util.StageTimer;
 
 import java.util.ArrayList;
 import java.util.EventListener;
@@ -437,10 +438,14 @@ public class Solver {
                         // Compute the points and graph-trails for the equation
                         // for the given bounds. The fuction test will also be
                     	// run by this method.
+                        long start = StageTimer.start();
                         analyzedItem.computePoints(bounds);
+                        StageTimer.stop(StageTimer.SAMPLE, start);
 
                         // Update the cached features.
+                        start = StageTimer.start();
                         analyzedItem.updateFeatures();
+                        StageTimer.stop(StageTimer.CLASSIFY, start);
                     }
 
                     // Update the bounds if they are different for the first
@@ -72,87 +72,284 @@ public class Action {
 } // end class Action
 
 class OperatorObject {
-    double eval(ParseNode[] values) {
+    double eval(ParseNode[] values, EvaluationContext c) {
         return 0.0;
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        vd[0] = vd[1] = 0.0;
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        Intervals.point(0.0, r);
+    } // end evalInterval
+
+    /**
+     * Returns the derivative of f(u) given f'(u) and the derivative of u. A
+     * constant argument gives 0 even where f'(u) is infinite.
+     */
+    static double chain(double dfdu, double du) {
+        return (du == 0.0) ? 0.0 : dfdu * du;
+    } // end chain
 } // end operatorObjectk
 
 class UnaryMinusObject extends OperatorObject {
-    double eval(ParseNode[] values) {
-        return -values[0].eval();
+    double eval(ParseNode[] values, EvaluationContext c) {
+        return -values[0].eval(c);
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        values[0].evalDual(c, vd);
+        vd[0] = -vd[0];
+        vd[1] = -vd[1];
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        values[0].evalInterval(c, r);
+        Intervals.negate(r, r);
+    } // end evalInterval
 } // end class UnaryMinusObject
 
 class SumObject extends OperatorObject {
-    double eval(ParseNode[] values) {
+    double eval(ParseNode[] values, EvaluationContext c) {
         double s = 0.0;
 
         for (int i = 0; i < values.length; i++)
-            s += values[i].eval();
+            s += values[i].eval(c);
         return s;
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        double s = 0.0, ds = 0.0;
+
+        for (int i = 0; i < values.length; i++) {
+            values[i].evalDual(c, vd);
+            s += vd[0];
+            ds += vd[1];
+        } // end for i
+        vd[0] = s;
+        vd[1] = ds;
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        double[] s = { 0.0, 0.0 };
+
+        for (int i = 0; i < values.length; i++) {
+            values[i].evalInterval(c, r);
+            Intervals.add(s, r, s);
+        } // end for i
+        r[0] = s[0];
+        r[1] = s[1];
+    } // end evalInterval
 } // end class SumObject
 
 class ReciprocalObject extends OperatorObject {
-    double eval(ParseNode[] values) {
-        return 1.0 / values[0].eval();
+    double eval(ParseNode[] values, EvaluationContext c) {
+        return 1.0 / values[0].eval(c);
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        values[0].evalDual(c, vd);
+        double r = 1.0 / vd[0];
+
+        vd[1] = chain(-r * r, vd[1]);
+        vd[0] = r;
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        values[0].evalInterval(c, r);
+        Intervals.reciprocal(r, r);
+    } // end evalInterval
 } // end reciprocalObjec
 
 class ProductObject extends OperatorObject {
-    double eval(ParseNode[] values) {
+    double eval(ParseNode[] values, EvaluationContext c) {
         double p = 1.0;
 
         for (int i = 0; i < values.length; i++)
-            p *= values[i].eval();
+            p *= values[i].eval(c);
         return p;
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        double p = 1.0, dp = 0.0;
+
+        for (int i = 0; i < values.length; i++) {
+            values[i].evalDual(c, vd);
+            dp = dp * vd[0] + p * vd[1];
+            p *= vd[0];
+        } // end for i
+        vd[0] = p;
+        vd[1] = dp;
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        double[] p = { 1.0, 1.0 };
+
+        for (int i = 0; i < values.length; i++) {
+            values[i].evalInterval(c, r);
+            Intervals.multiply(p, r, p);
+        } // end for i
+        r[0] = p[0];
+        r[1] = p[1];
+    } // end evalInterval
 } // end ProductObject
 
 class PowerObject extends OperatorObject {
-    double eval(ParseNode[] values) {
-        return Math.pow(values[0].eval(), values[1].eval());
+    double eval(ParseNode[] values, EvaluationContext c) {
+        return Math.pow(values[0].eval(c), values[1].eval(c));
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        values[0].evalDual(c, vd);
+        double u = vd[0], du = vd[1];
+
+        values[1].evalDual(c, vd);
+        double w = vd[0], dw = vd[1];
+        double p = Math.pow(u, w);
+
+        vd[0] = p;
+        vd[1] = chain(w * Math.pow(u, w - 1.0), du) + chain(p * Math.log(u), dw);
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        double[] u = new double[2];
+
+        values[0].evalInterval(c, u);
+        values[1].evalInterval(c, r);
+        Intervals.power(u, r, r);
+    } // end evalInterval
 } // end PowerObject
 
 class SqrtObject extends OperatorObject {
-    double eval(ParseNode[] values) {
-        return Math.sqrt(values[0].eval());
+    double eval(ParseNode[] values, EvaluationContext c) {
+        return Math.sqrt(values[0].eval(c));
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        values[0].evalDual(c, vd);
+        double f = Math.sqrt(vd[0]);
+
+        vd[1] = chain(0.5 / f, vd[1]);
+        vd[0] = f;
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        values[0].evalInterval(c, r);
+        Intervals.function(Action.SQRT, r, r);
+    } // end evalInterval
 } // end SqrtObject
 
 class ExpObject extends OperatorObject {
-    double eval(ParseNode[] values) {
-        return Math.exp(values[0].eval());
+    double eval(ParseNode[] values, EvaluationContext c) {
+        return Math.exp(values[0].eval(c));
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        values[0].evalDual(c, vd);
+        double f = Math.exp(vd[0]);
+
+        vd[1] = chain(f, vd[1]);
+        vd[0] = f;
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        values[0].evalInterval(c, r);
+        Intervals.function(Action.EXPONENTIAL, r, r);
+    } // end evalInterval
 } // end ExpObject
 
 class LogObject extends OperatorObject {
-    double eval(ParseNode[] values) {
-        return Math.log(values[0].eval());
+    double eval(ParseNode[] values, EvaluationContext c) {
+        return Math.log(values[0].eval(c));
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        values[0].evalDual(c, vd);
+        double f = Math.log(vd[0]);
+
+        vd[1] = chain(1.0 / vd[0], vd[1]);
+        vd[0] = f;
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        values[0].evalInterval(c, r);
+        Intervals.function(Action.LOG, r, r);
+    } // end evalInterval
 } // end LogObject
 
 class SineObject extends OperatorObject {
-    double eval(ParseNode[] values) {
-        return Math.sin(values[0].eval());
+    double eval(ParseNode[] values, EvaluationContext c) {
+        return Math.sin(values[0].eval(c));
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        values[0].evalDual(c, vd);
+        double f = Math.sin(vd[0]);
+
+        vd[1] = chain(Math.cos(vd[0]), vd[1]);
+        vd[0] = f;
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        values[0].evalInterval(c, r);
+        Intervals.function(Action.SINE, r, r);
+    } // end evalInterval
 } // end SineObject
 
 class CosineObject extends OperatorObject {
-    double eval(ParseNode[] values) {
-        return Math.cos(values[0].eval());
+    double eval(ParseNode[] values, EvaluationContext c) {
+        return Math.cos(values[0].eval(c));
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        values[0].evalDual(c, vd);
+        double f = Math.cos(vd[0]);
+
+        vd[1] = chain(-Math.sin(vd[0]), vd[1]);
+        vd[0] = f;
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        values[0].evalInterval(c, r);
+        Intervals.function(Action.COSINE, r, r);
+    } // end evalInterval
 } // end CosineObject
 
 class TangentObject extends OperatorObject {
-    double eval(ParseNode[] values) {
-        return Math.tan(values[0].eval());
+    double eval(ParseNode[] values, EvaluationContext c) {
+        return Math.tan(values[0].eval(c));
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        values[0].evalDual(c, vd);
+        double f = Math.tan(vd[0]);
+
+        vd[1] = chain(1.0 + f * f, vd[1]);
+        vd[0] = f;
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        values[0].evalInterval(c, r);
+        Intervals.function(Action.TANGENT, r, r);
+    } // end evalInterval
 } // end TangentObject
 
 class AbsObject extends OperatorObject {
-    double eval(ParseNode[] values) {
-        return Math.abs(values[0].eval());
+    double eval(ParseNode[] values, EvaluationContext c) {
+        return Math.abs(values[0].eval(c));
     } // end eval
+
+    void evalDual(ParseNode[] values, EvaluationContext c, double[] vd) {
+        values[0].evalDual(c, vd);
+        double f = Math.abs(vd[0]);
+
+        vd[1] = chain(Math.signum(vd[0]), vd[1]);
+        vd[0] = f;
+    } // end evalDual
+
+    void evalInterval(ParseNode[] values, EvaluationContext c, double[] r) {
+        values[0].evalInterval(c, r);
+        Intervals.function(Action.ABS, r, r);
+    } // end evalInterval
 } // end AbsObject
@@ -22,6 +22,7 @@ import gov.nasa.ial.mde.solver.numeric.PolynomialModel;
 import gov.nasa.ial.mde.solver.numeric.QuadraticModel;
 import gov.nasa.ial.mde.util.MathUtil;
 import gov.nasa.ial.mde.util.PointsUtil;
+import gov.nasa.ial.mde.util.StageTimer;
 import gov.nasa.ial.mde.util.TrailUtil;
 
 import java.util.ArrayList;
@@ -67,6 +68,7 @@ public class AnalyzedEquation implements AnalyzedItem {
     private int dvpDegree; // degree of dvp
     private Expression[] dvpCoefficients; // coefficients of dvp
     private double[] doubleCoefficients; // dvp coefficients as a double array
+    private CoefficientEvaluator coefficientEvaluator; // compiled dvpCoefficients, made on first use
     private double[] reducedDVPCoefficients; //Workspace for Roots solution methods
     private double et, et2; // tolerances for EZ and EZ2
     private String[] actualVariables = { "x", "y" };
@@ -88,6 +90,13 @@ public class AnalyzedEquation implements AnalyzedItem {
     private MultiPointXY[] savedR = null;
     private double savedRXLow = 0.0;
     private double savedRXHigh = 0.0;
+    // The view the saved points were culled to, NaN if they were not culled.
+    private double savedRBottom = Double.NaN;
+    private double savedRTop = Double.NaN;
+    private boolean viewportCulling = false;
+
+    // Sample blocks no longer than this are solved rather than split again.
+    private static final int MIN_CULLING_BLOCK = 16;
     private boolean bad = false;
 
 	private int degree;
@@ -109,7 +118,10 @@ public class AnalyzedEquation implements AnalyzedItem {
      */
     public AnalyzedEquation(String eqString) {
         super();
-        if ((theEquation = new Equation(eqString)).bad) {
+        long start = StageTimer.start();
+        theEquation = EquationCache.getSharedInstance().get(eqString);
+        StageTimer.stop(StageTimer.PARSE, start);
+        if (theEquation.bad) {
             bad = true;
             return;
         }
@@ -310,6 +322,9 @@ public class AnalyzedEquation implements AnalyzedItem {
             throw new IllegalArgumentException("Attempt to change nonexistent parameter");
         }
         parameterHash.put(name, new Double(value));
+        if (coefficientEvaluator != null) {
+            coefficientEvaluator.loadParameters();
+        }
     } // end setParameterValue
 
     /* (non-Javadoc)
@@ -322,6 +337,7 @@ public class AnalyzedEquation implements AnalyzedItem {
         lhs = null;
         dvp = null; // dependent variable polynomial
         dvpCoefficients = null; // coefficients of dvp
+        coefficientEvaluator = null;
         doubleCoefficients = null; // dvp coefficients as a double array
         reducedDVPCoefficients = null; //Workspace for Roots solution methods
         actualVariables = null;
@@ -701,7 +717,7 @@ public class AnalyzedEquation implements AnalyzedItem {
      * @return the coefficients as an array of doubles.
      */
     public double[] getCoefficients(double x) {
-        Polynomial.evaluateCoefficients(dvpCoefficients, independentVariable, x, doubleCoefficients);
+        getCoefficientEvaluator().evaluate(x, doubleCoefficients);
         
         // The EZ et al methods are sensitive to the current value of x, so the
         // tolerances must be re-computed with every new value of x
@@ -710,6 +726,172 @@ public class AnalyzedEquation implements AnalyzedItem {
         return doubleCoefficients;
     } // end getCoefficients
 
+    /**
+     * Fills in the double values of the coefficients of the polynomial we will
+     * solve for the dependent variable at many values of the independent
+     * variable at once.
+     * 
+     * @param xs the values of the independent variable.
+     * @param count the number of values to use from <code>xs</code>.
+     * @param cd receives the coefficients: <code>cd[k][i]</code> is the
+     *		coefficient of the dependent variable to the power k at
+     *		<code>xs[i]</code>.
+     */
+    public void getCoefficients(double[] xs, int count, double[][] cd) {
+        getCoefficientEvaluator().evaluate(xs, count, cd);
+    } // end getCoefficients
+
+    private CoefficientEvaluator getCoefficientEvaluator() {
+        if (coefficientEvaluator == null) {
+            coefficientEvaluator = new CoefficientEvaluator(dvpCoefficients, independentVariable);
+        }
+        return coefficientEvaluator;
+    } // end getCoefficientEvaluator
+
+    /**
+     * Returns the slope of the graph at a point on it, found by implicit
+     * differentiation. Each coefficient is evaluated together with its exact
+     * derivative, so no neighbouring points are needed.
+     * 
+     * @param x the value of the independent variable.
+     * @param y a value of the dependent variable that solves the equation at
+     *		<code>x</code>.
+     * @return the derivative of the dependent variable with respect to the
+     *		independent variable at the point, or NaN or an infinity where
+     *		the graph has no finite slope.
+     */
+    public double getSlope(double x, double y) {
+        EvaluationContext c = getDerivativeContext(x);
+        double[] vd = new double[2];
+        double fx = 0.0, fy = 0.0;
+
+        // F(x, y) is the sum of c[i](x) * y^(n - i), and dy/dx = -F_x / F_y.
+        for (int i = 0; i <= dvpDegree; i++) {
+            evaluateCoefficientDerivative(i, c, vd);
+            fx = fx * y + vd[1];
+            if (i < dvpDegree)
+                fy = fy * y + (dvpDegree - i) * vd[0];
+        } // end for i
+
+        return -fx / fy;
+    } // end getSlope
+
+    /**
+     * Finds the critical points of a function between two values of the
+     * independent variable, where its slope is zero. The exact slope is
+     * evaluated at the ends of a number of equal intervals, and each
+     * interval where it changes sign is closed in on with Newton steps on
+     * the slope. The derivative of the slope for each step is taken from the
+     * change in the exact slope over the previous step, and a step that
+     * leaves the interval is replaced by bisection.
+     * 
+     * @param left the left end of the domain to search.
+     * @param right the right end of the domain to search.
+     * @param intervals the number of intervals to check for a sign change.
+     * @return the values of the independent variable at the critical points,
+     *		in increasing order, or an empty array if the equation is not a
+     *		solvable function.
+     */
+    public double[] findCriticalPoints(double left, double right, int intervals) {
+        if (!isSolvableFunction() || !(right > left) || (intervals < 1))
+            return new double[0];
+
+        double[] r = new double[intervals + 1];
+        double h = (right - left) / intervals;
+        double x0 = left, s0 = getFunctionSlope(left);
+        int i, n = 0;
+
+        for (i = 1; i <= intervals; i++) {
+            double x1 = (i == intervals) ? right : left + i * h;
+            double s1 = getFunctionSlope(x1);
+
+            if (s0 == 0.0) {
+                r[n++] = x0;
+            } else if (s0 * s1 < 0.0) {
+                double x = findZeroSlope(x0, s0, x1, s1);
+
+                // A pole where the slope changes sign is not a critical point.
+                if (Math.abs(getFunctionSlope(x)) <= Math.min(Math.abs(s0), Math.abs(s1)))
+                    r[n++] = x;
+            } // end if
+
+            x0 = x1;
+            s0 = s1;
+        } // end for i
+
+        if (s0 == 0.0)
+            r[n++] = x0;
+
+        double[] critical = new double[n];
+
+        System.arraycopy(r, 0, critical, 0, n);
+        return critical;
+    } // end findCriticalPoints
+
+    private double findZeroSlope(double a, double sa, double b, double sb) {
+        double x = b, sx = sb, xPrev = a, sPrev = sa;
+
+        for (int k = 0; k < 60; k++) {
+            double xNew = x - sx * (x - xPrev) / (sx - sPrev);
+
+            if (!(xNew > a && xNew < b))
+                xNew = 0.5 * (a + b);
+
+            double sNew = getFunctionSlope(xNew);
+
+            if ((sNew == 0.0) || (Math.abs(xNew - x) <= 1.0e-12 * Math.max(1.0, Math.abs(xNew))))
+                return xNew;
+
+            if ((sNew < 0.0) == (sa < 0.0)) {
+                a = xNew;
+                sa = sNew;
+            } else {
+                b = xNew;
+            } // end else
+
+            xPrev = x;
+            sPrev = sx;
+            x = xNew;
+            sx = sNew;
+        } // end for k
+
+        return x;
+    } // end findZeroSlope
+
+    /**
+     * Returns the slope of y = -c[1](x) / c[0](x), for an equation that
+     * defines a function.
+     */
+    private double getFunctionSlope(double x) {
+        EvaluationContext c = getDerivativeContext(x);
+        double[] vd = new double[2];
+
+        evaluateCoefficientDerivative(0, c, vd);
+        double c0 = vd[0], d0 = vd[1];
+
+        evaluateCoefficientDerivative(1, c, vd);
+        return (vd[0] * d0 - vd[1] * c0) / (c0 * c0);
+    } // end getFunctionSlope
+
+    private EvaluationContext getDerivativeContext(double x) {
+        Hashtable<String, Double> inputs = new Hashtable<String, Double>();
+
+        inputs.put(independentVariable, new Double(x));
+        return new EvaluationContext(parameterHash, inputs, independentVariable);
+    } // end getDerivativeContext
+
+    private void evaluateCoefficientDerivative(int k, EvaluationContext c, double[] vd) {
+        Expression e = dvpCoefficients[k];
+
+        if (e.theValue != null) {
+            vd[0] = e.theValue.doubleValue();
+            vd[1] = 0.0;
+        } else {
+            c.reset();
+            e.evaluateDerivative(c, vd);
+        } // end else
+    } // end evaluateCoefficientDerivative
+
     /**
      * Finds all real values of the dependent variable which correspond to a given
      * value of the independent variable.
@@ -732,6 +914,41 @@ public class AnalyzedEquation implements AnalyzedItem {
         return getSolution(x);
     } // end findRealSolutions
 
+    /**
+     * Finds all real values of the dependent variable for each of several
+     * values of the independent variable, evaluating the coefficients for all
+     * of them in one pass.
+     * 
+     * @param xs the values of the independent variable.
+     * @param count the number of values to use from <code>xs</code>.
+     * @return the solutions, in the same form as
+     * 		{@link #findRealSolutions(double)} gives for each value.
+     */
+    public MultiPointXY[] findRealSolutions(double[] xs, int count) {
+        MultiPointXY[] r = new MultiPointXY[count];
+        int i, k;
+
+        if ((constantSolution != null) || isConstant() || cannotBeSolved() || isUndefined()) {
+            for (i = 0; i < count; i++) {
+                r[i] = findRealSolutions(xs[i]);
+            }
+            return r;
+        } // end if
+
+        double[][] cd = new double[dvpDegree + 1][count];
+
+        getCoefficients(xs, count, cd);
+        for (i = 0; i < count; i++) {
+            for (k = 0; k <= dvpDegree; k++) {
+                doubleCoefficients[k] = cd[k][i];
+            }
+            setTolerances();
+            r[i] = actuallySolve(dvpDegree, xs[i]);
+        } // end for i
+
+        return r;
+    } // end findRealSolutions
+
     /**
      * Returns the two variables used in the equation if the equation only contains
      * one variable, makes a reasonable guess as to the other implied variable.
@@ -992,6 +1209,7 @@ public class AnalyzedEquation implements AnalyzedItem {
     private void computeCoefficients() {
         dvpDegree = dvp.getDegree();
         dvpCoefficients = Polynomial.getCoefficientsAsExpressions(dvp, dependentVariable);
+        coefficientEvaluator = null;
         for (int i = 0; i <= dvpDegree; i++)
             dvpCoefficients[i].setParameterHash(parameterHash);
 
@@ -1115,6 +1333,15 @@ public class AnalyzedEquation implements AnalyzedItem {
     } // end getVerticalGraphTrails
 
     private MultiPointXY[] solveForPoints(double low, double high) {
+        return solveForPoints(low, high, Double.NaN, Double.NaN);
+    } // end solveForPoints
+
+    /**
+     * Solves for the points at the sample values of the independent variable.
+     * If viewport culling is on and a view is given, sample points where the
+     * graph provably lies outside the view get no values.
+     */
+    private MultiPointXY[] solveForPoints(double low, double high, double bottom, double top) {
         int i;
         int n = NUM_POINTS;
         double delta = (high - low) / (n - 1.0);
@@ -1123,6 +1350,9 @@ public class AnalyzedEquation implements AnalyzedItem {
         MultiPointXY[] r = new MultiPointXY[n];
         boolean found = false;
         int l = 0;
+        double[] xs = new double[n];
+        int[] missing = new int[n];
+        int m = 0;
         
         // Determine if the low and high range has changes which means we can
         // not reuse the savedR array.
@@ -1138,9 +1368,27 @@ public class AnalyzedEquation implements AnalyzedItem {
             // New upper range on X, so clear the cached real points.
             savedR = null;
         }
+
+        boolean cull = viewportCulling && !Double.isNaN(bottom) && isCartesian() && (constantSolution == null)
+                && !isConstant() && !cannotBeSolved() && !isUndefined();
+
+        if (!cull) {
+            bottom = top = Double.NaN;
+        }
+        if ((Double.compare(bottom, savedRBottom) != 0) || (Double.compare(top, savedRTop) != 0)) {
+            savedRBottom = bottom;
+            savedRTop = top;
+            
+            // The cached points were culled to a different view.
+            savedR = null;
+        }
         
+        double[] xAll = new double[n];
+        boolean[] culled = null;
+
         // Find the real values and used cached values if we have one.
         for (i = 0; i < n; i++, x += delta) {
+            xAll[i] = x;
             found = false;
             if ((savedR != null) && (savedR[i] != null)) {
                 if ((x >= savedR[0].x) && (x <= savedR[savedR.length - 1].x)) {
@@ -1153,9 +1401,30 @@ public class AnalyzedEquation implements AnalyzedItem {
                     }
                 }
             }
-            if (!found) {
-                r[i] = findRealSolutions(x);
+        }
+
+        if (cull) {
+            culled = new boolean[n];
+            markCulled(xAll, 0, n - 1, bottom, top, culled);
+        } // end if
+
+        for (i = 0; i < n; i++) {
+            if (r[i] != null) {
+                continue;
+            }
+            if ((culled != null) && culled[i]) {
+                r[i] = new MultiPointXY(xAll[i], new double[0]);
+            } else {
+                xs[m] = xAll[i];
+                missing[m++] = i;
             }
+        } // end for i
+
+        // Solve for all the points not in the cache in one pass.
+        MultiPointXY[] solved = findRealSolutions(xs, m);
+
+        for (i = 0; i < m; i++) {
+            r[missing[i]] = solved[i];
         }
         
         int[] sb = TrailUtil.getSegmentBoundariesFrom(r, maxJump);
@@ -1163,6 +1432,11 @@ public class AnalyzedEquation implements AnalyzedItem {
         n = sb.length - 1;
 
         for (i = 1; i < n; i++) {
+            // A culled point has no values on purpose, so there is no boundary to find.
+            if ((culled != null) && (culled[sb[i] - 1] || culled[sb[i]])) {
+                continue;
+            }
+
             MultiPointXY newR = findBoundary(r[sb[i] - 1], r[sb[i]]);
 
             if (newR.yArray.length == r[sb[i] - 1].yArray.length) {
@@ -1185,6 +1459,75 @@ public class AnalyzedEquation implements AnalyzedItem {
         return r;
     } // end solveForPoints
 
+    /**
+     * Marks the samples strictly between two sample indices as culled if the
+     * graph cannot be in the view anywhere between them, and otherwise splits
+     * the block in two and tries again. The samples at the ends of a block
+     * are always solved, so a graph trail still runs to just outside the view.
+     */
+    private void markCulled(double[] xs, int lo, int hi, double bottom, double top, boolean[] culled) {
+        if (hi - lo < 2) {
+            return;
+        }
+
+        if (!canBeVisible(xs[lo], xs[hi], bottom, top)) {
+            for (int i = lo + 1; i < hi; i++) {
+                culled[i] = true;
+            }
+            return;
+        } // end if
+
+        if (hi - lo > MIN_CULLING_BLOCK) {
+            int mid = (lo + hi) >>> 1;
+
+            markCulled(xs, lo, mid, bottom, top, culled);
+            markCulled(xs, mid, hi, bottom, top, culled);
+        } // end if
+    } // end markCulled
+
+    /**
+     * Returns false only if interval arithmetic proves that the dependent
+     * variable polynomial has no root with the independent variable between
+     * <code>x0</code> and <code>x1</code> and the dependent variable between
+     * <code>bottom</code> and <code>top</code>.
+     */
+    private boolean canBeVisible(double x0, double x1, double bottom, double top) {
+        EvaluationContext c = new EvaluationContext(parameterHash, independentVariable, x0, x1);
+        double[] y = { bottom, top }, p = new double[2], ci = new double[2];
+        double size = 0.0, yMax = Math.max(Math.abs(bottom), Math.abs(top));
+
+        try {
+            // Bound the polynomial over the block and the view, by Horner's rule.
+            for (int i = 0; i <= dvpDegree; i++) {
+                Expression e = dvpCoefficients[i];
+
+                if (e.theValue != null) {
+                    Intervals.point(e.theValue.doubleValue(), ci);
+                } else {
+                    c.reset();
+                    e.evaluateInterval(c, ci);
+                } // end else
+
+                size = size * yMax + Math.max(Math.abs(ci[0]), Math.abs(ci[1]));
+                if (i == 0) {
+                    p[0] = ci[0];
+                    p[1] = ci[1];
+                } else {
+                    Intervals.multiply(p, y, p);
+                    Intervals.add(p, ci, p);
+                } // end else
+            } // end for i
+        } // end try
+        catch (RuntimeException e) {
+            return true;
+        } // end catch
+
+        // Keep well clear of the tolerances the root finders accept zeros to.
+        double margin = 1.0e-6 * size;
+
+        return !((p[0] > margin) || (p[1] < -margin)) || Double.isNaN(margin);
+    } // end canBeVisible
+
     /**
      * Returns the Y-intercept values.
      * 
@@ -1259,6 +1602,30 @@ public class AnalyzedEquation implements AnalyzedItem {
         return graphTrails;
     }
 
+    /**
+     * Sets whether <code>computePoints</code> skips solving at the sample
+     * points of a Cartesian graph where interval bounds on the equation show
+     * the graph cannot be between the top and bottom of the view. A skipped
+     * point has no y values, so culling is off by default for the
+     * descriptions that need the whole graph.
+     *
+     * @param culling true to cull sample points outside the view.
+     */
+    public void setViewportCulling(boolean culling) {
+        viewportCulling = culling;
+    } // end setViewportCulling
+
+    /**
+     * Returns true if <code>computePoints</code> culls sample points outside
+     * the view.
+     *
+     * @return true if viewport culling is on.
+     * @see #setViewportCulling(boolean)
+     */
+    public boolean isViewportCulling() {
+        return viewportCulling;
+    } // end isViewportCulling
+
     /* (non-Javadoc)
      * @see gov.nasa.ial.mde.solver.symbolic.AnalyzedItem#computePoints(gov.nasa.ial.mde.math.Bounds)
      */
@@ -1319,7 +1686,7 @@ public class AnalyzedEquation implements AnalyzedItem {
                 points = generateVerticalLine(left, right, top, bottom);
                 graphTrails = getVerticalGraphTrails(points);
             } else {
-                points = solveForPoints(left, right);
+                points = solveForPoints(left, right, Math.min(top, bottom), Math.max(top, bottom));
                 graphTrails = TrailUtil.getGraphTrailsFrom(points, maxJump);
             }
         }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2006, United States Government as represented by the Administrator
+ * for the National Aeronautics and Space Administration. No copyright is
+ * claimed in the United States under Title 17, U.S. Code. All Other Rights
+ * Reserved.
+ */
+package gov.nasa.ial.mde.solver.symbolic;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates an array of coefficient expressions at a value of one variable,
+ * the precompiled equivalent of
+ * {@link Polynomial#evaluateCoefficients(Expression[], String, double, double[])}.
+ * <p>
+ * Each coefficient is prepared once, in the cheapest form that fits it:
+ * <ul>
+ * <li>a number is kept as a constant;</li>
+ * <li>a polynomial in the variable whose own coefficients are numbers or
+ * parameters is evaluated in Horner form;</li>
+ * <li>anything else is a {@link CompiledExpression} with the variable in
+ * its only input slot.</li>
+ * </ul>
+ * The coefficients of an <code>AnalyzedEquation</code> are already
+ * multiplied out, so the Horner form does not add any cancellation.
+ * {@link #evaluate(double[], int, double[][])} evaluates the coefficients
+ * at many values of the variable in one call. Call
+ * {@link #loadParameters()} after a parameter value changes. An evaluator
+ * keeps its own scratch space, so it must only be used by one thread at a
+ * time.
+ *
+ * @version 1.0
+ */
+public class CoefficientEvaluator {
+
+    private final double[] constants;
+
+    /** For each coefficient, its Horner coefficients highest degree first, or null. */
+    private final double[][] horner;
+
+    /** The expressions the Horner coefficients are computed from. */
+    private final CompiledExpression[][] hornerPrograms;
+
+    /** For each coefficient that is neither a number nor a polynomial, its program. */
+    private final CompiledExpression[] programs;
+
+    private final double[] input = new double[1];
+
+    private final double[][] inputs = new double[1][];
+
+    /**
+     * Prepares the specified coefficients for evaluation.
+     *
+     * @param ce the coefficient expressions, with their parameter tables set.
+     * @param var the variable the coefficients are evaluated at.
+     */
+    public CoefficientEvaluator(Expression[] ce, String var) {
+        int i, n = ce.length;
+        String[] inputs = { var };
+
+        constants = new double[n];
+        horner = new double[n][];
+        hornerPrograms = new CompiledExpression[n][];
+        programs = new CompiledExpression[n];
+
+        for (i = 0; i < n; i++) {
+            if (ce[i].theValue != null) {
+                constants[i] = ce[i].theValue.doubleValue();
+                continue;
+            } // end if
+
+            CompiledExpression[] h = makeHorner(ce[i], var);
+
+            if (h != null) {
+                hornerPrograms[i] = h;
+                horner[i] = new double[h.length];
+            } // end if
+            else {
+                programs[i] = ce[i].compile(inputs);
+            } // end else
+        } // end for i
+
+        loadParameters();
+    } // end CoefficientEvaluator
+
+    /**
+     * Reads the current values of the parameters of the coefficients.
+     */
+    public void loadParameters() {
+        int i, j, n = programs.length;
+
+        for (i = 0; i < n; i++) {
+            if (programs[i] != null) {
+                programs[i].loadParameters();
+            } // end if
+            else if (hornerPrograms[i] != null) {
+                CompiledExpression[] h = hornerPrograms[i];
+
+                for (j = 0; j < h.length; j++) {
+                    h[j].loadParameters();
+                    horner[i][j] = h[j].evaluate(input);
+                } // end for j
+            } // end if
+        } // end for i
+    } // end loadParameters
+
+    /**
+     * Evaluates every coefficient at the specified value of the variable.
+     *
+     * @param x the value of the variable.
+     * @param cd receives the coefficient values.
+     */
+    public void evaluate(double x, double[] cd) {
+        int i, j, n = programs.length;
+
+        for (i = 0; i < n; i++) {
+            double[] h = horner[i];
+
+            if (h != null) {
+                double v = h[0];
+
+                for (j = 1; j < h.length; j++) {
+                    v = v * x + h[j];
+                }
+                cd[i] = v;
+            } // end if
+            else if (programs[i] != null) {
+                input[0] = x;
+                cd[i] = programs[i].evaluate(input);
+            } // end if
+            else {
+                cd[i] = constants[i];
+            } // end else
+        } // end for i
+    } // end evaluate
+
+    /**
+     * Evaluates every coefficient at each of the specified values of the
+     * variable. The values are the same as those from
+     * {@link #evaluate(double, double[])} at each value in turn.
+     *
+     * @param xs the values of the variable.
+     * @param count the number of values to use from <code>xs</code>.
+     * @param cd receives the values of coefficient <code>i</code> in
+     *            <code>cd[i]</code>, one for each value of the variable.
+     */
+    public void evaluate(double[] xs, int count, double[][] cd) {
+        int i, j, k, n = programs.length;
+
+        for (i = 0; i < n; i++) {
+            double[] h = horner[i];
+            double[] v = cd[i];
+
+            if (h != null) {
+                Arrays.fill(v, 0, count, h[0]);
+                for (k = 1; k < h.length; k++) {
+                    double c = h[k];
+
+                    for (j = 0; j < count; j++) {
+                        v[j] = v[j] * xs[j] + c;
+                    }
+                } // end for k
+            } // end if
+            else if (programs[i] != null) {
+                inputs[0] = xs;
+                programs[i].evaluate(inputs, count, v);
+                inputs[0] = null;
+            } // end if
+            else {
+                Arrays.fill(v, 0, count, constants[i]);
+            } // end else
+        } // end for i
+    } // end evaluate
+
+    /**
+     * Returns programs for the Horner coefficients of an expression, highest
+     * degree first, or null if the expression is not a polynomial in the
+     * variable with coefficients that depend on parameters only.
+     */
+    private static CompiledExpression[] makeHorner(Expression e, String var) {
+        String[] vars = { var };
+        Expression[] c = Polynomial.getCoefficientsAsExpressions(new Polynomial(e, vars), var);
+        int i, n = c.length;
+
+        if (n == 0) {
+            return null;
+        }
+
+        CompiledExpression[] h = new CompiledExpression[n];
+        String[] none = {};
+
+        for (i = 0; i < n; i++) {
+            c[i].setParameterHash(e.parameters);
+            // A function of the variable is left in a coefficient.
+            if (c[i].varStrings == null || c[i].varStrings.length != 0) {
+                return null;
+            }
+            h[i] = c[i].compile(none);
+        } // end for i
+
+        return h;
+    } // end makeHorner
+
+} // end class CoefficientEvaluator
@@ -0,0 +1,794 @@
+/*
+ * Copyright 2006, United States Government as represented by the Administrator
+ * for the National Aeronautics and Space Administration. No copyright is
+ * claimed in the United States under Title 17, U.S. Code. All Other Rights
+ * Reserved.
+ */
+package gov.nasa.ial.mde.solver.symbolic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+/**
+ * An expression compiled into a flat postfix program over a stack of
+ * doubles. Evaluating the program does no hashing, boxing or allocation,
+ * which makes it the cheap way to evaluate one expression at many points.
+ * <p>
+ * Each input variable is bound to a slot of the array passed to
+ * {@link #evaluate(double[])} when the expression is compiled. Variables that
+ * are parameters of the expression take their current values from its
+ * parameter table, so {@link #loadParameters()} must be called after a
+ * parameter value changes. Compile the expression again after
+ * {@link ProtoExpression#setParameterHash(Hashtable)}.
+ * <p>
+ * The program is simplified before it is emitted. Subtrees of numbers and
+ * parameters become a single constant, a sum or product whose first operand
+ * is another sum or product is flattened into it, factors of 1, exponents of
+ * 1 and 0 and double negations are dropped, and negations are moved out of
+ * products and reciprocals, where they often cancel or fold into a constant
+ * factor. Only rewrites that are exact in floating point are made, so the
+ * program gives exactly the same result as
+ * {@link ProtoExpression#evaluate(Hashtable)}: the remaining operands are
+ * combined in the same order, and a variable with no value throws the same
+ * exception.
+ * {@link #evaluate(double[][], int, double[])} evaluates many points at once,
+ * running each instruction over the whole array before the next one, and
+ * gives the same values as evaluating the points one at a time. A compiled
+ * expression keeps its own stacks, so it must only be used by one thread at
+ * a time.
+ *
+ * @version 1.0
+ */
+public class CompiledExpression {
+
+    private static final int CONSTANT = 0, INPUT = 1, UNDEFINED = 2, NEGATE = 3, SUM = 4, RECIPROCAL = 5,
+                             PRODUCT = 6, POWER = 7, SQRT = 8, EXPONENTIAL = 9, LOG = 10, SINE = 11,
+                             COSINE = 12, TANGENT = 13, ABS = 14;
+
+    /** The instruction for each <code>Action</code> operator. */
+    private static final int[] INSTRUCTION = { NEGATE, SUM, RECIPROCAL, PRODUCT, POWER, SQRT, EXPONENTIAL, LOG,
+                                               SINE, COSINE, TANGENT, ABS };
+
+    private final ProtoExpression expression;
+
+    private final String[] inputs;
+
+    /** Instructions, each followed by its operand if it has one. */
+    private int[] code;
+
+    private double[] constants;
+
+    /** Names of the variables with no value, for the exception. */
+    private String[] undefinedNames;
+
+    private double[] stack;
+
+    /** Stack of arrays for evaluating many points, grown as needed. */
+    private double[][] arrayStack;
+
+    /**
+     * Compiles an expression. Use
+     * {@link ProtoExpression#compile(String[])} instead of calling this
+     * directly.
+     */
+    CompiledExpression(ProtoExpression e, String[] inputs) {
+        if (e.root == null || e.root.badFlag || e.variables == null) {
+            throw new IllegalArgumentException("Cannot compile a bad expression");
+        }
+
+        expression = e;
+        this.inputs = inputs.clone();
+        loadParameters();
+    } // end CompiledExpression
+
+    /**
+     * Reads the current values of the parameters of the expression and
+     * compiles the program again with them folded in.
+     */
+    public void loadParameters() {
+        Compiler c = new Compiler(expression, inputs);
+
+        c.emit(c.term(expression.root));
+        code = c.code();
+        constants = c.doubles(c.constants);
+        undefinedNames = c.undefined.toArray(new String[c.undefined.size()]);
+        stack = new double[Math.max(c.maxDepth, 1)];
+    } // end loadParameters
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param inputs the values of the input variables, in the order they were
+     *            given to {@link ProtoExpression#compile(String[])}.
+     * @return the value of the expression.
+     */
+    public double evaluate(double[] inputs) {
+        int[] code = this.code;
+        double[] stack = this.stack;
+        int pc = 0, sp = 0, n = code.length;
+
+        while (pc < n) {
+            switch (code[pc++]) {
+                case CONSTANT :
+                    stack[sp++] = constants[code[pc++]];
+                    break;
+                case INPUT :
+                    stack[sp++] = inputs[code[pc++]];
+                    break;
+                case UNDEFINED :
+                    throw new RuntimeException(undefinedNames[code[pc]] + " is undefined");
+                case NEGATE :
+                    stack[sp - 1] = -stack[sp - 1];
+                    break;
+                case SUM : {
+                    int i, count = code[pc++];
+                    double s = 0.0;
+
+                    sp -= count;
+                    for (i = 0; i < count; i++) {
+                        s += stack[sp + i];
+                    }
+                    stack[sp++] = s;
+                    break;
+                } // end case
+                case RECIPROCAL :
+                    stack[sp - 1] = 1.0 / stack[sp - 1];
+                    break;
+                case PRODUCT : {
+                    int i, count = code[pc++];
+                    double p = 1.0;
+
+                    sp -= count;
+                    for (i = 0; i < count; i++) {
+                        p *= stack[sp + i];
+                    }
+                    stack[sp++] = p;
+                    break;
+                } // end case
+                case POWER :
+                    sp--;
+                    stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]);
+                    break;
+                case SQRT :
+                    stack[sp - 1] = Math.sqrt(stack[sp - 1]);
+                    break;
+                case EXPONENTIAL :
+                    stack[sp - 1] = Math.exp(stack[sp - 1]);
+                    break;
+                case LOG :
+                    stack[sp - 1] = Math.log(stack[sp - 1]);
+                    break;
+                case SINE :
+                    stack[sp - 1] = Math.sin(stack[sp - 1]);
+                    break;
+                case COSINE :
+                    stack[sp - 1] = Math.cos(stack[sp - 1]);
+                    break;
+                case TANGENT :
+                    stack[sp - 1] = Math.tan(stack[sp - 1]);
+                    break;
+                case ABS :
+                    stack[sp - 1] = Math.abs(stack[sp - 1]);
+                    break;
+                default :
+                    throw new IllegalStateException("Bad instruction " + code[pc - 1]);
+            } // end switch
+        } // end while
+
+        return stack[0];
+    } // end evaluate
+
+    /**
+     * Evaluates the expression at many points.
+     *
+     * @param inputs for each input variable, its value at each point.
+     * @param count the number of points.
+     * @param out receives the value of the expression at each point.
+     */
+    public void evaluate(double[][] inputs, int count, double[] out) {
+        if (count == 0) {
+            return;
+        }
+
+        double[][] stack = arrayStack(count);
+        int pc = 0, sp = 0, n = code.length;
+        int j;
+
+        while (pc < n) {
+            switch (code[pc++]) {
+                case CONSTANT :
+                    Arrays.fill(stack[sp++], 0, count, constants[code[pc++]]);
+                    break;
+                case INPUT :
+                    System.arraycopy(inputs[code[pc++]], 0, stack[sp++], 0, count);
+                    break;
+                case UNDEFINED :
+                    throw new RuntimeException(undefinedNames[code[pc]] + " is undefined");
+                case NEGATE : {
+                    double[] a = stack[sp - 1];
+
+                    for (j = 0; j < count; j++) {
+                        a[j] = -a[j];
+                    }
+                    break;
+                } // end case
+                case SUM : {
+                    int i, terms = code[pc++];
+                    double[] s = stack[sp -= terms];
+
+                    for (j = 0; j < count; j++) {
+                        s[j] = 0.0 + s[j];
+                    }
+                    for (i = 1; i < terms; i++) {
+                        double[] a = stack[sp + i];
+
+                        for (j = 0; j < count; j++) {
+                            s[j] += a[j];
+                        }
+                    } // end for i
+                    sp++;
+                    break;
+                } // end case
+                case RECIPROCAL : {
+                    double[] a = stack[sp - 1];
+
+                    for (j = 0; j < count; j++) {
+                        a[j] = 1.0 / a[j];
+                    }
+                    break;
+                } // end case
+                case PRODUCT : {
+                    int i, factors = code[pc++];
+                    double[] p = stack[sp -= factors];
+
+                    for (j = 0; j < count; j++) {
+                        p[j] = 1.0 * p[j];
+                    }
+                    for (i = 1; i < factors; i++) {
+                        double[] a = stack[sp + i];
+
+                        for (j = 0; j < count; j++) {
+                            p[j] *= a[j];
+                        }
+                    } // end for i
+                    sp++;
+                    break;
+                } // end case
+                case POWER : {
+                    double[] b = stack[--sp], a = stack[sp - 1];
+
+                    for (j = 0; j < count; j++) {
+                        a[j] = Math.pow(a[j], b[j]);
+                    }
+                    break;
+                } // end case
+                default :
+                    apply(code[pc - 1], stack[sp - 1], count);
+            } // end switch
+        } // end while
+
+        System.arraycopy(stack[0], 0, out, 0, count);
+    } // end evaluate
+
+    /**
+     * Applies a one-argument function in place.
+     */
+    private static void apply(int op, double[] a, int count) {
+        int j;
+
+        switch (op) {
+            case SQRT :
+                for (j = 0; j < count; j++) {
+                    a[j] = Math.sqrt(a[j]);
+                }
+                break;
+            case EXPONENTIAL :
+                for (j = 0; j < count; j++) {
+                    a[j] = Math.exp(a[j]);
+                }
+                break;
+            case LOG :
+                for (j = 0; j < count; j++) {
+                    a[j] = Math.log(a[j]);
+                }
+                break;
+            case SINE :
+                for (j = 0; j < count; j++) {
+                    a[j] = Math.sin(a[j]);
+                }
+                break;
+            case COSINE :
+                for (j = 0; j < count; j++) {
+                    a[j] = Math.cos(a[j]);
+                }
+                break;
+            case TANGENT :
+                for (j = 0; j < count; j++) {
+                    a[j] = Math.tan(a[j]);
+                }
+                break;
+            case ABS :
+                for (j = 0; j < count; j++) {
+                    a[j] = Math.abs(a[j]);
+                }
+                break;
+            default :
+                throw new IllegalStateException("Bad instruction " + op);
+        } // end switch
+    } // end apply
+
+    private double[][] arrayStack(int count) {
+        if (arrayStack == null || arrayStack.length < stack.length || arrayStack[0].length < count) {
+            arrayStack = new double[stack.length][count];
+        }
+        return arrayStack;
+    } // end arrayStack
+
+    /**
+     * Returns a readable listing of the program, one instruction per line.
+     *
+     * @return the program listing.
+     */
+    public String toString() {
+        StringBuffer b = new StringBuffer();
+        int pc = 0, n = code.length;
+
+        while (pc < n) {
+            int op = code[pc++];
+
+            switch (op) {
+                case CONSTANT :
+                    b.append("const ").append(constants[code[pc++]]);
+                    break;
+                case INPUT :
+                    b.append("input ").append(code[pc++]);
+                    break;
+                case UNDEFINED :
+                    b.append("undefined ").append(undefinedNames[code[pc++]]);
+                    break;
+                case SUM :
+                    b.append("sum ").append(code[pc++]);
+                    break;
+                case PRODUCT :
+                    b.append("product ").append(code[pc++]);
+                    break;
+                default :
+                    b.append(Action.FNAMES[indexOf(op)]);
+            } // end switch
+            b.append('\n');
+        } // end while
+
+        return b.toString();
+    } // end toString
+
+    private static int indexOf(int instruction) {
+        for (int i = 0; i < INSTRUCTION.length; i++) {
+            if (INSTRUCTION[i] == instruction) {
+                return i;
+            }
+        }
+        return -1;
+    } // end indexOf
+
+    /**
+     * Walks the parse tree once to build a simplified {@link Term} tree, then
+     * emits the operands of each term before the term itself.
+     */
+    private static class Compiler {
+
+        /** Variable leaves and the name each one stands for. */
+        private final IdentityHashMap<ParseNode, String> leaves = new IdentityHashMap<ParseNode, String>();
+
+        private final ProtoExpression expression;
+
+        private final String[] inputs;
+
+        private int[] code = new int[32];
+
+        private int size;
+
+        private int depth, maxDepth;
+
+        final ArrayList<Double> constants = new ArrayList<Double>();
+
+        final ArrayList<String> undefined = new ArrayList<String>();
+
+        Compiler(ProtoExpression e, String[] inputs) {
+            expression = e;
+            this.inputs = inputs;
+
+            Hashtable nodeList = e.variables.get(e.root);
+
+            for (Enumeration k = nodeList.keys(); k.hasMoreElements();) {
+                String name = (String)k.nextElement();
+                Vector nodes = (Vector)nodeList.get(name);
+
+                for (int i = 0, n = nodes.size(); i < n; i++) {
+                    leaves.put((ParseNode)nodes.elementAt(i), name);
+                }
+            } // end for
+        } // end Compiler
+
+        Term term(ParseNode p) {
+            String name = leaves.get(p);
+
+            if (name != null) {
+                return variable(name);
+            }
+            if (p.value != null) {
+                return new Term(p.value.doubleValue());
+            }
+            if (p.operator == Action.NO_OP || p.operator == Action.CORRUPTED) {
+                return new Term(UNDEFINED, add(undefined, p.theString));
+            }
+
+            int i, n = p.children.length;
+            Term[] args = new Term[n];
+
+            for (i = 0; i < n; i++) {
+                if (p.children[i].badFlag) {
+                    // ParseNode.eval gives 0 for a node with a bad child.
+                    throw new IllegalArgumentException("Expression has a bad subexpression");
+                }
+                args[i] = term(p.children[i]);
+            } // end for i
+
+            return Term.operation(INSTRUCTION[p.operator], args);
+        } // end term
+
+        private Term variable(String name) {
+            Double v = expression.parameters.get(name.toLowerCase());
+
+            if (v != null) {
+                return new Term(v.doubleValue());
+            }
+            for (int i = 0; i < inputs.length; i++) {
+                if (inputs[i].equals(name)) {
+                    return new Term(INPUT, i);
+                }
+            } // end for i
+
+            return new Term(UNDEFINED, add(undefined, name));
+        } // end variable
+
+        void emit(Term t) {
+            switch (t.op) {
+                case CONSTANT :
+                    emit(CONSTANT, indexOf(constants, t.value));
+                    push(1);
+                    return;
+                case INPUT :
+                case UNDEFINED :
+                    emit(t.op, t.operand);
+                    push(1);
+                    return;
+            } // end switch
+
+            int i, n = t.args.length;
+
+            for (i = 0; i < n; i++) {
+                emit(t.args[i]);
+            }
+            if (t.op == SUM || t.op == PRODUCT) {
+                emit(t.op, n);
+            } else {
+                emit(t.op);
+            }
+            push(1 - n);
+        } // end emit
+
+        private void push(int n) {
+            depth += n;
+            maxDepth = Math.max(maxDepth, depth);
+        } // end push
+
+        private void emit(int op) {
+            if (size == code.length) {
+                int[] c = new int[2 * size];
+                System.arraycopy(code, 0, c, 0, size);
+                code = c;
+            } // end if
+            code[size++] = op;
+        } // end emit
+
+        private void emit(int op, int operand) {
+            emit(op);
+            emit(operand);
+        } // end emit
+
+        int[] code() {
+            int[] c = new int[size];
+            System.arraycopy(code, 0, c, 0, size);
+            return c;
+        } // end code
+
+        double[] doubles(ArrayList<Double> list) {
+            int i, n = list.size();
+            double[] d = new double[n];
+
+            for (i = 0; i < n; i++) {
+                d[i] = list.get(i).doubleValue();
+            }
+            return d;
+        } // end doubles
+
+        private static int indexOf(ArrayList<Double> list, double d) {
+            int i = list.indexOf(new Double(d));
+
+            if (i < 0) {
+                list.add(new Double(d));
+                i = list.size() - 1;
+            } // end if
+            return i;
+        } // end indexOf
+
+        private static int add(ArrayList<String> list, String s) {
+            int i = list.indexOf(s);
+
+            if (i < 0) {
+                list.add(s);
+                i = list.size() - 1;
+            } // end if
+            return i;
+        } // end add
+
+    } // end class Compiler
+
+    /**
+     * A node of the simplified expression. Terms are built bottom up by
+     * {@link #operation(int, Term[])}, which rewrites a node only where the
+     * result is the same in floating point for every input: a sum never
+     * ends at -0 because it starts from 0, multiplying or dividing by a
+     * negated value gives the negated result, and the running sum or product
+     * of a leading run of operands does not depend on whether those operands
+     * were nested.
+     */
+    private static final class Term {
+
+        final int op;
+
+        /** The value of a constant. */
+        final double value;
+
+        /** The input slot or undefined name index. */
+        final int operand;
+
+        final Term[] args;
+
+        /** True if evaluating the term can throw for an undefined variable. */
+        final boolean undefined;
+
+        Term(double value) {
+            this(CONSTANT, value, 0, null);
+        } // end Term
+
+        Term(int op, int operand) {
+            this(op, 0.0, operand, null);
+        } // end Term
+
+        Term(int op, Term[] args) {
+            this(op, 0.0, 0, args);
+        } // end Term
+
+        private Term(int op, double value, int operand, Term[] args) {
+            boolean u = (op == UNDEFINED);
+
+            for (int i = 0; args != null && i < args.length; i++) {
+                u |= args[i].undefined;
+            }
+            this.op = op;
+            this.value = value;
+            this.operand = operand;
+            this.args = args;
+            undefined = u;
+        } // end Term
+
+        boolean isConstant(double d) {
+            return op == CONSTANT && value == d;
+        } // end isConstant
+
+        /**
+         * Returns the simplest term equal to the operation on the specified
+         * simplified operands.
+         */
+        static Term operation(int op, Term[] args) {
+            switch (op) {
+                case SUM :
+                    return sum(args);
+                case PRODUCT :
+                    return product(args);
+                case NEGATE :
+                    return negate(args[0]);
+                case RECIPROCAL :
+                    if (args[0].op == NEGATE) {
+                        return negate(operation(RECIPROCAL, args[0].args));
+                    }
+                    break;
+                case POWER :
+                    // Math.pow(x, 1) is x and Math.pow(x, 0) is 1 for every x.
+                    if (args[1].isConstant(1.0)) {
+                        return args[0];
+                    }
+                    if (args[1].isConstant(0.0) && !args[0].undefined) {
+                        return new Term(1.0);
+                    }
+                    break;
+                case ABS : {
+                    Term a = ignoringZeroSign(args[0]);
+
+                    if (a.op == NEGATE) {
+                        a = a.args[0];
+                    }
+                    if (a.op == ABS) {
+                        return a;
+                    }
+                    return fold(new Term(ABS, new Term[] { a }));
+                } // end case
+                case LOG :
+                    // Math.log(-0) and Math.log(0) are both -infinity.
+                    return fold(new Term(LOG, new Term[] { ignoringZeroSign(args[0]) }));
+            } // end switch
+
+            return fold(new Term(op, args));
+        } // end operation
+
+        private static Term negate(Term t) {
+            if (t.op == NEGATE) {
+                return t.args[0];
+            }
+            if (t.op == PRODUCT && t.args[0].op == CONSTANT) {
+                Term[] args = t.args.clone();
+
+                args[0] = new Term(-args[0].value);
+                return new Term(PRODUCT, args);
+            } // end if
+
+            return fold(new Term(NEGATE, new Term[] { t }));
+        } // end negate
+
+        private static Term sum(Term[] args) {
+            ArrayList<Term> list = new ArrayList<Term>();
+            double s = 0.0;
+            int i, n = args.length;
+
+            for (i = 0; i < n; i++) {
+                // Adding -0 to a sum that is never -0 is the same as adding 0.
+                Term a = ignoringZeroSign(args[i]);
+
+                if (list.isEmpty() && a.op == SUM) {
+                    list.addAll(Arrays.asList(a.args));
+                } else {
+                    list.add(a);
+                }
+            } // end for i
+
+            // Fold the leading constants into one.
+            for (i = 0; i < list.size() && list.get(i).op == CONSTANT; i++) {
+                s += list.get(i).value;
+            }
+            list.subList(0, i).clear();
+            list.add(0, new Term(s));
+
+            // Adding zero to a sum that is never -0 leaves it unchanged.
+            for (i = list.size() - 1; i >= 0; i--) {
+                if (list.get(i).isConstant(0.0)) {
+                    list.remove(i);
+                }
+            }
+
+            if (list.isEmpty()) {
+                return new Term(0.0);
+            }
+            if (list.size() == 1 && !canBeNegativeZero(list.get(0))) {
+                return list.get(0);
+            }
+            return new Term(SUM, list.toArray(new Term[list.size()]));
+        } // end sum
+
+        private static Term product(Term[] args) {
+            ArrayList<Term> list = new ArrayList<Term>();
+            boolean negative = false;
+            double p = 1.0;
+            int i, n = args.length;
+
+            for (i = 0; i < n; i++) {
+                Term a = args[i];
+
+                if (a.op == NEGATE) {
+                    negative = !negative;
+                    a = a.args[0];
+                }
+                if (list.isEmpty() && a.op == PRODUCT) {
+                    list.addAll(Arrays.asList(a.args));
+                } else if (list.isEmpty() || !a.isConstant(1.0)) {
+                    list.add(a);
+                }
+            } // end for i
+
+            // Fold the leading constants into one, which takes the sign.
+            for (i = 0; i < list.size() && list.get(i).op == CONSTANT; i++) {
+                p *= list.get(i).value;
+            }
+            list.subList(0, i).clear();
+            if (p == -1.0) {
+                p = 1.0;
+                negative = !negative;
+            } // end if
+            if (negative && p != 1.0) {
+                p = -p;
+                negative = false;
+            } // end if
+            if (p != 1.0 || list.isEmpty()) {
+                list.add(0, new Term(p));
+            }
+
+            Term t = (list.size() == 1) ? list.get(0) : new Term(PRODUCT, list.toArray(new Term[list.size()]));
+
+            return negative ? negate(t) : t;
+        } // end product
+
+        /**
+         * Returns a term that is equal to the specified one except perhaps in
+         * the sign of a zero result. A sum of one operand is that operand
+         * with -0 replaced by 0, which is how the parser writes a unary
+         * minus, so it can be dropped where the sign of zero does not matter.
+         */
+        private static Term ignoringZeroSign(Term t) {
+            if (t.op == SUM && t.args.length == 1) {
+                return ignoringZeroSign(t.args[0]);
+            }
+            if (t.op == NEGATE) {
+                Term a = ignoringZeroSign(t.args[0]);
+
+                return (a == t.args[0]) ? t : negate(a);
+            } // end if
+            return t;
+        } // end ignoringZeroSign
+
+        private static boolean canBeNegativeZero(Term t) {
+            switch (t.op) {
+                case CONSTANT :
+                    return Double.doubleToLongBits(t.value) == Double.doubleToLongBits(-0.0);
+                case SUM :
+                case EXPONENTIAL :
+                case ABS :
+                    return false;
+                default :
+                    return true;
+            } // end switch
+        } // end canBeNegativeZero
+
+        /**
+         * Replaces an operation on constants with its value.
+         */
+        private static Term fold(Term t) {
+            int i, n = t.args.length;
+            double[][] v = new double[n][1];
+
+            for (i = 0; i < n; i++) {
+                if (t.args[i].op != CONSTANT) {
+                    return t;
+                }
+                v[i][0] = t.args[i].value;
+            } // end for i
+
+            switch (t.op) {
+                case NEGATE :
+                    return new Term(-v[0][0]);
+                case RECIPROCAL :
+                    return new Term(1.0 / v[0][0]);
+                case POWER :
+                    return new Term(Math.pow(v[0][0], v[1][0]));
+                default :
+                    apply(t.op, v[0], 1);
+                    return new Term(v[0][0]);
+            } // end switch
+        } // end fold
+
+    } // end class Term
+
+} // end class CompiledExpression
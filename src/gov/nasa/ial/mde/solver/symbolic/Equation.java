@@ -6,8 +6,6 @@
  */
 package gov.nasa.ial.mde.solver.symbolic;
 
-import gov.nasa.ial.mde.util.StringSplitter;
-
 /**
  * Representation of an Equation.
  * 
@@ -28,27 +26,28 @@ public class Equation {
     
     private Polynomial mainPolynomial = null;
 
+    private Equation() {
+    } // end Equation (copy)
+
     /**
      * Constructs an Equation object given the equation as a String.
      * 
      * @param s the equation as a String.
      */
     public Equation(String s) {
-        StringSplitter ss = new StringSplitter("=", s);
-        if (ss.pieces.length != 3) {
-            return;
-        }
-        
-        if ((ss.pieces[0].indexOf("=") >= 0) || (ss.pieces[2].indexOf("=") >= 0)) {
+        int eq = s.indexOf('=');
+        if (eq < 0 || s.indexOf('=', eq + 1) >= 0) {
             return;
         }
 
-        if (ss.pieces[0].trim().length() == 0 || ss.pieces[2].trim().length() == 0) {
+        String leftString = s.substring(0, eq);
+        String rightString = s.substring(eq + 1);
+        if (leftString.trim().length() == 0 || rightString.trim().length() == 0) {
             return;
         }
 
-        left = new Expression(ss.pieces[0]);
-        right = new Expression(ss.pieces[2]);
+        left = new Expression(leftString);
+        right = new Expression(rightString);
         if ((left == null) || (right == null)) {
             return;
         }
@@ -131,6 +130,21 @@ public class Equation {
         return left + " = " + right;
     } // end toString
 
+    /**
+     * Returns a deep copy of this equation; see {@link EquationCache}.
+     */
+    Equation copy(EquationCache.Copier c) {
+        Equation e = new Equation();
+
+        c.put(this, e);
+        e.bad = bad;
+        e.left = c.expression(left);
+        e.right = c.expression(right);
+        e.mainPolynomial = c.polynomial(mainPolynomial);
+
+        return e;
+    } // end copy
+
     private boolean solveRational() {
         RationalExpression l = new RationalExpression(left);
 
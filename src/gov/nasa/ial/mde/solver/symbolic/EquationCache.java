@@ -0,0 +1,413 @@
+/*
+ * Copyright 2006, United States Government as represented by the Administrator
+ * for the National Aeronautics and Space Administration. No copyright is
+ * claimed in the United States under Title 17, U.S. Code. All Other Rights
+ * Reserved.
+ */
+package gov.nasa.ial.mde.solver.symbolic;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Process-wide cache of parsed equations. Building an <code>Equation</code>
+ * parses both sides, elaborates them into expressions and multiplies them out
+ * into the main polynomial, which is most of the time it takes to construct
+ * an <code>AnalyzedEquation</code>.
+ * <p>
+ * The cache keeps one pristine <code>Equation</code> per equation string and
+ * never hands it out. Callers get a deep copy of it, which they are free to
+ * change: parse trees, variable tables, expressions and polynomial terms are
+ * all copied, and objects the original shared with each other are shared
+ * the same way in the copy.
+ * <p>
+ * Equation strings are keyed after removing white space at either end and
+ * next to operators, parentheses and the equals sign, where the parser
+ * ignores it. White space between two operators becomes one blank
+ * instead, since the parser rejects some adjacent operators, such as
+ * "3--x", that it accepts with a blank between them. White space inside a name or
+ * number is kept, so "sin x" and "sinx" are different keys. The least recently used entry is
+ * dropped once the cache holds {@link #DEFAULT_MAX_ENTRIES} equations.
+ *
+ * @version 1.0
+ */
+public class EquationCache {
+
+    /**
+     * Number of equations the shared cache holds.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private static final EquationCache sharedInstance = new EquationCache(DEFAULT_MAX_ENTRIES);
+
+    private final Map<String, Equation> entries;
+
+    private long hitCount;
+
+    private long missCount;
+
+    /**
+     * Creates a cache that holds at most the specified number of equations.
+     * Most callers should use {@link #getSharedInstance()} instead.
+     *
+     * @param maxEntries the number of equations to keep.
+     */
+    public EquationCache(final int maxEntries) {
+        entries = new LinkedHashMap<String, Equation>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, Equation> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache shared by every <code>AnalyzedEquation</code> in this
+     * class loader.
+     *
+     * @return the shared equation cache.
+     */
+    public static EquationCache getSharedInstance() {
+        return sharedInstance;
+    }
+
+    /**
+     * Returns a new <code>Equation</code> for the specified string, copied
+     * from the cached one if the equation has been parsed before.
+     *
+     * @param s the equation as a String.
+     * @return an equation owned by the caller.
+     */
+    public Equation get(String s) {
+        String key = normalize(s);
+        Equation template;
+
+        synchronized (entries) {
+            template = entries.get(key);
+            if (template != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+        }
+        if (template == null) {
+            // Parse outside the lock; two threads may both parse a new
+            // equation, which only costs the time the cache would have saved.
+            template = new Equation(s);
+            synchronized (entries) {
+                entries.put(key, template);
+            }
+        }
+        return new Copier().equation(template);
+    }
+
+    /**
+     * Returns the number of lookups that found a parsed equation.
+     *
+     * @return the hit count.
+     */
+    public long getHitCount() {
+        synchronized (entries) {
+            return hitCount;
+        }
+    }
+
+    /**
+     * Returns the number of lookups that had to parse the equation.
+     *
+     * @return the miss count.
+     */
+    public long getMissCount() {
+        synchronized (entries) {
+            return missCount;
+        }
+    }
+
+    /**
+     * Returns the number of equations in the cache.
+     *
+     * @return the number of cached equations.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Removes every equation from the cache.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the key for an equation string: the string without the white
+     * space the parser ignores, and with one blank for a run of white space
+     * between two operators.
+     *
+     * @param s the equation as a String.
+     * @return the normalized equation string.
+     */
+    static String normalize(String s) {
+        int i, n = s.length();
+        StringBuilder b = new StringBuilder(n);
+
+        for (i = 0; i < n; i++) {
+            char c = s.charAt(i);
+
+            if (!isBlank(c)) {
+                b.append(c);
+                continue;
+            } // end if
+
+            int end = i;
+
+            while (end < n && isBlank(s.charAt(end))) {
+                end++;
+            }
+            if (i > 0 && end < n) {
+                char before = s.charAt(i - 1), after = s.charAt(end);
+
+                if (isOperator(before) && isOperator(after)) {
+                    b.append(' ');
+                } else if (!isDelimiter(before) && !isDelimiter(after)) {
+                    // White space inside a name or number is kept as it is.
+                    b.append(s, i, end);
+                }
+            } // end if
+            i = end - 1;
+        } // end for i
+
+        return b.toString();
+    } // end normalize
+
+    /**
+     * White space that both <code>String.trim</code> and the parser skip.
+     */
+    private static boolean isBlank(char c) {
+        return c <= ' ' && Character.isWhitespace(c);
+    } // end isBlank
+
+    private static boolean isDelimiter(char c) {
+        switch (c) {
+            case '(' :
+            case ')' :
+            case '=' :
+                return true;
+            default :
+                return isOperator(c);
+        } // end switch
+    } // end isDelimiter
+
+    /**
+     * The binary operators, which may also be signs.
+     */
+    private static boolean isOperator(char c) {
+        switch (c) {
+            case '+' :
+            case '-' :
+            case '*' :
+            case '/' :
+            case '^' :
+                return true;
+            default :
+                return false;
+        } // end switch
+    } // end isOperator
+
+    /**
+     * Deep-copies one equation. Every object reached from the equation is
+     * copied once, so nodes shared between expressions, variable lists shared
+     * between the tables of a node and its parent, and exponent tables shared
+     * between polynomial terms stay shared in the copy. Immutable values and
+     * the tables an expression only reads after it is elaborated are not
+     * copied.
+     */
+    static final class Copier {
+
+        private final IdentityHashMap<Object, Object> copies = new IdentityHashMap<Object, Object>();
+
+        Equation equation(Equation e) {
+            return e.copy(this);
+        } // end equation
+
+        ParseNode node(ParseNode p) {
+            if (p == null) {
+                return null;
+            }
+
+            ParseNode q = (ParseNode)copies.get(p);
+
+            if (q != null) {
+                return q;
+            }
+            copies.put(p, q = new ParseNode());
+            q.operator = p.operator;
+            q.value = p.value;
+            q.theString = p.theString;
+            q.badFlag = p.badFlag;
+            if (p.children != null) {
+                int i, n = p.children.length;
+
+                q.children = new ParseNode[n];
+                for (i = 0; i < n; i++) {
+                    q.children[i] = node(p.children[i]);
+                }
+            } // end if
+            q.parent = node(p.parent);
+
+            return q;
+        } // end node
+
+        Expression expression(Expression e) {
+            if (e == null) {
+                return null;
+            }
+
+            Expression r = (Expression)copies.get(e);
+
+            if (r != null) {
+                return r;
+            }
+            copies.put(e, r = new Expression());
+            r.varStrings = (e.varStrings == null) ? null : e.varStrings.clone();
+            r.root = node(e.root);
+            r.knowns = e.knowns;
+            r.legalVariables = e.legalVariables;
+            r.parameters = table(e.parameters);
+            r.theValue = e.theValue;
+            r.valueString = e.valueString;
+            if (e.variables != null) {
+                r.variables = new Hashtable<Object, Hashtable>();
+                for (Map.Entry<Object, Hashtable> v : e.variables.entrySet()) {
+                    r.variables.put(node((ParseNode)v.getKey()), leaves(v.getValue()));
+                }
+            } // end if
+
+            return r;
+        } // end expression
+
+        Expression[] expressions(Expression[] e) {
+            if (e == null) {
+                return null;
+            }
+
+            Expression[] r = (Expression[])copies.get(e);
+
+            if (r != null) {
+                return r;
+            }
+            copies.put(e, r = new Expression[e.length]);
+            for (int i = 0; i < e.length; i++) {
+                r[i] = expression(e[i]);
+            }
+
+            return r;
+        } // end expressions
+
+        Polynomial polynomial(Polynomial p) {
+            if (p == null) {
+                return null;
+            }
+
+            Polynomial r = (Polynomial)copies.get(p);
+
+            if (r != null) {
+                return r;
+            }
+            return p.copy(this);
+        } // end polynomial
+
+        PolyTerm term(PolyTerm t) {
+            if (t == null) {
+                return null;
+            }
+
+            PolyTerm r = (PolyTerm)copies.get(t);
+
+            if (r != null) {
+                return r;
+            }
+            return t.copy(this);
+        } // end term
+
+        /**
+         * Records the copy of an object before its fields are copied, so
+         * cycles back to it find the copy.
+         */
+        void put(Object original, Object copy) {
+            copies.put(original, copy);
+        } // end put
+
+        /**
+         * Copies a table whose values are immutable, keeping its iteration
+         * order.
+         */
+        @SuppressWarnings("unchecked")
+        <K, V> Hashtable<K, V> table(Hashtable<K, V> h) {
+            if (h == null) {
+                return null;
+            }
+
+            Hashtable<K, V> r = (Hashtable<K, V>)copies.get(h);
+
+            if (r == null) {
+                copies.put(h, r = (Hashtable<K, V>)h.clone());
+            }
+            return r;
+        } // end table
+
+        /**
+         * Copies a table of the variable nodes below a node, keyed by variable
+         * name.
+         */
+        @SuppressWarnings("unchecked")
+        private Hashtable leaves(Hashtable h) {
+            if (h == null) {
+                return null;
+            }
+
+            Hashtable r = (Hashtable)copies.get(h);
+
+            if (r != null) {
+                return r;
+            }
+            copies.put(h, r = (Hashtable)h.clone());
+            for (Enumeration k = h.keys(); k.hasMoreElements();) {
+                Object name = k.nextElement();
+
+                r.put(name, nodes((Vector)h.get(name)));
+            } // end for
+
+            return r;
+        } // end leaves
+
+        @SuppressWarnings("unchecked")
+        private Vector nodes(Vector v) {
+            Vector r = (Vector)copies.get(v);
+
+            if (r != null) {
+                return r;
+            }
+
+            int i, n = v.size();
+
+            copies.put(v, r = new Vector(n));
+            for (i = 0; i < n; i++) {
+                r.addElement(node((ParseNode)v.elementAt(i)));
+            }
+
+            return r;
+        } // end nodes
+
+    } // end class Copier
+
+} // end class EquationCache
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2006, United States Government as represented by the Administrator
+ * for the National Aeronautics and Space Administration. No copyright is
+ * claimed in the United States under Title 17, U.S. Code. All Other Rights
+ * Reserved.
+ */
+package gov.nasa.ial.mde.solver.symbolic;
+
+import java.util.Hashtable;
+
+/**
+ * The state of one evaluation of an expression: the values bound to its
+ * variables, the variable derivatives are taken with respect to, and whether
+ * a bad node was reached.
+ * <p>
+ * Evaluating a parse tree with a context does not write to the tree, so
+ * one <code>Expression</code> can be evaluated by several threads at once
+ * as long as each thread uses its own context.
+ *
+ * @version 1.0
+ */
+public class EvaluationContext {
+
+    /** The parameter values, keyed by lower case name, or null. */
+    private Hashtable<String, Double> parameters;
+
+    /** The input variable values, or null. */
+    private Hashtable inputs;
+
+    /** The variable derivatives are taken with respect to, or null. */
+    private String variable;
+
+    /** True if the variable ranges over an interval instead of taking a value. */
+    private boolean ranged = false;
+
+    /** The interval the variable ranges over. */
+    private double low, high;
+
+    /** Set when the evaluation reached a bad node. */
+    private boolean bad = false;
+
+    /**
+     * Constructs a context with no variable values.
+     */
+    public EvaluationContext() {
+        this(null, null);
+    } // end EvaluationContext
+
+    /**
+     * Constructs a context that reads the values of its variables from the
+     * specified tables. A parameter value takes precedence over an input
+     * value of the same name.
+     *
+     * @param parameters the parameter values, keyed by lower case name, or
+     *            null.
+     * @param inputs the input variable values, or null.
+     */
+    public EvaluationContext(Hashtable<String, Double> parameters, Hashtable inputs) {
+        this(parameters, inputs, null);
+    } // end EvaluationContext
+
+    /**
+     * Constructs a context like {@link #EvaluationContext(Hashtable, Hashtable)}
+     * that also takes derivatives with respect to the specified variable.
+     *
+     * @param parameters the parameter values, keyed by lower case name, or
+     *            null.
+     * @param inputs the input variable values, or null.
+     * @param variable the variable to differentiate with respect to.
+     */
+    public EvaluationContext(Hashtable<String, Double> parameters, Hashtable inputs, String variable) {
+        this.parameters = parameters;
+        this.inputs = inputs;
+        this.variable = variable;
+    } // end EvaluationContext
+
+    /**
+     * Constructs a context for interval evaluation, in which the specified
+     * variable ranges over an interval and the parameters keep their values.
+     *
+     * @param parameters the parameter values, keyed by lower case name, or
+     *            null.
+     * @param variable the variable that ranges over the interval.
+     * @param low the low end of the interval.
+     * @param high the high end of the interval.
+     */
+    public EvaluationContext(Hashtable<String, Double> parameters, String variable, double low, double high) {
+        this(parameters, null, variable);
+        ranged = true;
+        this.low = low;
+        this.high = high;
+    } // end EvaluationContext
+
+    /**
+     * Returns the value bound to the specified variable.
+     *
+     * @param name the name of the variable.
+     * @return the value of the variable.
+     * @exception RuntimeException is thrown if the variable has no value.
+     */
+    public double valueOf(String name) {
+        Double v = null;
+
+        if (parameters != null)
+            v = parameters.get(name.toLowerCase());
+        if (v == null && inputs != null)
+            v = (Double)inputs.get(name);
+        if (v == null)
+            throw new RuntimeException(name + " is undefined");
+
+        return v.doubleValue();
+    } // end valueOf
+
+    /**
+     * Returns the derivative of the specified variable with respect to the
+     * variable of this context: 1 for that variable itself, and 0 for any
+     * other variable or for a parameter, which is held constant.
+     *
+     * @param name the name of the variable.
+     * @return the derivative of the variable.
+     */
+    public double derivativeOf(String name) {
+        if (variable == null || !variable.equals(name))
+            return 0.0;
+        if (parameters != null && parameters.get(name.toLowerCase()) != null)
+            return 0.0;
+
+        return 1.0;
+    } // end derivativeOf
+
+    /**
+     * Sets the interval bounding the values of the specified variable.
+     */
+    void rangeOf(String name, double[] r) {
+        if (ranged && (derivativeOf(name) != 0.0)) {
+            r[0] = low;
+            r[1] = high;
+        } else {
+            Intervals.point(valueOf(name), r);
+        } // end else
+    } // end rangeOf
+
+    /**
+     * Returns true if the evaluation reached a bad node, in which case the
+     * value of the expression is 0.
+     *
+     * @return true if a bad node was reached.
+     */
+    public boolean isBad() {
+        return bad;
+    } // end isBad
+
+    /**
+     * Records that the evaluation reached a bad node.
+     */
+    void setBad() {
+        bad = true;
+    } // end setBad
+
+    /**
+     * Clears the bad flag so the context can be used for another evaluation.
+     */
+    public void reset() {
+        bad = false;
+    } // end reset
+
+} // end class EvaluationContext
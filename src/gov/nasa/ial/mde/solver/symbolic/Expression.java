@@ -24,6 +24,12 @@ import java.util.Vector;
  */
 public class Expression extends ProtoExpression implements Comparison {
 
+    /**
+     * Constructs an empty Expression for {@link EquationCache} to fill in.
+     */
+    Expression() {
+    } // end Expression
+
     /**
      * Constructs an Expression given an expression as a String.
      * 
@@ -317,7 +323,11 @@ public class Expression extends ProtoExpression implements Comparison {
         Hashtable h = (Hashtable)variables.get(r);
 
         if (h.isEmpty()) {
-            r.value = new Double(r.eval());
+            EvaluationContext c = new EvaluationContext();
+
+            r.value = new Double(r.eval(c));
+            if (c.isBad())
+                r.badFlag = true;
             return;
         } // end if
 
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2006, United States Government as represented by the Administrator
+ * for the National Aeronautics and Space Administration. No copyright is
+ * claimed in the United States under Title 17, U.S. Code. All Other Rights
+ * Reserved.
+ */
+package gov.nasa.ial.mde.solver.symbolic;
+
+import java.util.ArrayList;
+
+/**
+ * Parses one side of an equation into a tree of <code>ParseNode</code>
+ * objects. The string is tokenized once and the tokens are read by a
+ * recursive-descent parser, so no intermediate strings are built.
+ * <p>
+ * The trees are the same as the ones built by
+ * {@link ParseNode#buildTree(Quantity)}: sums and products are n-ary, the
+ * first factor of a product is never a reciprocal, a factor is split at its
+ * first "^" only, a function name applies to the rest of its factor, and
+ * parenthesized groups next to each other or to text are multiplied. The
+ * text of a leaf is left for <code>Expression</code> to split into numbers
+ * and variables.
+ *
+ * @version 1.0
+ */
+public class ExpressionParser {
+
+    private static final byte TEXT = 0, PLUS = 1, MINUS = 2, TIMES = 3, DIVIDE = 4, CARET = 5, OPEN = 6, CLOSE = 7;
+
+    private final String source;
+
+    private byte[] types;
+    private int[] starts;
+    private int[] ends;
+
+    /** For each OPEN token the index of its CLOSE token. */
+    private int[] match;
+
+    private int count;
+
+    private ExpressionParser(String source) {
+        this.source = source;
+    } // end ExpressionParser
+
+    /**
+     * Parses an expression.
+     *
+     * @param s the expression as a String.
+     * @return the root of the parse tree, or null if the expression is
+     *         malformed.
+     */
+    public static ParseNode parse(String s) {
+        ExpressionParser p = new ExpressionParser(s);
+
+        if (!p.tokenize()) {
+            return null;
+        }
+        return p.parseSum(0, p.count);
+    } // end parse
+
+    /**
+     * Splits the source into operator, parenthesis and text tokens and pairs
+     * up the parentheses. Text tokens keep their white space.
+     *
+     * @return false if the parentheses do not balance.
+     */
+    private boolean tokenize() {
+        int i, n = source.length();
+        int capacity = 16;
+        int depth = 0;
+        int[] open = new int[8];
+
+        types = new byte[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        match = new int[capacity];
+
+        for (i = 0; i < n;) {
+            char c = source.charAt(i);
+            byte type = typeOf(c);
+            int end = i + 1;
+
+            if (type == TEXT) {
+                while (end < n && typeOf(source.charAt(end)) == TEXT) {
+                    end++;
+                }
+            }
+
+            if (count == types.length) {
+                capacity = 2 * count;
+                types = grow(types, capacity);
+                starts = grow(starts, capacity);
+                ends = grow(ends, capacity);
+                match = grow(match, capacity);
+            } // end if
+            types[count] = type;
+            starts[count] = i;
+            ends[count] = end;
+
+            if (type == OPEN) {
+                if (depth == open.length) {
+                    open = grow(open, 2 * depth);
+                }
+                open[depth++] = count;
+            } // end if
+            else if (type == CLOSE) {
+                if (depth == 0) {
+                    return false;
+                }
+                match[open[--depth]] = count;
+            } // end if
+
+            count++;
+            i = end;
+        } // end for i
+
+        return depth == 0;
+    } // end tokenize
+
+    private static byte typeOf(char c) {
+        switch (c) {
+            case '+' :
+                return PLUS;
+            case '-' :
+                return MINUS;
+            case '*' :
+                return TIMES;
+            case '/' :
+                return DIVIDE;
+            case '^' :
+                return CARET;
+            case '(' :
+                return OPEN;
+            case ')' :
+                return CLOSE;
+            default :
+                return TEXT;
+        } // end switch
+    } // end typeOf
+
+    /**
+     * Returns the index of the token after the one at <code>i</code>,
+     * skipping over a whole parenthesized group.
+     */
+    private int next(int i) {
+        return (types[i] == OPEN) ? match[i] + 1 : i + 1;
+    } // end next
+
+    private boolean isBlank(int i) {
+        if (types[i] != TEXT) {
+            return false;
+        }
+        for (int j = starts[i]; j < ends[i]; j++) {
+            if (!Character.isWhitespace(source.charAt(j))) {
+                return false;
+            }
+        }
+        return true;
+    } // end isBlank
+
+    /**
+     * Parses the terms between <code>from</code> and <code>to</code>. Only
+     * a range holding a "+" or "-" becomes a sum; every term of a sum follows
+     * a sign, and a leading term without one is taken as positive.
+     */
+    private ParseNode parseSum(int from, int to) {
+        int i, n = 0;
+        boolean signed = false;
+
+        while (from < to && isBlank(from)) {
+            from++;
+        }
+        while (to > from && isBlank(to - 1)) {
+            to--;
+        }
+
+        for (i = from; i < to; i = next(i)) {
+            if (types[i] == PLUS || types[i] == MINUS) {
+                // Two signs in a row or a trailing sign are not allowed.
+                if (i + 1 == to || types[i + 1] == PLUS || types[i + 1] == MINUS) {
+                    return null;
+                }
+                signed = true;
+                n++;
+            } // end if
+        } // end for i
+
+        if (!signed) {
+            return parseProduct(from, to);
+        }
+        if (types[from] != PLUS && types[from] != MINUS) {
+            n++;
+        }
+
+        ParseNode p = new ParseNode(n, Action.SUM);
+        int start = from;
+        int k = 0;
+
+        for (i = from; i <= to; i = (i < to) ? next(i) : to + 1) {
+            if (i < to && types[i] != PLUS && types[i] != MINUS) {
+                continue;
+            }
+            if (i > start) {
+                boolean minus = (start > from) && types[start - 1] == MINUS;
+                ParseNode term = parseProduct(start, i);
+
+                if (term == null) {
+                    return null;
+                }
+                if (minus) {
+                    p.children[k] = new ParseNode(1, Action.U_MINUS);
+                    p.children[k++].children[0] = term;
+                } // end if
+                else {
+                    p.children[k++] = term;
+                } // end else
+            } // end if
+            start = i + 1;
+        } // end for i
+
+        return p;
+    } // end parseSum
+
+    /**
+     * Parses the factors of one term. Only a term holding a "*" or "/"
+     * becomes a product; a divided factor becomes a reciprocal.
+     */
+    private ParseNode parseProduct(int from, int to) {
+        int i, n = 1;
+
+        while (from < to && isBlank(from)) {
+            from++;
+        }
+        while (to > from && isBlank(to - 1)) {
+            to--;
+        }
+
+        for (i = from; i < to; i = next(i)) {
+            if (types[i] == TIMES || types[i] == DIVIDE) {
+                if (i == from || i + 1 == to || types[i + 1] == TIMES || types[i + 1] == DIVIDE) {
+                    return null;
+                }
+                n++;
+            } // end if
+        } // end for i
+
+        if (n == 1) {
+            return parsePower(from, to);
+        }
+
+        ParseNode p = new ParseNode(n, Action.PRODUCT);
+        int start = from;
+        int k = 0;
+
+        for (i = from; i <= to; i = (i < to) ? next(i) : to + 1) {
+            if (i < to && types[i] != TIMES && types[i] != DIVIDE) {
+                continue;
+            }
+            ParseNode factor = parsePower(start, i);
+
+            if (factor == null) {
+                return null;
+            }
+            if (start > from && types[start - 1] == DIVIDE) {
+                p.children[k] = new ParseNode(1, Action.RECIPROCAL);
+                p.children[k++].children[0] = factor;
+            } // end if
+            else {
+                p.children[k++] = factor;
+            } // end else
+            start = i + 1;
+        } // end for i
+
+        return p;
+    } // end parseProduct
+
+    /**
+     * Parses one factor, splitting it at its first "^". Any later "^" is
+     * left in the exponent.
+     */
+    private ParseNode parsePower(int from, int to) {
+        int i;
+
+        for (i = from; i < to; i = next(i)) {
+            if (types[i] == CARET) {
+                ParseNode p = new ParseNode(2, Action.POWER);
+
+                if ((p.children[0] = parseOperand(from, -1, i)) == null) {
+                    return null;
+                }
+                if ((p.children[1] = parseOperand(i + 1, -1, to)) == null) {
+                    return null;
+                }
+                return p;
+            } // end if
+        } // end for i
+
+        return parseOperand(from, -1, to);
+    } // end parsePower
+
+    /**
+     * Parses a base or exponent: a function applied to the rest of the
+     * operand, or the text and groups of the operand multiplied together.
+     *
+     * @param from the first token.
+     * @param offset where the text of the first token starts, or -1 for the
+     *            start of the token.
+     * @param to the token after the last one.
+     */
+    private ParseNode parseOperand(int from, int offset, int to) {
+        if (offset < 0 && from < to) {
+            offset = starts[from];
+        }
+        // Skip leading white space, which may use up whole text tokens.
+        while (from < to && types[from] == TEXT) {
+            while (offset < ends[from] && Character.isWhitespace(source.charAt(offset))) {
+                offset++;
+            }
+            if (offset < ends[from]) {
+                break;
+            }
+            if (++from < to) {
+                offset = starts[from];
+            }
+        } // end while
+
+        if (from == to) {
+            return leaf("");
+        }
+        if (types[from] == CARET) {
+            return null;
+        }
+
+        if (types[from] == TEXT) {
+            String[] fNames = Action.FNAMES;
+
+            for (int f = Action.FIRST_FUNCTION; f < fNames.length; f++) {
+                if (source.startsWith(fNames[f], offset)) {
+                    ParseNode p = new ParseNode(1, f);
+
+                    if ((p.children[0] = parseOperand(from, offset + fNames[f].length(), to)) == null) {
+                        return null;
+                    }
+                    return p;
+                } // end if
+            } // end for f
+        } // end if
+
+        // Text between groups becomes a leaf, groups become subtrees.
+        ArrayList<ParseNode> factors = null;
+        int textStart = offset;
+        int i;
+
+        for (i = from; i < to; i = next(i)) {
+            if (types[i] != OPEN) {
+                continue;
+            }
+            if (factors == null) {
+                factors = new ArrayList<ParseNode>();
+            }
+            addText(factors, textStart, starts[i]);
+
+            ParseNode group = parseSum(i + 1, match[i]);
+            if (group == null) {
+                return null;
+            }
+            factors.add(group);
+            textStart = ends[match[i]];
+        } // end for i
+
+        int end = ends[to - 1];
+
+        if (factors == null) {
+            return leaf(source.substring(textStart, end).trim());
+        }
+        addText(factors, textStart, end);
+
+        if (factors.size() == 1) {
+            return factors.get(0);
+        }
+        ParseNode p = new ParseNode(factors.size(), Action.PRODUCT);
+        factors.toArray(p.children);
+        return p;
+    } // end parseOperand
+
+    private void addText(ArrayList<ParseNode> factors, int start, int end) {
+        if (start < end) {
+            String s = source.substring(start, end).trim();
+
+            if (s.length() > 0) {
+                factors.add(leaf(s));
+            }
+        } // end if
+    } // end addText
+
+    private static ParseNode leaf(String s) {
+        ParseNode p = new ParseNode();
+        p.theString = s;
+        return p;
+    } // end leaf
+
+    private static byte[] grow(byte[] a, int capacity) {
+        byte[] b = new byte[capacity];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    } // end grow
+
+    private static int[] grow(int[] a, int capacity) {
+        int[] b = new int[capacity];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    } // end grow
+
+} // end class ExpressionParser
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2006, United States Government as represented by the Administrator
+ * for the National Aeronautics and Space Administration. No copyright is
+ * claimed in the United States under Title 17, U.S. Code. All Other Rights
+ * Reserved.
+ */
+package gov.nasa.ial.mde.solver.symbolic;
+
+/**
+ * Interval arithmetic on closed intervals held as two element arrays, the
+ * low end first. Every result is rounded outward, so it contains the result
+ * of the operation on any values taken from the operand intervals. Where no
+ * useful bound exists, for example for the reciprocal of an interval that
+ * contains zero, or where a value in the operands would give NaN, the result
+ * is the whole line.
+ * <p>
+ * The result array may be one of the operands.
+ *
+ * @version 1.0
+ */
+final class Intervals {
+
+    private static final double TWO_PI = 2.0 * Math.PI, HALF_PI = 0.5 * Math.PI;
+
+    private Intervals() {
+    }
+
+    /**
+     * Sets an interval to a single value.
+     */
+    static void point(double v, double[] r) {
+        if (Double.isNaN(v)) {
+            whole(r);
+        } else {
+            r[0] = r[1] = v;
+        } // end else
+    } // end point
+
+    /**
+     * Sets an interval to the whole line.
+     */
+    static void whole(double[] r) {
+        r[0] = Double.NEGATIVE_INFINITY;
+        r[1] = Double.POSITIVE_INFINITY;
+    } // end whole
+
+    /**
+     * Returns true if the interval contains the value.
+     */
+    static boolean contains(double[] a, double v) {
+        return (a[0] <= v) && (v <= a[1]);
+    } // end contains
+
+    static void negate(double[] a, double[] r) {
+        double low = -a[1];
+
+        r[1] = -a[0];
+        r[0] = low;
+    } // end negate
+
+    static void add(double[] a, double[] b, double[] r) {
+        round(a[0] + b[0], a[1] + b[1], 1, r);
+    } // end add
+
+    static void multiply(double[] a, double[] b, double[] r) {
+        double p0 = a[0] * b[0], p1 = a[0] * b[1], p2 = a[1] * b[0], p3 = a[1] * b[1];
+
+        round(Math.min(Math.min(p0, p1), Math.min(p2, p3)), Math.max(Math.max(p0, p1), Math.max(p2, p3)), 1, r);
+    } // end multiply
+
+    static void reciprocal(double[] a, double[] r) {
+        if (contains(a, 0.0)) {
+            whole(r);
+        } else {
+            round(1.0 / a[1], 1.0 / a[0], 1, r);
+        } // end else
+    } // end reciprocal
+
+    static void power(double[] a, double[] b, double[] r) {
+        if (b[0] != b[1]) {
+            // a^b = exp(b log a), which needs a positive base.
+            if (a[0] <= 0.0) {
+                whole(r);
+                return;
+            } // end if
+            double[] w = { b[0], b[1] };
+
+            function(Action.LOG, a, r);
+            multiply(r, w, r);
+            function(Action.EXPONENTIAL, r, r);
+            return;
+        } // end if
+
+        double w = b[0];
+
+        if (w == 0.0) {
+            point(1.0, r);
+        } else if ((w == Math.rint(w)) && (Math.abs(w) < 1.0e9)) {
+            if (w < 0.0) {
+                if (contains(a, 0.0)) {
+                    whole(r);
+                    return;
+                } // end if
+                power(a, new double[] { -w, -w }, r);
+                reciprocal(r, r);
+            } else if ((w % 2.0 == 0.0) && contains(a, 0.0)) {
+                round(0.0, Math.pow(Math.max(-a[0], a[1]), w), 2, r);
+            } else if ((w % 2.0 == 0.0) && (a[1] < 0.0)) {
+                round(Math.pow(a[1], w), Math.pow(a[0], w), 2, r);
+            } else {
+                round(Math.pow(a[0], w), Math.pow(a[1], w), 2, r);
+            } // end else
+        } else if (a[0] < 0.0) {
+            // A negative base to a fractional power is NaN.
+            whole(r);
+        } else if (w > 0.0) {
+            round(Math.pow(a[0], w), Math.pow(a[1], w), 2, r);
+        } else {
+            round(Math.pow(a[1], w), Math.pow(a[0], w), 2, r);
+        } // end else
+    } // end power
+
+    /**
+     * Applies a one argument <code>Action</code> function to an interval.
+     */
+    static void function(int op, double[] a, double[] r) {
+        double low = a[0], high = a[1];
+
+        switch (op) {
+            case Action.SQRT :
+                if (low < 0.0) {
+                    whole(r);
+                } else {
+                    round(Math.sqrt(low), Math.sqrt(high), 1, r);
+                } // end else
+                break;
+            case Action.EXPONENTIAL :
+                round(Math.exp(low), Math.exp(high), 2, r);
+                break;
+            case Action.LOG :
+                if (low <= 0.0) {
+                    whole(r);
+                } else {
+                    round(Math.log(low), Math.log(high), 2, r);
+                } // end else
+                break;
+            case Action.SINE :
+                // sin has its maxima at pi/2 + 2k pi and its minima at -pi/2 + 2k pi.
+                periodic(Math.sin(low), Math.sin(high), low, high, HALF_PI, -HALF_PI, r);
+                break;
+            case Action.COSINE :
+                periodic(Math.cos(low), Math.cos(high), low, high, 0.0, Math.PI, r);
+                break;
+            case Action.TANGENT :
+                if (Double.isInfinite(low) || Double.isInfinite(high) || reaches(low, high, HALF_PI, Math.PI)) {
+                    whole(r);
+                } else {
+                    round(Math.tan(low), Math.tan(high), 2, r);
+                } // end else
+                break;
+            case Action.ABS :
+                if (low >= 0.0) {
+                    r[0] = low;
+                    r[1] = high;
+                } else if (high <= 0.0) {
+                    negate(a, r);
+                } else {
+                    r[1] = Math.max(-low, high);
+                    r[0] = 0.0;
+                } // end else
+                break;
+            default :
+                whole(r);
+        } // end switch
+    } // end function
+
+    /**
+     * Bounds sin or cos over an interval from its values at the ends and
+     * whether the interval reaches one of its maxima or minima.
+     */
+    private static void periodic(double fLow, double fHigh, double low, double high, double max, double min,
+            double[] r) {
+        if (Double.isInfinite(low) || Double.isInfinite(high) || (high - low >= TWO_PI)) {
+            r[0] = -1.0;
+            r[1] = 1.0;
+            return;
+        } // end if
+
+        round(Math.min(fLow, fHigh), Math.max(fLow, fHigh), 2, r);
+        if (reaches(low, high, max, TWO_PI)) {
+            r[1] = 1.0;
+        }
+        if (reaches(low, high, min, TWO_PI)) {
+            r[0] = -1.0;
+        }
+        r[0] = Math.max(r[0], -1.0);
+        r[1] = Math.min(r[1], 1.0);
+    } // end periodic
+
+    /**
+     * Returns true if the interval comes within rounding error of
+     * <code>offset + k * period</code> for some integer k.
+     */
+    private static boolean reaches(double low, double high, double offset, double period) {
+        double slack = 1.0e-9 * Math.max(1.0, Math.max(Math.abs(low), Math.abs(high)));
+        double k = Math.ceil((low - slack - offset) / period);
+
+        return offset + k * period <= high + slack;
+    } // end reaches
+
+    /**
+     * Sets an interval, moving each end outward by the specified number of
+     * units in the last place.
+     */
+    private static void round(double low, double high, int ulps, double[] r) {
+        if (Double.isNaN(low) || Double.isNaN(high)) {
+            whole(r);
+            return;
+        } // end if
+
+        for (int i = 0; i < ulps; i++) {
+            low = Math.nextAfter(low, Double.NEGATIVE_INFINITY);
+            high = Math.nextAfter(high, Double.POSITIVE_INFINITY);
+        } // end for i
+        r[0] = low;
+        r[1] = high;
+    } // end round
+
+} // end class Intervals
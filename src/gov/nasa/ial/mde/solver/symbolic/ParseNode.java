@@ -67,12 +67,12 @@ public class ParseNode implements Comparison {
 
     /**
      * Constructs a <code>ParseNode</code> with the specified quantity as a
-     * String.
+     * String. The string is parsed by <code>ExpressionParser</code>.
      * 
      * @param s the string Quantity.
      */
     public ParseNode(String s) {
-        ParseNode p = buildTree(new Quantity(s));
+        ParseNode p = ExpressionParser.parse(s);
         if (p == null) {
             badFlag = true;
             theString = s;
@@ -99,27 +99,95 @@ public class ParseNode implements Comparison {
     } // end compare
 
     /**
-     * Evaluate the node.
+     * Evaluate the node. Variables are looked up in the context, and the
+     * node itself is not modified.
      * 
+     * @param c the evaluation context.
      * @return the value of the evaluation.
      */
-    double eval() {
+    double eval(EvaluationContext c) {
         if (value != null)
             return value.doubleValue();
 
-        if (operator == Action.NO_OP || operator == Action.CORRUPTED)
+        if (operator == Action.NO_OP)
+            return c.valueOf(theString);
+
+        if (operator == Action.CORRUPTED)
             throw new RuntimeException(theString + " is undefined");
 
-        double t = Action.EVALUATOR[operator].eval(children);
+        double t = Action.EVALUATOR[operator].eval(children, c);
         for (int i = 0; i < children.length; i++)
-            if (children[i].badFlag) {
-                badFlag = true;
-                return 0;
-            } // end if
+            if (children[i].badFlag)
+                c.setBad();
 
-        return t;
+        return c.isBad() ? 0 : t;
     } // end eval
 
+    /**
+     * Evaluate the node and its derivative with respect to the variable of
+     * the context in the same pass, carrying each value with its derivative
+     * as a dual number. The value is the one {@link #eval(EvaluationContext)}
+     * gives.
+     * 
+     * @param c the evaluation context.
+     * @param vd receives the value in <code>vd[0]</code> and the derivative
+     *            in <code>vd[1]</code>.
+     */
+    void evalDual(EvaluationContext c, double[] vd) {
+        if (value != null) {
+            vd[0] = value.doubleValue();
+            vd[1] = 0.0;
+            return;
+        } // end if
+
+        if (operator == Action.NO_OP) {
+            vd[0] = c.valueOf(theString);
+            vd[1] = c.derivativeOf(theString);
+            return;
+        } // end if
+
+        if (operator == Action.CORRUPTED)
+            throw new RuntimeException(theString + " is undefined");
+
+        Action.EVALUATOR[operator].evalDual(children, c, vd);
+        for (int i = 0; i < children.length; i++)
+            if (children[i].badFlag)
+                c.setBad();
+
+        if (c.isBad())
+            vd[0] = vd[1] = 0.0;
+    } // end evalDual
+
+    /**
+     * Bounds the value of the node over the range of the variable of the
+     * context, using interval arithmetic.
+     * 
+     * @param c the evaluation context.
+     * @param r receives the low and high bounds of the value.
+     */
+    void evalInterval(EvaluationContext c, double[] r) {
+        if (value != null) {
+            Intervals.point(value.doubleValue(), r);
+            return;
+        } // end if
+
+        if (operator == Action.NO_OP) {
+            c.rangeOf(theString, r);
+            return;
+        } // end if
+
+        if (operator == Action.CORRUPTED)
+            throw new RuntimeException(theString + " is undefined");
+
+        Action.EVALUATOR[operator].evalInterval(children, c, r);
+        for (int i = 0; i < children.length; i++)
+            if (children[i].badFlag)
+                c.setBad();
+
+        if (c.isBad())
+            r[0] = r[1] = 0.0;
+    } // end evalInterval
+
     /**
      * Creates a leaf node.
      * 
@@ -133,7 +201,9 @@ public class ParseNode implements Comparison {
     } // end leaf
 
     /**
-     * Builds the tree given the specified quantity.
+     * Builds the tree given the specified quantity. This is the original
+     * string-splitting parser; <code>ExpressionParser</code> builds the same
+     * trees in one pass and is what <code>ParseNode(String)</code> uses.
      * 
      * @param q the quantity.
      * @return the root node of the tree.
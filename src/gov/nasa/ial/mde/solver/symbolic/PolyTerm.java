@@ -295,6 +295,22 @@ public class PolyTerm {
         return r;
     } // end makeSignature
 
+    /**
+     * Returns a deep copy of this term; see {@link EquationCache}.
+     */
+    PolyTerm copy(EquationCache.Copier c) {
+        PolyTerm t = new PolyTerm();
+
+        c.put(this, t);
+        t.signature = signature;
+        t.exponents = c.table(exponents);
+        t.coefficient = c.expression(coefficient);
+        t.variables = variables;
+        t.degree = degree;
+
+        return t;
+    } // end copy
+
     private void doSignature() {
         String[] r = makeSignature(exponents);
         int i, n = r.length - 1;
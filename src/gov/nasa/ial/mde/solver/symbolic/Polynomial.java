@@ -399,7 +399,7 @@ public class Polynomial {
 
         for (i = 0; i < n; i++)
             if (ce[i].theValue == null)
-                cd[i] = ce[i].evaluate(null);
+                cd[i] = ce[i].evaluate(new EvaluationContext(ce[i].parameters, null));
             else
                 cd[i] = ce[i].theValue.doubleValue();
     } // end evaluateCoefficients
@@ -537,6 +537,37 @@ public class Polynomial {
         setParameterHash(p.parameterHash);
     } // end copyFrom
 
+    /**
+     * Returns a deep copy of this polynomial; see {@link EquationCache}.
+     */
+    @SuppressWarnings("unchecked")
+    Polynomial copy(EquationCache.Copier c) {
+        Polynomial p = new Polynomial();
+
+        c.put(this, p);
+        p.useGeneralizedVariables = useGeneralizedVariables;
+        p.highestDegree = highestDegree;
+        p.theExpression = c.expression(theExpression);
+        p.termHash = c.table(termHash);
+        for (Enumeration k = termHash.keys(); k.hasMoreElements();) {
+            Object s = k.nextElement();
+
+            p.termHash.put(s, c.term((PolyTerm)termHash.get(s)));
+        } // end for
+        p.degree = c.table(degree);
+        p.coefficientHash = c.table(coefficientHash);
+        for (Enumeration<String> k = coefficientHash.keys(); k.hasMoreElements();) {
+            String s = k.nextElement();
+
+            p.coefficientHash.put(s, c.expressions(coefficientHash.get(s)));
+        } // end for
+        p.parameterHash = c.table(parameterHash);
+        p.variables = variables;
+        p.requiredVariables = requiredVariables;
+
+        return p;
+    } // end copy
+
     private PolyTerm getTerm(String[] vars, int[] exps) {
         int i, n;
 
@@ -7,9 +7,7 @@
 package gov.nasa.ial.mde.solver.symbolic;
 
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.Hashtable;
-import java.util.Vector;
 
 /**
  * The proto-expression.
@@ -77,23 +75,74 @@ public class ProtoExpression {
      * @return the value of the expression.
      */
     public double evaluate(Hashtable inputs) {
-        Hashtable nodeList = (variables.get(root));
-        Enumeration k = nodeList.keys();
+        return evaluate(new EvaluationContext(parameters, inputs));
+    } // end evaluate
 
-        while (k.hasMoreElements()) {
-            Object key;
-            Double v = parameters.get(((String) (key = k.nextElement())).toLowerCase());
-            if (v == null)
-                v = (Double)inputs.get(key);
+    /**
+     * Evaluates the expression with the variable values of the specified
+     * context. The expression is not modified, so it can be evaluated by
+     * several threads at once, each with its own context.
+     * 
+     * @param c the evaluation context.
+     * @return the value of the expression.
+     */
+    public double evaluate(EvaluationContext c) {
+        return root.eval(c);
+    } // end evaluate
 
-            Vector nodes = (Vector)nodeList.get(key);
-            Enumeration e = nodes.elements();
+    /**
+     * Evaluates the expression and its derivative with respect to one of its
+     * variables in the same pass. The derivative is exact rather than a
+     * difference quotient.
+     * 
+     * @param inputs the input variable values.
+     * @param variable the variable to differentiate with respect to.
+     * @return the value of the expression and its derivative, in that order.
+     */
+    public double[] evaluateDerivative(Hashtable inputs, String variable) {
+        double[] vd = new double[2];
 
-            while (e.hasMoreElements())
-                 ((ParseNode)e.nextElement()).value = v;
-        } // end while
+        evaluateDerivative(new EvaluationContext(parameters, inputs, variable), vd);
+        return vd;
+    } // end evaluateDerivative
 
-        return root.eval();
-    } // end evaluate
+    /**
+     * Evaluates the expression and its derivative with respect to the
+     * variable of the specified context in the same pass.
+     * 
+     * @param c the evaluation context.
+     * @param vd receives the value in <code>vd[0]</code> and the derivative
+     *            in <code>vd[1]</code>.
+     */
+    public void evaluateDerivative(EvaluationContext c, double[] vd) {
+        root.evalDual(c, vd);
+    } // end evaluateDerivative
+
+    /**
+     * Bounds the value of the expression while the variable of the specified
+     * context ranges over its interval. The bounds hold for every value in
+     * the interval, including the effect of rounding, but need not be tight.
+     * 
+     * @param c the evaluation context, made with
+     *            {@link EvaluationContext#EvaluationContext(Hashtable, String, double, double)}.
+     * @param range receives the low bound in <code>range[0]</code> and the
+     *            high bound in <code>range[1]</code>.
+     */
+    public void evaluateInterval(EvaluationContext c, double[] range) {
+        root.evalInterval(c, range);
+    } // end evaluateInterval
+
+    /**
+     * Compiles the expression into a program that evaluates it without
+     * hashing or allocation.
+     * 
+     * @param inputs the names of the input variables, in the order their
+     *            values are passed to {@link CompiledExpression#evaluate(double[])}.
+     * @return the compiled expression.
+     * @exception IllegalArgumentException is thrown if the expression is bad.
+     */
+    public CompiledExpression compile(String[] inputs) {
+        return new CompiledExpression(this, inputs);
+    } // end compile
     
 } // end ProtoExpression
@@ -332,8 +332,9 @@ public class RationalExpression extends ProtoExpression {
         private ArrayList<Residual> residuals = new ArrayList<Residual>();
         private double errorProbability;
         private final static double MAX_ERROR_PROBABILITY = 0.5;
-        private static double tolerance;
-        private static double logProbCorrect;
+        // Per instance, so that fractions can be built on several threads at once.
+        private double tolerance;
+        private double logProbCorrect;
         private final static double LOG_LIMIT = MathUtil.logOnePlusX(-MAX_ERROR_PROBABILITY);
 
         /**
@@ -345,17 +346,18 @@ public class RationalExpression extends ProtoExpression {
         public ContinuedFraction(double x, int maxSize) {
             ArrayList<Remainder> remainders = new ArrayList<Remainder>();
             int n;
-            Remainder r = new Remainder(x);
+            Remainder r;
 
             tolerance = 1.0e-10;
             logProbCorrect = 0.0;
+            r = new Remainder(x, tolerance);
             adjustTolerance(r);
 
-            remainders.add(new Remainder(0.0));
+            remainders.add(new Remainder(0.0, tolerance));
 
             for (n = 1; acceptableErr(n) && (first = fcm(remainders, r)) < 0; n++) {
                 remainders.add(r);
-                r = new Remainder(1.0 / r.theta);
+                r = new Remainder(1.0 / r.theta, tolerance);
                 adjustTolerance(r);
             } // end for n
 
@@ -628,12 +630,12 @@ public class RationalExpression extends ProtoExpression {
                 } // end if
 
                 if (temp < tolerance) {
-                    residuals.add(new Residual(i, temp));
+                    residuals.add(new Residual(i, temp, tolerance));
                     return i;
                 } // end if
             } // end for i
 
-            residuals.add(new Residual(iMin, m));
+            residuals.add(new Residual(iMin, m, tolerance));
             return -1;
         } // end fcm
 
@@ -655,8 +657,9 @@ public class RationalExpression extends ProtoExpression {
              * 
              * @param indexOfClosestMatch the index of closest match.
              * @param miss the amount of miss.
+             * @param tolerance the tolerance of the continued fraction.
              */
-            public Residual(int indexOfClosestMatch, double miss) {
+            public Residual(int indexOfClosestMatch, double miss, double tolerance) {
                 this.indexOfClosestMatch = indexOfClosestMatch;
                 this.miss = miss;
                 this.missRatio = miss / tolerance;
@@ -688,8 +691,10 @@ public class RationalExpression extends ProtoExpression {
              * Constructs a remainder for the specfied value.
              * 
              * @param x the remainder value.
+             * @param tolerance the distance from an integer within which
+             *            the value is taken to be that integer.
              */
-            public Remainder(double x) {
+            public Remainder(double x, double tolerance) {
                 if (Math.abs(x - Math.rint(x)) < tolerance) {
                     a = Math.rint(x);
                     theta = 0.0;
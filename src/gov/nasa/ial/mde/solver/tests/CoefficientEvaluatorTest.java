@@ -0,0 +1,68 @@
+package gov.nasa.ial.mde.solver.tests;
+
+import gov.nasa.ial.mde.solver.symbolic.AnalyzedEquation;
+import gov.nasa.ial.mde.solver.symbolic.Expression;
+import gov.nasa.ial.mde.solver.symbolic.Polynomial;
+import junit.framework.TestCase;
+
+/**
+ * Checks that AnalyzedEquation.getCoefficients, which uses a
+ * CoefficientEvaluator, agrees with Polynomial.evaluateCoefficients.
+ */
+public class CoefficientEvaluatorTest extends TestCase {
+
+	private String[] equations = {
+		"y=x", "y=x+3", "y/5-3x=0", "y=x*x*2.5", "y=4/3*sin(x)", "y=sin(pi*x-4)+3/5",
+		"y=1/(-3x+2) + 5", "y-1/x=0", "1/y+x=0", "y=4/3*sqrt(x)", "y=x^3+x^2", "y=x^5",
+		"y=4/3*abs(x/3+3)+7", "x^2+y^2=4", "x^2/4-y^2/9=1", "(x-1)^2/4+(y+2)^2/9=1",
+		"x^2+x y+y^2=3", "y^2=x^3-x", "y^3+x y=1", "x y=1", "y=3/(x^2-1)", "y=a x^2+b x+c",
+		"y^2=a x+b",
+	};
+
+	public void testMatchesTreeEvaluation() {
+		for (String s : equations) {
+			AnalyzedEquation ae = new AnalyzedEquation(s);
+			String[] parameters = ae.getParameters();
+			for (int i = 0; i < parameters.length; i++)
+				ae.setParameterValue(parameters[i], 1.5 - i);
+			assertSameCoefficients(s, ae);
+		}
+	}
+
+	public void testParameterChange() {
+		AnalyzedEquation ae = new AnalyzedEquation("y=a x^2+b");
+		ae.setParameterValue("a", 2);
+		ae.setParameterValue("b", 1);
+		assertSameCoefficients("before", ae);
+		ae.setParameterValue("a", -3);
+		assertSameCoefficients("after", ae);
+	}
+
+	private void assertSameCoefficients(String s, AnalyzedEquation ae) {
+		if (ae.isBad() || ae.cannotBeSolved())
+			return;
+		Expression[] ce = ae.getDVPCoefficients();
+		double[] expected = new double[ce.length];
+		double[] xs = new double[40];
+		double[][] columns = new double[ce.length][xs.length];
+		for (int k = 0; k < xs.length; k++)
+			xs[k] = -7.3 + 0.37 * k;
+		ae.getCoefficients(xs, xs.length, columns);
+
+		for (int k = 0; k < xs.length; k++) {
+			double x = xs[k];
+			Polynomial.evaluateCoefficients(ce, ae.getIndependentVariable(), x, expected);
+			double[] actual = ae.getCoefficients(x);
+			for (int i = 0; i < expected.length; i++) {
+				double tolerance = 1e-12 * Math.max(1.0, Math.abs(expected[i]));
+				if (Double.isNaN(expected[i]))
+					assertTrue(s + " at " + x, Double.isNaN(actual[i]));
+				else
+					assertEquals(s + " at " + x, expected[i], actual[i], tolerance);
+				// Evaluating all the points at once gives the same bits.
+				assertEquals(s + " at " + x, Double.doubleToLongBits(actual[i]),
+						Double.doubleToLongBits(columns[i][k]));
+			}
+		}
+	}
+}
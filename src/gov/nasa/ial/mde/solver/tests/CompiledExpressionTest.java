@@ -0,0 +1,125 @@
+package gov.nasa.ial.mde.solver.tests;
+
+import gov.nasa.ial.mde.solver.symbolic.CompiledExpression;
+import gov.nasa.ial.mde.solver.symbolic.Expression;
+
+import java.util.Hashtable;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that a CompiledExpression gives bit-for-bit the same values as
+ * Expression.evaluate.
+ */
+public class CompiledExpressionTest extends TestCase {
+
+	private static final String[] INPUTS = { "x", "y" };
+
+	private String[] expressions = {
+		"x", "x+3", "y/5-3x", "x*x*2.5", "4/3*sin(x)", "sin(pi*x-4)+3/5", "1/(-3x+2) + 5",
+		"4/3*sqrt(x)", "x^3+x^2", "4/3*abs(x/3+3)+7", "x^2/4-y^2/9", "(x-1)^2+(y+2)^2",
+		"3(x-2)^2+1", "(x+1)/(x-1)", "x^(1/2)", "exp(-x^2)", "log(abs(x)+1)", "tan(x)*cos(y)",
+		"x/y/x", "-(x+y)", "2", "pi", "0.1+0.2+x-x",
+	};
+
+	private RandomExpressions randomExpressions = new RandomExpressions(
+			new String[] { "x", "y", "2", "3.5", "pi", "2x", "0.1", "1", "0", "-x", "a", "b" },
+			RandomExpressions.OPERATORS, false);
+
+	public void testExpressions() {
+		Random random = new Random(19);
+		for (String s : expressions)
+			assertSameValues(new Expression(s), random);
+	}
+
+	public void testRandomExpressions() {
+		Random random = new Random(23);
+		Hashtable<String, Double> parameters = new Hashtable<String, Double>();
+		parameters.put("a", new Double(1.0));
+		parameters.put("b", new Double(-1.0));
+		for (int i = 0; i < 2000; i++) {
+			Expression e = new Expression(randomExpressions.next(random, 3));
+			if (e.root != null && !e.root.badFlag) {
+				e.setParameterHash(parameters);
+				assertSameValues(e, random);
+			}
+		}
+	}
+
+	public void testNegativeZero() {
+		String[] zeros = { "-x", "-x+0", "0-x", "(-x)*1", "-(-x)", "-(x*y)", "abs(-x)", "1/(-x)", "x^1", "-x^0" };
+		Hashtable<String, Double> h = new Hashtable<String, Double>();
+		double[] inputs = new double[INPUTS.length];
+		for (String s : zeros) {
+			Expression e = new Expression(s);
+			CompiledExpression c = e.compile(INPUTS);
+			for (double x : new double[] { 0.0, -0.0 }) {
+				inputs[0] = inputs[1] = x;
+				h.put("x", new Double(x));
+				h.put("y", new Double(x));
+				assertEquals(s, Double.doubleToLongBits(e.evaluate(h)), Double.doubleToLongBits(c.evaluate(inputs)));
+			}
+		}
+	}
+
+	public void testSimplification() {
+		Expression e = new Expression("a*x^1*1");
+		Hashtable<String, Double> parameters = new Hashtable<String, Double>();
+		parameters.put("a", new Double(2.0));
+		e.setParameterHash(parameters);
+		assertEquals("const 2.0\ninput 0\nproduct 2\n", e.compile(INPUTS).toString());
+
+		assertEquals("const 3.0\ninput 0\nproduct 2\n", new Expression("(3*x)*1").compile(INPUTS).toString());
+		assertEquals("input 0\nabs\n", new Expression("abs(-x)").compile(INPUTS).toString());
+	}
+
+	public void testParameters() {
+		Expression e = new Expression("a*x^2+b");
+		Hashtable<String, Double> parameters = new Hashtable<String, Double>();
+		parameters.put("a", new Double(2.0));
+		parameters.put("b", new Double(-1.0));
+		e.setParameterHash(parameters);
+
+		CompiledExpression c = e.compile(INPUTS);
+		double[] inputs = { 3.0, 0.0 };
+		assertEquals(17.0, c.evaluate(inputs), 0.0);
+
+		parameters.put("a", new Double(1.0));
+		c.loadParameters();
+		assertEquals(8.0, c.evaluate(inputs), 0.0);
+	}
+
+	public void testUndefinedVariable() {
+		CompiledExpression c = new Expression("x+z").compile(INPUTS);
+		try {
+			c.evaluate(new double[] { 1.0, 2.0 });
+			fail("z has no value");
+		} catch (RuntimeException e) {
+			assertEquals("z is undefined", e.getMessage());
+		}
+	}
+
+	private void assertSameValues(Expression e, Random random) {
+		CompiledExpression c = e.compile(INPUTS);
+		Hashtable<String, Double> h = new Hashtable<String, Double>();
+		double[] inputs = new double[INPUTS.length];
+		double[][] columns = new double[INPUTS.length][20];
+		double[] expected = new double[20];
+		double[] actual = new double[20];
+
+		for (int i = 0; i < 20; i++) {
+			for (int j = 0; j < INPUTS.length; j++) {
+				inputs[j] = columns[j][i] = (random.nextDouble() - 0.5) * 20.0;
+				h.put(INPUTS[j], new Double(inputs[j]));
+			}
+			expected[i] = e.evaluate(h);
+			assertEquals(e.toString(), Double.doubleToLongBits(expected[i]),
+					Double.doubleToLongBits(c.evaluate(inputs)));
+		}
+
+		c.evaluate(columns, 20, actual);
+		for (int i = 0; i < 20; i++)
+			assertEquals(e.toString(), Double.doubleToLongBits(expected[i]), Double.doubleToLongBits(actual[i]));
+	}
+}
@@ -0,0 +1,79 @@
+package gov.nasa.ial.mde.solver.tests;
+
+import gov.nasa.ial.mde.solver.symbolic.AnalyzedEquation;
+import gov.nasa.ial.mde.solver.symbolic.Expression;
+
+import java.util.Hashtable;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the derivatives from Expression.evaluateDerivative and the slopes
+ * and critical points AnalyzedEquation finds with them.
+ */
+public class DerivativeTest extends TestCase {
+
+	private String[] expressions = {
+		"x", "x+3", "y/5-3x", "x*x*2.5", "4/3*sin(x)", "sin(pi*x-4)+3/5", "1/(-3x+2) + 5",
+		"4/3*sqrt(x+11)", "x^3+x^2", "4/3*abs(x/3+3)+7", "x^2/4-y^2/9", "exp(-x^2)", "log(abs(x)+1)",
+		"tan(x/4)*cos(y)", "(x+1)/(x-1)", "x^(1/2)", "2^x", "x^x",
+	};
+
+	public void testMatchesDifferenceQuotient() {
+		Hashtable<String, Double> h = new Hashtable<String, Double>();
+		for (String s : expressions) {
+			Expression e = new Expression(s);
+			for (int i = 0; i < 30; i++) {
+				double x = 0.1 + 0.33 * i, dx = 1.0e-6;
+				h.put("y", new Double(0.7));
+				h.put("x", new Double(x));
+				double[] vd = e.evaluateDerivative(h, "x");
+				double v = e.evaluate(h);
+				// The value is exactly the one evaluate gives.
+				assertEquals(s, Double.doubleToLongBits(v), Double.doubleToLongBits(vd[0]));
+
+				h.put("x", new Double(x + dx));
+				double above = e.evaluate(h);
+				h.put("x", new Double(x - dx));
+				double estimate = (above - e.evaluate(h)) / (2 * dx);
+				assertEquals(s + " at " + x, estimate, vd[1], 1.0e-5 * Math.max(1.0, Math.abs(estimate)));
+			}
+		}
+	}
+
+	public void testParametersAreConstant() {
+		Expression e = new Expression("a*x^2");
+		Hashtable<String, Double> parameters = new Hashtable<String, Double>();
+		parameters.put("a", new Double(3.0));
+		e.setParameterHash(parameters);
+		Hashtable<String, Double> h = new Hashtable<String, Double>();
+		h.put("x", new Double(2.0));
+		assertEquals(12.0, e.evaluateDerivative(h, "x")[1], 0.0);
+		assertEquals(0.0, e.evaluateDerivative(h, "a")[1], 0.0);
+	}
+
+	public void testSlope() {
+		AnalyzedEquation circle = new AnalyzedEquation("x^2+y^2=4");
+		assertEquals(0.0, circle.getSlope(0.0, 2.0), 1.0e-12);
+		assertEquals(-1.0, circle.getSlope(Math.sqrt(2.0), Math.sqrt(2.0)), 1.0e-12);
+
+		AnalyzedEquation line = new AnalyzedEquation("y/5-3x=0");
+		assertEquals(15.0, line.getSlope(1.0, 15.0), 1.0e-12);
+	}
+
+	public void testCriticalPoints() {
+		assertCriticalPoints("y=x^3-3x", -5, 5, new double[] { -1.0, 1.0 });
+		assertCriticalPoints("y=sin(x)", 0, 7, new double[] { Math.PI / 2, 3 * Math.PI / 2 });
+		assertCriticalPoints("y=3(x-2)^2+1", -10, 10, new double[] { 2.0 });
+		assertCriticalPoints("y=1/(x^2-1)", -3, 3, new double[] { 0.0 });
+		assertCriticalPoints("y=1/x", -3, 3, new double[0]);
+		assertCriticalPoints("x^2+y^2=4", -3, 3, new double[0]);
+	}
+
+	private void assertCriticalPoints(String s, double left, double right, double[] expected) {
+		double[] actual = new AnalyzedEquation(s).findCriticalPoints(left, right, 25);
+		assertEquals(s, expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(s, expected[i], actual[i], 1.0e-9);
+	}
+}
@@ -0,0 +1,62 @@
+package gov.nasa.ial.mde.solver.tests;
+
+import gov.nasa.ial.mde.solver.symbolic.AnalyzedEquation;
+import gov.nasa.ial.mde.solver.symbolic.Equation;
+import gov.nasa.ial.mde.solver.symbolic.EquationCache;
+import junit.framework.TestCase;
+
+/**
+ * Checks that equations copied out of the EquationCache match freshly parsed
+ * ones and do not share state with each other.
+ */
+public class EquationCacheTest extends TestCase {
+
+	private String[] equations = {
+		"y=x", "y/5-3x=0", "y=1/(-3x+2) + 5", "y=4/3*abs(x/3+3)+7",
+		"(x-1)^2/4+(y+2)^2/9=1", "y=3(x-2)^2+1", "y=a x^2+b x+c", "r=2cos(3t)",
+		"x=", "y=x)", "y=x+=2",
+	};
+
+	public void testCopiesMatchParsedEquations() {
+		EquationCache cache = new EquationCache(4);
+		for (int pass = 0; pass < 2; pass++) {
+			for (String s : equations) {
+				Equation parsed = new Equation(s);
+				Equation copy = cache.get(s);
+				assertEquals(s, parsed.bad, copy.bad);
+				if (!parsed.bad) {
+					assertEquals(s, parsed.toString(), copy.toString());
+					assertEquals(s, parsed.getPolynomial().toString(), copy.getPolynomial().toString());
+				}
+			}
+		}
+		assertEquals(4, cache.size());
+	}
+
+	public void testWhiteSpaceVariantsShareAnEntry() {
+		EquationCache cache = new EquationCache(16);
+		cache.get("y=sin(x)+3");
+		cache.get(" y = sin (x) + 3 ");
+		cache.get("y=sin x+3");
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getHitCount());
+
+		// The parser needs a blank between adjacent operators.
+		assertFalse(cache.get("y = 3 - -x").bad);
+		assertFalse(cache.get("y=3 - -x").bad);
+		assertFalse(cache.get("y = 3 + - x").bad);
+		assertFalse(cache.get("y = - - x").bad);
+		assertEquals(5, cache.size());
+		assertEquals(2, cache.getHitCount());
+	}
+
+	public void testParametersAreNotShared() {
+		AnalyzedEquation first = new AnalyzedEquation("y=m x+b");
+		first.setParameterValue("m", 3);
+		first.setParameterValue("b", -2);
+		AnalyzedEquation second = new AnalyzedEquation("y=m x+b");
+		assertEquals(1.0, second.getParameterValue("m"), 0.0);
+		assertEquals(3.0, first.getParameterValue("m"), 0.0);
+		assertFalse(first.printEquation().equals(second.printEquation()));
+	}
+}
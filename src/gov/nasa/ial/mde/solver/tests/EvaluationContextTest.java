@@ -0,0 +1,79 @@
+package gov.nasa.ial.mde.solver.tests;
+
+import gov.nasa.ial.mde.solver.symbolic.EvaluationContext;
+import gov.nasa.ial.mde.solver.symbolic.Expression;
+
+import java.util.Hashtable;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that evaluating an Expression with an EvaluationContext leaves the
+ * expression untouched, so that threads can share it.
+ */
+public class EvaluationContextTest extends TestCase {
+
+	private static final int POINTS = 500;
+
+	private String[] expressions = {
+		"x^2/4-y^2/9", "sin(pi*x-4)+3/5", "1/(-3x+2) + 5", "4/3*abs(x/3+3)+7", "exp(-x^2)*cos(y)",
+		"a*x^2+b*y",
+	};
+
+	public void testSharedExpression() throws InterruptedException {
+		for (String s : expressions) {
+			final Expression e = new Expression(s);
+			Hashtable<String, Double> parameters = new Hashtable<String, Double>();
+			parameters.put("a", new Double(2.0));
+			parameters.put("b", new Double(-0.5));
+			e.setParameterHash(parameters);
+
+			final double[] expected = new double[POINTS];
+			for (int i = 0; i < POINTS; i++)
+				expected[i] = e.evaluate(inputs(i));
+
+			final int[] mismatches = new int[1];
+			Thread[] threads = new Thread[4];
+			for (int t = 0; t < threads.length; t++) {
+				final int offset = t;
+				threads[t] = new Thread() {
+					public void run() {
+						for (int pass = 0; pass < 20; pass++)
+							for (int i = offset; i < POINTS; i += 3) {
+								double v = e.evaluate(new EvaluationContext(e.parameters, inputs(i)));
+								if (Double.doubleToLongBits(v) != Double.doubleToLongBits(expected[i]))
+									synchronized (mismatches) {
+										mismatches[0]++;
+									}
+							}
+					}
+				};
+				threads[t].start();
+			}
+			for (Thread t : threads)
+				t.join();
+			assertEquals(s, 0, mismatches[0]);
+		}
+	}
+
+	public void testUndefinedVariable() {
+		Expression e = new Expression("x+z");
+		Hashtable<String, Double> inputs = new Hashtable<String, Double>();
+		inputs.put("x", new Double(1.0));
+		try {
+			e.evaluate(new EvaluationContext(null, inputs));
+			fail("z has no value");
+		} catch (RuntimeException ex) {
+			assertEquals("z is undefined", ex.getMessage());
+		}
+		inputs.put("z", new Double(2.0));
+		assertEquals(3.0, e.evaluate(new EvaluationContext(null, inputs)), 0.0);
+	}
+
+	private static Hashtable<String, Double> inputs(int i) {
+		Hashtable<String, Double> h = new Hashtable<String, Double>();
+		h.put("x", new Double(-5.0 + 0.02 * i));
+		h.put("y", new Double(3.0 - 0.013 * i));
+		return h;
+	}
+}
@@ -0,0 +1,71 @@
+package gov.nasa.ial.mde.solver.tests;
+
+import gov.nasa.ial.mde.solver.symbolic.ExpressionParser;
+import gov.nasa.ial.mde.solver.symbolic.ParseNode;
+import gov.nasa.ial.mde.solver.symbolic.Quantity;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that ExpressionParser builds the same trees as the original
+ * string-splitting parser in ParseNode.buildTree.
+ */
+public class ExpressionParserTest extends TestCase {
+
+	private String[] expressions = {
+		"y", "x+3", "y/5-3x", "x*x*2.5", "4/3*sin(x)", "sin(pi*x-4)+3/5",
+		"1/(-3x+2) + 5", "1/y+x", "4/3*sqrt(x)", "x^3+x^2", "4/3*abs(x/3+3)+7",
+		"x^2/4-y^2/9", "(x-1)^2+(y+2)^2", "3(x-2)^2+1", "(x+1)/(x-1)", "x^(1/2)",
+		"a x^2 + b x + c", "2(x+1)", "(x)(y)", "sin(x)^2", "sin x", "sin2x",
+		"xsin(x)", "2sin(x)", "sin(x)(y)", "sin(x)y", "sin (x)", "sin 2 (x)",
+		"sinsinx", "(2)sin(x)", "-x", "+x", "-(x+1)", " - x ", "( -x)",
+		"(((x)))", "x*(y*(z+1))", "exp(-x^2)", "x/y/z", "2 x", "(x) 2",
+		// Malformed input: either rejected or left with leaves that
+		// Expression rejects.
+		"x^2^3", "x^(2)^3", "x^-2", "x + + y", "x+ -y", "x*-2", "--x",
+		"x**y", "x*/y", "a+ *b", "x^^2", "sin^2(x)", "()", "(x+)", "(x",
+	};
+
+	private RandomExpressions randomExpressions = new RandomExpressions(
+			new String[] { "x", "y", "2", "3.5", "pi", "2x", "xy", " x ", "a" },
+			new String[] { "+", "-", "*", "/", "^", " + ", " * " }, true);
+
+	public void testExpressions() {
+		for (String s : expressions)
+			assertSameTree(s);
+	}
+
+	public void testRandomExpressions() {
+		Random random = new Random(17);
+		for (int i = 0; i < 20000; i++)
+			assertSameTree(randomExpressions.next(random, 3));
+	}
+
+	public void testUnbalancedParentheses() {
+		assertTrue(new ParseNode("x)").badFlag);
+		assertTrue(new ParseNode("(x))").badFlag);
+		assertTrue(new ParseNode("2(x+)").badFlag);
+	}
+
+	private void assertSameTree(String s) {
+		ParseNode actual = ExpressionParser.parse(s);
+		String expected = legacyTree(s);
+		if (expected == null)
+			assertNull(s, actual);
+		else
+			assertEquals(s, expected, actual.toString());
+	}
+
+	private String legacyTree(String s) {
+		try {
+			ParseNode p = new ParseNode().buildTree(new Quantity(s));
+			return (p == null) ? null : p.toString();
+		} catch (NullPointerException e) {
+			// The old parser trips over some malformed groups instead of
+			// returning null; ExpressionParser rejects them.
+			return null;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package gov.nasa.ial.mde.solver.tests;
+
+import gov.nasa.ial.mde.solver.MdeFeatureNode;
+import gov.nasa.ial.mde.solver.SolvedGraph;
+import gov.nasa.ial.mde.solver.Solver;
+import gov.nasa.ial.mde.solver.symbolic.AnalyzedEquation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Compares the bytes allocated and the time taken to serialize the feature
+ * trees of the SolverTest equations with the old string-concatenating
+ * serializer and with MdeFeatureNode.writeXML. Also checks that both give
+ * the same XML.
+ */
+public class FeatureXMLBenchmark {
+
+	private static final String[] EQUATIONS = {
+		"y=x", "y=x+3", "y=x+5", "y-x=0", "y/5-3x=0",
+		"y=x*x", "y=x*x*3", "y=x*x*2.5",
+		"y=4/3*sin(x)", "y=sin(x-4)", "y=sin(pi*x-4)+3/5", "y=cos(x)",
+		"y=1/(-3x+2) + 5", "y-1/x=0", "1/y+x=0",
+		"y=sqrt(x)", "y=4*sqrt(x)", "y=4/3*sqrt(x)",
+		"y=x^3", "y=x^3+4", "y=x^3+x^2", "y=x^5",
+		"y=abs(x)+4", "y=4/3*abs(x/3+3)+7",
+	};
+
+	private static final int WARMUP = 200;
+	private static final int ROUNDS = 2000;
+
+	public static void main(String[] args) throws Exception {
+		ArrayList<SolvedGraph> graphs = new ArrayList<SolvedGraph>();
+		for (String equation : EQUATIONS) {
+			Solver solver = new Solver();
+			AnalyzedEquation analyzedEquation = solver.add(equation);
+			solver.solve();
+			graphs.add(analyzedEquation.getClassifier().getFeatures(analyzedEquation));
+		}
+
+		for (SolvedGraph graph : graphs) {
+			if (!legacyXML(graph).equals(graph.getXMLString()))
+				throw new IllegalStateException("XML differs for " + graph);
+		}
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			System.out.println("Allocation counting is not available on this JVM.");
+			return;
+		}
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		long thread = Thread.currentThread().getId();
+
+		for (int pass = 0; pass < 2; pass++) {
+			boolean legacy = (pass == 0);
+			StringBuilder out = new StringBuilder(1 << 16);
+			for (int i = 0; i < WARMUP; i++)
+				serialize(graphs, legacy, out);
+
+			long bytes = allocations.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			for (int i = 0; i < ROUNDS; i++)
+				serialize(graphs, legacy, out);
+			long nanos = System.nanoTime() - start;
+			bytes = allocations.getThreadAllocatedBytes(thread) - bytes;
+
+			System.out.println((legacy ? "string concatenation" : "writeXML            ")
+					+ ": " + (bytes / ROUNDS / graphs.size()) + " bytes/graph, "
+					+ (nanos / ROUNDS / graphs.size()) + " ns/graph");
+		}
+	}
+
+	private static void serialize(ArrayList<SolvedGraph> graphs, boolean legacy, StringBuilder out)
+			throws Exception {
+		for (SolvedGraph graph : graphs) {
+			out.setLength(0);
+			if (legacy)
+				out.append(legacyXML(graph));
+			else
+				graph.writeXML(out);
+		}
+	}
+
+	private static String legacyXML(SolvedGraph graph) {
+		MdeFeatureNode[] nodes = graph.getFeatureNodes();
+		StringBuffer b = new StringBuffer();
+		for (MdeFeatureNode node : nodes)
+			b.append(legacyXML(node));
+		return b.toString();
+	}
+
+	// The serializer MdeFeatureNode used before writeXML.
+	private static String legacyXML(MdeFeatureNode r) {
+		String[] keys = r.keys();
+		StringBuffer b = new StringBuffer();
+
+		for (String key : keys) {
+			ArrayList<Object> l = r.getList(key);
+			String k = key.replaceAll("[^a-zA-Z0-9]", "");
+			Iterator<Object> it = l.iterator();
+
+			while (it.hasNext()) {
+				Object o = it.next();
+				String v = (o instanceof MdeFeatureNode) ? legacyXML((MdeFeatureNode) o) + "\n"
+						: ((String) o).replaceAll(">", "&gt;").replaceAll("<", "&lt;");
+
+				if (v.trim().length() > 0)
+					b.append("\n<" + k + ">" + v + "</" + k + ">");
+			}
+		}
+		return b.toString();
+	}
+}
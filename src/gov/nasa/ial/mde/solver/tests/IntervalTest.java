@@ -0,0 +1,83 @@
+package gov.nasa.ial.mde.solver.tests;
+
+import gov.nasa.ial.mde.math.MultiPointXY;
+import gov.nasa.ial.mde.solver.symbolic.AnalyzedEquation;
+import gov.nasa.ial.mde.solver.symbolic.EvaluationContext;
+import gov.nasa.ial.mde.solver.symbolic.Expression;
+
+import java.util.Hashtable;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the bounds from Expression.evaluateInterval and the viewport culling
+ * AnalyzedEquation does with them.
+ */
+public class IntervalTest extends TestCase {
+
+	private String[] expressions = {
+		"x", "x+3", "-3x", "x*x*2.5", "4/3*sin(x)", "sin(pi*x-4)+3/5", "cos(3x)", "1/(-3x+2) + 5",
+		"4/3*sqrt(x+11)", "x^3+x^2", "4/3*abs(x/3+3)+7", "exp(-x^2)", "log(abs(x)+1)", "tan(x/4)",
+		"(x+1)/(x-1)", "x^(1/2)", "2^x", "a*x^2+b",
+	};
+
+	public void testBoundsContainValues() {
+		Random random = new Random(25);
+		Hashtable<String, Double> parameters = new Hashtable<String, Double>();
+		parameters.put("a", new Double(2.0));
+		parameters.put("b", new Double(-0.5));
+		Hashtable<String, Double> h = new Hashtable<String, Double>();
+		double[] range = new double[2];
+		for (String s : expressions) {
+			Expression e = new Expression(s);
+			e.setParameterHash(parameters);
+			for (int i = 0; i < 200; i++) {
+				double low = 20 * random.nextDouble() - 10, high = low + 3 * random.nextDouble() * random.nextDouble();
+				e.evaluateInterval(new EvaluationContext(parameters, "x", low, high), range);
+				for (int j = 0; j <= 10; j++) {
+					double x = (j == 10) ? high : low + j * (high - low) / 10;
+					h.put("x", new Double(x));
+					double v = e.evaluate(h);
+					if (!Double.isNaN(v))
+						assertTrue(s + " at " + x + " in [" + low + ", " + high + "]", range[0] <= v && v <= range[1]);
+				}
+			}
+		}
+	}
+
+	public void testCulling() {
+		String[] equations = { "y=x^3", "y=exp(x)", "y=1/x", "x^2+y^2=4", "y=tan(x)" };
+		for (String s : equations) {
+			AnalyzedEquation plain = new AnalyzedEquation(s);
+			AnalyzedEquation culled = new AnalyzedEquation(s);
+			assertFalse(culled.isViewportCulling());
+			culled.setViewportCulling(true);
+			plain.computePoints(-10, 10, 1, -1);
+			culled.computePoints(-10, 10, 1, -1);
+			MultiPointXY[] expected = plain.getPoints(), actual = culled.getPoints();
+			assertEquals(s, expected.length, actual.length);
+			int skipped = 0;
+			for (int i = 0; i < expected.length; i++) {
+				if (actual[i].yArray.length == 0 && expected[i].yArray.length > 0)
+					skipped++;
+				if (!inView(expected[i]))
+					continue;
+				// Every point in the view is solved just as it is without culling.
+				assertEquals(s, expected[i].x, actual[i].x, 0.0);
+				assertEquals(s, expected[i].yArray.length, actual[i].yArray.length);
+				for (int j = 0; j < expected[i].yArray.length; j++)
+					assertEquals(s, expected[i].yArray[j], actual[i].yArray[j], 1.0e-9);
+			}
+			if (!s.startsWith("x^2"))
+				assertTrue(s, skipped > 0);
+		}
+	}
+
+	private static boolean inView(MultiPointXY p) {
+		for (double y : p.yArray)
+			if (-1 <= y && y <= 1)
+				return true;
+		return false;
+	}
+}
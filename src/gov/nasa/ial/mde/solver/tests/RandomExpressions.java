@@ -0,0 +1,48 @@
+package gov.nasa.ial.mde.solver.tests;
+
+import java.util.Random;
+
+/**
+ * Builds random expression strings for the tests that compare two ways of
+ * parsing or evaluating the same expression.
+ */
+final class RandomExpressions {
+
+	static final String[] FUNCTIONS = { "sin", "cos", "sqrt", "abs", "exp", "log", "tan" };
+	static final String[] OPERATORS = { "+", "-", "*", "/", "^" };
+
+	private final String[] atoms;
+	private final String[] operators;
+	private final boolean implicit;
+
+	/**
+	 * @param atoms the leaves of the expressions.
+	 * @param operators the binary operators.
+	 * @param implicit true to also write functions applied without
+	 * parentheses and implicit products, such as "sin x" and "-2x y".
+	 */
+	RandomExpressions(String[] atoms, String[] operators, boolean implicit) {
+		this.atoms = atoms;
+		this.operators = operators;
+		this.implicit = implicit;
+	}
+
+	String next(Random random, int depth) {
+		switch (random.nextInt(depth <= 0 ? 1 : (implicit ? 5 : 4))) {
+		case 0:
+			return atoms[random.nextInt(atoms.length)];
+		case 1:
+			return next(random, depth - 1) + operators[random.nextInt(operators.length)] + next(random, depth - 1);
+		case 2:
+			return "(" + next(random, depth - 1) + ")";
+		case 3:
+			if (!implicit)
+				return FUNCTIONS[random.nextInt(FUNCTIONS.length)] + "(" + next(random, depth - 1) + ")";
+			String argument = next(random, depth - 1);
+			return FUNCTIONS[random.nextInt(FUNCTIONS.length)]
+					+ (random.nextBoolean() ? "(" + argument + ")" : " " + argument);
+		default:
+			return (random.nextBoolean() ? "-" : "") + next(random, depth - 1) + next(random, depth - 1);
+		}
+	}
+}
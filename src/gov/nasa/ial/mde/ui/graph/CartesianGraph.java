@@ -9,14 +9,12 @@ package gov.nasa.ial.mde.ui.graph;
 import gov.nasa.ial.mde.math.Bounds;
 import gov.nasa.ial.mde.math.PointXY;
 import gov.nasa.ial.mde.properties.MdeSettings;
-import gov.nasa.ial.mde.solver.GraphTrail;
 import gov.nasa.ial.mde.solver.Solution;
 import gov.nasa.ial.mde.solver.Solver;
 import gov.nasa.ial.mde.solver.symbolic.AnalyzedData;
 import gov.nasa.ial.mde.solver.symbolic.AnalyzedEquation;
 import gov.nasa.ial.mde.solver.symbolic.AnalyzedItem;
 import gov.nasa.ial.mde.ui.GraphNavKeys;
-import gov.nasa.ial.mde.util.MathUtil;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
@@ -30,21 +28,11 @@ import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.GeneralPath;
-import java.awt.geom.Line2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
-import java.io.Writer;
-import java.text.NumberFormat;
 
 import javax.swing.JPanel;
 
-import org.apache.batik.dom.GenericDOMImplementation;
 import org.apache.batik.svggen.SVGGraphics2D;
-import org.apache.batik.svggen.SVGGraphics2DIOException;
-import org.w3c.dom.DOMImplementation;
-import org.w3c.dom.Document;
 
 /**
  * The <code>CartesianGraph</code> class is used to draw the solutions
@@ -71,7 +59,6 @@ public class CartesianGraph extends JPanel {
 	private BufferedImage bi = null;
 	private Graphics2D big2 = null;
 	private BasicStroke userSpecifiedStroke;
-	private BasicStroke scatterPlotStroke;
     
     // The saved path for the graph that is to be drawn.
 	private GeneralPath cachedPath = null;
@@ -95,8 +82,6 @@ public class CartesianGraph extends JPanel {
 	private boolean useBlackAndWhiteShade = false;
 	private MdeSettings currentSettings = null;
     
-	private NumberFormat displayNumberFormat;
-    
 	private boolean use1To1AspectRatio = true;
 	private boolean resetBounds = true;
     
@@ -131,14 +116,8 @@ public class CartesianGraph extends JPanel {
         this.solver = solver;
         this.currentSettings = settings;
         this.userSpecifiedStroke = new BasicStroke(currentSettings.getLineSize());
-        this.scatterPlotStroke = new BasicStroke(3);
-        
-        // This is used to format the numbers displayed on the graph.
-        displayNumberFormat = NumberFormat.getInstance();
-        displayNumberFormat.setMinimumFractionDigits(1);
-        displayNumberFormat.setMaximumFractionDigits(3);
 
-        f = new Font("SansSerif", Font.PLAIN, 9);
+        f = CartesianGraphRenderer.LABEL_FONT;
         setFont(f);
         fontMetrics = getFontMetrics(f);
         sideBorderWidth = fontMetrics.stringWidth("-999.999");
@@ -422,16 +401,8 @@ public class CartesianGraph extends JPanel {
         public String getSVG() {
             setupBounds();
 
-            // Get a DOMImplementation.
-            DOMImplementation domImpl =
-                GenericDOMImplementation.getDOMImplementation();
-
-            // Create an instance of org.w3c.dom.Document.
-            String svgNS = "http://www.w3.org/2000/svg";
-            Document document = domImpl.createDocument(svgNS, "svg", null);
-
             // Create an instance of the SVG Generator.
-            SVGGraphics2D g2 = new SVGGraphics2D(document);
+            SVGGraphics2D g2 = CartesianGraphRenderer.createSVGGraphics();
 
             if ((cachedPath == null) || !USE_CACHED_GRAPH_DRAWING) {
                 setupGraph(g2);
@@ -463,22 +434,8 @@ public class CartesianGraph extends JPanel {
             // Disable antialiasing
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
 
-            // Finally, stream out SVG to the standard output using
-            // UTF-8 encoding.
-            boolean useCSS = true; // we want to use CSS style attributes
-            String result = null;
-            Writer out;
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            try {
-                out = new OutputStreamWriter(baos, "UTF-8");
-                g2.stream(out, useCSS);
-                result = new String(baos.toByteArray(), "UTF-8");
-            } catch (UnsupportedEncodingException e) {
-                e.printStackTrace();
-            } catch (SVGGraphics2DIOException e) {
-                e.printStackTrace();
-            }
-            return result;
+            // Finally, stream out SVG using UTF-8 encoding.
+            return CartesianGraphRenderer.streamSVG(g2);
 
         } // end paintComponent
 
@@ -524,37 +481,6 @@ public class CartesianGraph extends JPanel {
         }
     }
 
-    private void drawSonificationTrace(SVGGraphics2D g2) {
-        int traceXaxisPixel = x2pix(traceXaxis);
-
-        if ((traceXaxisPixel >= 0) && (traceXaxisPixel <= graphBounds.width)) {
-
-            // Use the Polar graph trace only if we have one polar graph to
-            // sonify and no other graphs to sonify.
-            if ((solver.getSonifyPolarCount() == 1) &&
-                    (solver.getSonifyCartesianCount() == 0)) {
-
-                int traceYaxisPixel = y2pix(traceYaxis);
-                if (traceYaxisPixel == 0) {
-                    traceYaxisPixel = 1; // <== TODO: Why is this needed?????
-                }
-
-                // Draw a blue ball with a line around it.
-                double x = (traceXaxisPixel >= 0) ? traceXaxisPixel - 3 : traceXaxisPixel + 3;
-                double y = (traceYaxisPixel >= 0) ? traceYaxisPixel - 3 : traceYaxisPixel + 3;
-                g2.setColor(Color.blue);
-                g2.fill(new Ellipse2D.Double(x, y, BALL_DIAMETER, BALL_DIAMETER));
-
-                // Moving Object Simulation (circle)
-                g2.setColor(Color.white);
-                g2.draw(new Ellipse2D.Double(x, y, BALL_DIAMETER, BALL_DIAMETER));
-            } else {
-                g2.setColor(Color.white);
-                drawLine(traceXaxisPixel, graphBounds.height, traceXaxisPixel, 0, g2);
-            }
-        }
-    }
-
     /**
      * Paints the <code>CartesianGraph</code> component.
      * 
@@ -621,34 +547,7 @@ public class CartesianGraph extends JPanel {
         
         // Draw the sonification trace.
         if (currentSettings.showTrace()) {
-            int traceXaxisPixel = x2pix(traceXaxis);
-            
-            if ((traceXaxisPixel >= 0) && (traceXaxisPixel <= graphBounds.width)) {
-                
-                // Use the Polar graph trace only if we have one polar graph to
-                // sonify and no other graphs to sonify.
-                if ((solver.getSonifyPolarCount() == 1) &&
-                        (solver.getSonifyCartesianCount() == 0)) {
-                    
-                    int traceYaxisPixel = y2pix(traceYaxis);
-                    if (traceYaxisPixel == 0) {
-                        traceYaxisPixel = 1; // <== TODO: Why is this needed?????
-                    }
-                    
-                    // Draw a blue ball with a line around it.
-                    double x = (traceXaxisPixel >= 0) ? traceXaxisPixel - 3 : traceXaxisPixel + 3;
-                    double y = (traceYaxisPixel >= 0) ? traceYaxisPixel - 3 : traceYaxisPixel + 3;
-                    g2.setColor(Color.blue);
-                    g2.fill(new Ellipse2D.Double(x, y, BALL_DIAMETER, BALL_DIAMETER));
-                    
-                    // Moving Object Simulation (circle)
-                    g2.setColor(Color.white);
-                    g2.draw(new Ellipse2D.Double(x, y, BALL_DIAMETER, BALL_DIAMETER));
-                } else {
-                    g2.setColor(Color.white);
-                    drawLine(traceXaxisPixel, graphBounds.height, traceXaxisPixel, 0, g2);
-                }
-            }
+            drawSonificationTrace(g2);
         }
         
         // Draw the simulation Ball.
@@ -702,283 +601,34 @@ public class CartesianGraph extends JPanel {
     }
 
     private void setupGraph(Graphics2D g2) {
-        // Reset the clip region to the size of our bounds.
-        g2.setClip(0, 0, bounds.width, bounds.height);
-
-        if (useBlackAndWhiteShade) {
-            g2.setColor(Color.white);
-            g2.fillRect(0, 0, bounds.width, bounds.height);
-            g2.setColor(Color.black);
-        } else {
-            g2.setColor(currentSettings.getBackgroundColor());
-            g2.fillRect(0, 0, bounds.width, bounds.height);
-            g2.setColor(currentSettings.getAxisColor());
-        }
-
-        // Axis lines use a basic solid line that is 1 pixel wide.
-        g2.setStroke(new BasicStroke(1));
-
-        int xAxisPixel = -1;
-        if ((solver.getLeft() < 0.0) && (solver.getRight() > 0.0)) {
-            xAxisPixel = x2pix(0.0);
-            drawLine(xAxisPixel, graphBounds.height, xAxisPixel, 0, g2);
-        } // end if
-
-        int yAxisPixel = -1;
-        if ((solver.getTop() > 0.0) && (solver.getBottom() < 0.0)) {
-            yAxisPixel = y2pix(0.0);
-            drawLine(0, yAxisPixel, graphBounds.width, yAxisPixel, g2);
-        } // end if
-
-        // Grid uses dashed lines.
-        BasicStroke dashedStroke = new BasicStroke(1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 1.0f, new float[] { 1.0f }, 0.0f);
-        g2.setStroke(dashedStroke);
-
-        String axisLbl;
-        int w,xi,yi;
-
-        double delta = MathUtil.findDelta(solverBounds.right - solverBounds.left);
-        double lastValue = solverBounds.right + 0.5 * delta;
-        int labelYPos = graphBounds.height + bottomBorderHeight - fontMetrics.getMaxDescent();
-
-        // Draw the X axis labels.
-        for (double x = delta * Math.ceil(solverBounds.left / delta); x < lastValue; x += delta) {
-            xi = x2pix(x);
-
-            if (Math.abs(xi - xAxisPixel) > 3) {
-                if (useBlackAndWhiteShade) {
-                    g2.setColor(Color.lightGray);
-                } else {
-                    g2.setColor(currentSettings.getGridColor());
-                }
-                drawLine(xi, 0, xi, graphBounds.height, g2);
-            }
-            axisLbl = displayDouble(x);
-            if (useBlackAndWhiteShade) {
-                g2.setColor(Color.darkGray);
-            } else {
-                g2.setColor(currentSettings.getAxisColor());
-            }
-            g2.drawString(axisLbl, xi, labelYPos);
-        } // end for x
-
-        delta = MathUtil.findDelta(solverBounds.top - solverBounds.bottom);
-        lastValue = solverBounds.top + 0.5 * delta;
-
-        // Draw the Y axis labels.
-        for (double y = delta * Math.ceil(solverBounds.bottom / delta); y < lastValue; y += delta) {
-            yi = y2pix(y);
-
-            if (Math.abs(yi - yAxisPixel) > 3) {
-                if (useBlackAndWhiteShade) {
-                    g2.setColor(Color.lightGray);
-                } else {
-                    g2.setColor(currentSettings.getGridColor());
-                }
-                drawLine(0, yi, graphBounds.width, yi, g2);
-            }
-
-            axisLbl = displayDouble(y);
-            w = (int)(((fontMetrics.getHeight() + 5.0) * (graphBounds.height - yi)) / graphBounds.height);
-            if (useBlackAndWhiteShade) {
-                g2.setColor(Color.darkGray);
-            } else {
-                g2.setColor(currentSettings.getAxisColor());
-            }
-            g2.drawString(axisLbl, graphBounds.width, yi + w - fontMetrics.getMaxDescent());
-        } // end for y
-
-        // Clip any drawing outside of our graph bounds.
-        g2.setClip(0, 0, graphBounds.width, graphBounds.height);
+        renderer().setupGraph(solver, graphLayout(), g2);
     }
 
     private void graphData(Graphics2D g2) {
-        int w;
-        cachedPath = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
-        cachedScatterPlotPath = null;
-
-        Solution solution;
-        AnalyzedData analyzedData;
-        GraphTrail[] graphTrails;
-        PointXY[] points;
-        double[] xData,yData;
-        int i,numPoints,numTrails;
-        int xp,yp,xdrawn,ydrawn,leftIndex,rightIndex;
-        int numSolutions = solver.size();
-
-        // Draw each of the solutions.
-        for (int solutionIndex = 0; solutionIndex < numSolutions; solutionIndex++) {
-            solution = solver.get(solutionIndex);
-            graphTrails = solution.getGraphTrails();
-
-            if (solution.isShowGraph() && (graphTrails != null)) {
-                numTrails = graphTrails.length;
-
-                for (i = 0; i < numTrails; i++) {
-                    points = graphTrails[i].getPoints();
-                    numPoints = (points != null) ? points.length : 0;
-                    if (numPoints < 2) {
-                        continue;
-                    }
-
-                    // Move to the first point in the trail.
-                    xp = x2pix(points[0].x);
-                    yp = y2pix(points[0].y);
-                    cachedPath.moveTo(xp,yp);
-
-                    // Draw the first line segment and setup the xdrawn and ydrawn values.
-                    xp = x2pix(points[1].x);
-                    yp = y2pix(points[1].y);
-                    cachedPath.lineTo(xp,yp);
-                    xdrawn = xp;
-                    ydrawn = yp;
-
-                    // Draw the remaining line segments.
-                    for (w = 2; w < numPoints; w++) {
-                        xp = x2pix(points[w].x);
-                        yp = y2pix(points[w].y);
-
-                        // Draw the line if we have not drawn it to this point before.
-                        // This will exclude duplicates.
-                        if ((xp != xdrawn) || (yp != ydrawn)) {
-                            cachedPath.lineTo(xp,yp);
-                            xdrawn = xp;
-                            ydrawn = yp;
-                        }
-                    }
-
-                    // Move to the last point drawn and close the path.
-                    cachedPath.moveTo(xdrawn,ydrawn);
-                    cachedPath.closePath();
-                }
-
-                // Generate the real data scatter-plot path.
-                if (currentSettings.isDataPointsShown() &&
-                        (solution.getAnalyzedItem() instanceof AnalyzedData)) {
-
-                    analyzedData = (AnalyzedData)solution.getAnalyzedItem();
-                    xData = analyzedData.getXValues();
-                    yData = analyzedData.getYValues();
-                    leftIndex = analyzedData.getLeftIndexBound();
-                    rightIndex = analyzedData.getRightIndexBound();
-
-                    if ((xData != null) && (yData != null) && (rightIndex >= 0) && (leftIndex <= rightIndex)) {
-                        if (cachedScatterPlotPath == null) {
-                            cachedScatterPlotPath = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
-                        }
-
-                        // Draw the first point and setup the xdrawn and ydrawn values.
-                        xp = x2pix(xData[leftIndex]);
-                        yp = y2pix(yData[leftIndex]);
-                        cachedScatterPlotPath.moveTo(xp,yp);
-                        cachedScatterPlotPath.lineTo(xp,yp);
-                        xdrawn = xp;
-                        ydrawn = yp;
-
-                        // Draw the remaining points.
-                        for (i = leftIndex+1; i <= rightIndex; i++) {
-                            xp = x2pix(xData[i]);
-                            yp = y2pix(yData[i]);
-
-                            // Draw the point if we have not drawn it before.
-                            // This will exclude duplicates.
-                            if ((xp != xdrawn) || (yp != ydrawn)) {
-                                cachedScatterPlotPath.moveTo(xp,yp);
-                                cachedScatterPlotPath.lineTo(xp,yp);
-                                xdrawn = xp;
-                                ydrawn = yp;
-                            }
-                        }
-
-                        // Move to the last point drawn and close the path.
-                        cachedScatterPlotPath.moveTo(xdrawn,ydrawn);
-                        cachedScatterPlotPath.closePath();
-                    }
-                }
-            }
-        }
-
-        if (userSpecifiedStroke.getLineWidth() != currentSettings.getLineSize()) {
-            userSpecifiedStroke = new BasicStroke(currentSettings.getLineSize());
-        }
-        g2.setStroke(userSpecifiedStroke);
-
-        // Set the line color to use for the plotted data.
-        if (useBlackAndWhiteShade) {
-            g2.setColor(Color.black);
-        } else {
-            g2.setColor(currentSettings.getLineColor());
-        }
-
-        // Enable antialiasing
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        // Draw the line path.
-        g2.draw(cachedPath);
-
-        // Disable antialiasing
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        GeneralPath[] paths = renderer().graphData(solver, graphLayout(), g2);
+        cachedPath = paths[0];
+        cachedScatterPlotPath = paths[1];
+    }
 
-        // Draw the scatter plot path.
-        if ((cachedScatterPlotPath != null) && currentSettings.isDataPointsShown()) {
-            // Draw the real-data points as a dot with an odd width that is larger
-            // than the line width used to line-plot the model data.
-            int lineWidth = Math.max(3,(2 * currentSettings.getLineSize()) - 1);
-            if (scatterPlotStroke.getLineWidth() != lineWidth) {
-                scatterPlotStroke = new BasicStroke(lineWidth);
-            }
-            g2.setStroke(scatterPlotStroke);
-            if (useBlackAndWhiteShade) {
-                g2.setColor(Color.black);
-            } else {
-                g2.setColor(currentSettings.getDataPointColor());
-            }
-            g2.draw(cachedScatterPlotPath);
-        }
+    private void drawSonificationTrace(Graphics2D g2) {
+        renderer().drawSonificationTrace(solver, graphLayout(), g2, traceXaxis, traceYaxis);
     }
 
+    /**
+     * Returns a renderer for the current settings and drawing options. The
+     * drawing itself is shared with the headless <code>CartesianGraphRenderer</code>.
+     */
+    private CartesianGraphRenderer renderer() {
+        return new CartesianGraphRenderer(currentSettings, useBlackAndWhiteShade, use1To1AspectRatio);
+    }
 
-    private void drawLine(int x1, int y1, int x2, int y2, Graphics2D g2) {
-        g2.draw(new Line2D.Float(x1, y1, x2, y2));
-    } // end drawLine
+    private CartesianGraphRenderer.Layout graphLayout() {
+        return new CartesianGraphRenderer.Layout(bounds, graphBounds, solverBounds, fontMetrics, bottomBorderHeight);
+    }
 	
 	private void nullifyCachedPaths() {
         cachedPath = null;
         cachedScatterPlotPath = null;
     }
     
-	private int x2pix(double x) {
-        // We need to do clipping to avoid a known Java2D bug caused by drawing
-        // lines for large coordinates with AntiAliasing turn on. DDexter 12/8/2003
-        if (x < solverBounds.left) {
-            return -1;
-        }
-        if (x > solverBounds.right) {
-            return bounds.width + 1;
-        }
-        return (int)(((x - solverBounds.left) / (solverBounds.right - solverBounds.left)) * graphBounds.width);
-    } // end x2pix
-    
-    private int y2pix(double y) {
-        // We need to do clipping to avoid a known Java2D bug caused by drawing
-        // lines for large coordinates with AntiAliasing turn on. DDexter 12/8/2003
-        if (y > solverBounds.top) {
-            return -1;
-        }
-        if (y < solverBounds.bottom) {
-            return bounds.height + 1;
-        }
-        return (int)(((solverBounds.top - y) / (solverBounds.top - solverBounds.bottom)) * graphBounds.height);
-    } // end y2pix
-    
-	private String displayDouble(double x) {
-        if (x < -MAX_VALUE) {
-            return "-infinity";
-        }
-        if (x > MAX_VALUE) {
-            return "infinity";
-        }
-        return displayNumberFormat.format(x);
-    } // end displayDouble
-    
 } // end class CartesianGraph
@@ -0,0 +1,594 @@
+/*
+ * Copyright 2006, United States Government as represented by the Administrator
+ * for the National Aeronautics and Space Administration. No copyright is
+ * claimed in the United States under Title 17, U.S. Code. All Other Rights
+ * Reserved.
+ */
+package gov.nasa.ial.mde.ui.graph;
+
+import gov.nasa.ial.mde.math.Bounds;
+import gov.nasa.ial.mde.math.PointXY;
+import gov.nasa.ial.mde.properties.MdeSettings;
+import gov.nasa.ial.mde.solver.GraphTrail;
+import gov.nasa.ial.mde.solver.Solution;
+import gov.nasa.ial.mde.solver.Solver;
+import gov.nasa.ial.mde.solver.symbolic.AnalyzedData;
+import gov.nasa.ial.mde.util.MathUtil;
+import gov.nasa.ial.mde.util.StageTimer;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.text.NumberFormat;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.svggen.SVGGraphics2D;
+import org.apache.batik.svggen.SVGGraphics2DIOException;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+
+/**
+ * The <code>CartesianGraphRenderer</code> draws the solutions found by a
+ * <code>Solver</code> onto any <code>Graphics2D</code> target of an explicit
+ * width and height. Unlike <code>CartesianGraph</code> it is not a Swing
+ * component, so it needs no AWT peers or component hierarchy and works with
+ * <code>java.awt.headless=true</code>.
+ * <p>
+ * A renderer only holds its immutable drawing options. All per-drawing state
+ * is kept on the stack, so one instance can be shared and called from many
+ * threads at once, as long as each thread draws its own <code>Solver</code>.
+ *
+ * @version 1.0
+ * @see CartesianGraph
+ * @see gov.nasa.ial.mde.solver.Solver
+ */
+public class CartesianGraphRenderer {
+
+    /** Default width of a rendered graph, the preferred size of <code>CartesianGraph</code>. */
+    public static final int DEFAULT_WIDTH = 300;
+
+    /** Default height of a rendered graph, the preferred size of <code>CartesianGraph</code>. */
+    public static final int DEFAULT_HEIGHT = 300;
+
+    /** The font used for the axis labels. */
+    static final Font LABEL_FONT = new Font("SansSerif", Font.PLAIN, 9);
+
+    private static final int BALL_RADIUS = 4;
+    private static final int BALL_DIAMETER = 2 * BALL_RADIUS;
+
+    private static final double MAX_VALUE = Double.MAX_VALUE; // was 1000.0
+
+    private final MdeSettings settings;
+    private final boolean useBlackAndWhiteShade;
+    private final boolean use1To1AspectRatio;
+
+    @SuppressWarnings("unused")
+    private CartesianGraphRenderer() {
+        throw new RuntimeException("Default constructor not allowed.");
+    }
+
+    /**
+     * Creates a color renderer with a one-to-one aspect ratio.
+     *
+     * @param settings the settings to use for the graph.
+     */
+    public CartesianGraphRenderer(MdeSettings settings) {
+        this(settings, false, true);
+    }
+
+    /**
+     * Creates a renderer with the specified drawing options.
+     *
+     * @param settings the settings to use for the graph, which must not be
+     * changed while a drawing is in progress.
+     * @param useBlackAndWhiteShade true to draw in black and white with shades of gray.
+     * @param use1To1AspectRatio true to draw with a one-to-one aspect ratio.
+     */
+    public CartesianGraphRenderer(MdeSettings settings, boolean useBlackAndWhiteShade, boolean use1To1AspectRatio) {
+        this.settings = settings;
+        this.useBlackAndWhiteShade = useBlackAndWhiteShade;
+        this.use1To1AspectRatio = use1To1AspectRatio;
+    }
+
+    /**
+     * Draws the graph of the solutions from the solver without a
+     * sonification trace.
+     *
+     * @param solver the solver whose solutions are drawn.
+     * @param g2 the target to draw to.
+     * @param width the width of the drawing area in pixels.
+     * @param height the height of the drawing area in pixels.
+     */
+    public void render(Solver solver, Graphics2D g2, int width, int height) {
+        render(solver, g2, width, height, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Draws the graph of the solutions from the solver, and the sonification
+     * trace at the given coordinates if the trace is enabled in the settings.
+     *
+     * @param solver the solver whose solutions are drawn.
+     * @param g2 the target to draw to.
+     * @param width the width of the drawing area in pixels.
+     * @param height the height of the drawing area in pixels.
+     * @param traceX the X coordinate of the trace.
+     * @param traceY the Y coordinate of the trace.
+     */
+    public void render(Solver solver, Graphics2D g2, int width, int height, double traceX, double traceY) {
+        Layout layout = createLayout(solver, new Rectangle(0, 0, width, height), g2.getFontMetrics(LABEL_FONT));
+        g2.setFont(LABEL_FONT);
+        setupGraph(solver, layout, g2);
+        graphData(solver, layout, g2);
+
+        // Enable antialiasing
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setStroke(new BasicStroke(settings.getLineSize()));
+
+        // Draw the sonification trace.
+        if (settings.showTrace()) {
+            drawSonificationTrace(solver, layout, g2, traceX, traceY);
+        }
+
+        // Disable antialiasing
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+    }
+
+    /**
+     * Returns the graph of the solutions from the solver as an SVG document.
+     *
+     * @param solver the solver whose solutions are drawn.
+     * @param width the width of the graph in pixels.
+     * @param height the height of the graph in pixels.
+     * @return the SVG document, or null if it could not be written.
+     */
+    public String getSVG(Solver solver, int width, int height) {
+        long start = StageTimer.start();
+        SVGGraphics2D g2 = createSVGGraphics();
+        render(solver, g2, width, height);
+        String svg = streamSVG(g2);
+        StageTimer.stop(StageTimer.RENDER, start);
+        return svg;
+    }
+
+    /**
+     * Creates an SVG generator backed by a new, empty SVG document.
+     *
+     * @return the SVG generator.
+     */
+    static SVGGraphics2D createSVGGraphics() {
+        // Get a DOMImplementation.
+        DOMImplementation domImpl = GenericDOMImplementation.getDOMImplementation();
+
+        // Create an instance of org.w3c.dom.Document.
+        String svgNS = "http://www.w3.org/2000/svg";
+        Document document = domImpl.createDocument(svgNS, "svg", null);
+
+        // Create an instance of the SVG Generator.
+        return new SVGGraphics2D(document);
+    }
+
+    /**
+     * Writes out everything drawn to the SVG generator as a UTF-8 SVG document.
+     *
+     * @param g2 the SVG generator.
+     * @return the SVG document, or null if it could not be written.
+     */
+    static String streamSVG(SVGGraphics2D g2) {
+        boolean useCSS = true; // we want to use CSS style attributes
+        String result = null;
+        Writer out;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            out = new OutputStreamWriter(baos, "UTF-8");
+            g2.stream(out, useCSS);
+            result = new String(baos.toByteArray(), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        } catch (SVGGraphics2DIOException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    /**
+     * Computes the pixel layout of a graph drawn in the given area.
+     *
+     * @param solver the solver whose bounds are drawn.
+     * @param bounds the drawing area.
+     * @param fontMetrics metrics of the label font on the drawing target.
+     * @return the layout.
+     */
+    Layout createLayout(Solver solver, Rectangle bounds, FontMetrics fontMetrics) {
+        int sideBorderWidth = fontMetrics.stringWidth("-999.999");
+        int bottomBorderHeight = fontMetrics.getHeight() + 5;
+        Bounds solverBounds = new Bounds(solver.getBounds());
+        Rectangle graphBounds = new Rectangle(bounds.x, bounds.y,
+                bounds.width - sideBorderWidth, bounds.height - bottomBorderHeight);
+
+        // Force the graph to a 1:1 aspect ratio by adjusting the graph bounds.
+        if (use1To1AspectRatio) {
+            // Now adjust to the bounds of the data to be drawn.
+            double deltaWidth = (solverBounds.right - solverBounds.left) / graphBounds.width;
+            double deltaHeight = (solverBounds.top - solverBounds.bottom) / graphBounds.height;
+            if (deltaWidth < deltaHeight) {
+                graphBounds.width = (int)Math.round(graphBounds.width * (deltaWidth / deltaHeight));
+            } else if (deltaHeight < deltaWidth) {
+                graphBounds.height = (int)Math.round(graphBounds.height * (deltaHeight / deltaWidth));
+            }
+        }
+        return new Layout(bounds, graphBounds, solverBounds, fontMetrics, bottomBorderHeight);
+    }
+
+    /**
+     * Draws the background, axes, grid and axis labels.
+     *
+     * @param solver the solver whose bounds are drawn.
+     * @param layout the pixel layout of the graph.
+     * @param g2 the target to draw to.
+     */
+    void setupGraph(Solver solver, Layout layout, Graphics2D g2) {
+        Rectangle bounds = layout.bounds;
+        Rectangle graphBounds = layout.graphBounds;
+        Bounds solverBounds = layout.solverBounds;
+        FontMetrics fontMetrics = layout.fontMetrics;
+
+        // Reset the clip region to the size of our bounds.
+        g2.setClip(0, 0, bounds.width, bounds.height);
+
+        if (useBlackAndWhiteShade) {
+            g2.setColor(Color.white);
+            g2.fillRect(0, 0, bounds.width, bounds.height);
+            g2.setColor(Color.black);
+        } else {
+            g2.setColor(settings.getBackgroundColor());
+            g2.fillRect(0, 0, bounds.width, bounds.height);
+            g2.setColor(settings.getAxisColor());
+        }
+
+        // Axis lines use a basic solid line that is 1 pixel wide.
+        g2.setStroke(new BasicStroke(1));
+
+        int xAxisPixel = -1;
+        if ((solver.getLeft() < 0.0) && (solver.getRight() > 0.0)) {
+            xAxisPixel = layout.x2pix(0.0);
+            drawLine(xAxisPixel, graphBounds.height, xAxisPixel, 0, g2);
+        } // end if
+
+        int yAxisPixel = -1;
+        if ((solver.getTop() > 0.0) && (solver.getBottom() < 0.0)) {
+            yAxisPixel = layout.y2pix(0.0);
+            drawLine(0, yAxisPixel, graphBounds.width, yAxisPixel, g2);
+        } // end if
+
+        // Grid uses dashed lines.
+        BasicStroke dashedStroke = new BasicStroke(1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 1.0f, new float[] { 1.0f }, 0.0f);
+        g2.setStroke(dashedStroke);
+
+        String axisLbl;
+        int w,xi,yi;
+
+        double delta = MathUtil.findDelta(solverBounds.right - solverBounds.left);
+        double lastValue = solverBounds.right + 0.5 * delta;
+        int labelYPos = graphBounds.height + layout.bottomBorderHeight - fontMetrics.getMaxDescent();
+
+        // Draw the X axis labels.
+        for (double x = delta * Math.ceil(solverBounds.left / delta); x < lastValue; x += delta) {
+            xi = layout.x2pix(x);
+
+            if (Math.abs(xi - xAxisPixel) > 3) {
+                if (useBlackAndWhiteShade) {
+                    g2.setColor(Color.lightGray);
+                } else {
+                    g2.setColor(settings.getGridColor());
+                }
+                drawLine(xi, 0, xi, graphBounds.height, g2);
+            }
+            axisLbl = layout.displayDouble(x);
+            if (useBlackAndWhiteShade) {
+                g2.setColor(Color.darkGray);
+            } else {
+                g2.setColor(settings.getAxisColor());
+            }
+            g2.drawString(axisLbl, xi, labelYPos);
+        } // end for x
+
+        delta = MathUtil.findDelta(solverBounds.top - solverBounds.bottom);
+        lastValue = solverBounds.top + 0.5 * delta;
+
+        // Draw the Y axis labels.
+        for (double y = delta * Math.ceil(solverBounds.bottom / delta); y < lastValue; y += delta) {
+            yi = layout.y2pix(y);
+
+            if (Math.abs(yi - yAxisPixel) > 3) {
+                if (useBlackAndWhiteShade) {
+                    g2.setColor(Color.lightGray);
+                } else {
+                    g2.setColor(settings.getGridColor());
+                }
+                drawLine(0, yi, graphBounds.width, yi, g2);
+            }
+
+            axisLbl = layout.displayDouble(y);
+            w = (int)(((fontMetrics.getHeight() + 5.0) * (graphBounds.height - yi)) / graphBounds.height);
+            if (useBlackAndWhiteShade) {
+                g2.setColor(Color.darkGray);
+            } else {
+                g2.setColor(settings.getAxisColor());
+            }
+            g2.drawString(axisLbl, graphBounds.width, yi + w - fontMetrics.getMaxDescent());
+        } // end for y
+
+        // Clip any drawing outside of our graph bounds.
+        g2.setClip(0, 0, graphBounds.width, graphBounds.height);
+    }
+
+    /**
+     * Draws the graph trails of every shown solution and the scatter plot of
+     * any real data.
+     *
+     * @param solver the solver whose solutions are drawn.
+     * @param layout the pixel layout of the graph.
+     * @param g2 the target to draw to.
+     * @return the line path and the scatter-plot path, which is null if
+     * there is no real data to plot.
+     */
+    GeneralPath[] graphData(Solver solver, Layout layout, Graphics2D g2) {
+        int w;
+        GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+        GeneralPath scatterPlotPath = null;
+
+        Solution solution;
+        AnalyzedData analyzedData;
+        GraphTrail[] graphTrails;
+        PointXY[] points;
+        double[] xData,yData;
+        int i,numPoints,numTrails;
+        int xp,yp,xdrawn,ydrawn,leftIndex,rightIndex;
+        int numSolutions = solver.size();
+
+        // Draw each of the solutions.
+        for (int solutionIndex = 0; solutionIndex < numSolutions; solutionIndex++) {
+            solution = solver.get(solutionIndex);
+            graphTrails = solution.getGraphTrails();
+
+            if (solution.isShowGraph() && (graphTrails != null)) {
+                numTrails = graphTrails.length;
+
+                for (i = 0; i < numTrails; i++) {
+                    points = graphTrails[i].getPoints();
+                    numPoints = (points != null) ? points.length : 0;
+                    if (numPoints < 2) {
+                        continue;
+                    }
+
+                    // Move to the first point in the trail.
+                    xp = layout.x2pix(points[0].x);
+                    yp = layout.y2pix(points[0].y);
+                    path.moveTo(xp,yp);
+
+                    // Draw the first line segment and setup the xdrawn and ydrawn values.
+                    xp = layout.x2pix(points[1].x);
+                    yp = layout.y2pix(points[1].y);
+                    path.lineTo(xp,yp);
+                    xdrawn = xp;
+                    ydrawn = yp;
+
+                    // Draw the remaining line segments.
+                    for (w = 2; w < numPoints; w++) {
+                        xp = layout.x2pix(points[w].x);
+                        yp = layout.y2pix(points[w].y);
+
+                        // Draw the line if we have not drawn it to this point before.
+                        // This will exclude duplicates.
+                        if ((xp != xdrawn) || (yp != ydrawn)) {
+                            path.lineTo(xp,yp);
+                            xdrawn = xp;
+                            ydrawn = yp;
+                        }
+                    }
+
+                    // Move to the last point drawn and close the path.
+                    path.moveTo(xdrawn,ydrawn);
+                    path.closePath();
+                }
+
+                // Generate the real data scatter-plot path.
+                if (settings.isDataPointsShown() &&
+                        (solution.getAnalyzedItem() instanceof AnalyzedData)) {
+
+                    analyzedData = (AnalyzedData)solution.getAnalyzedItem();
+                    xData = analyzedData.getXValues();
+                    yData = analyzedData.getYValues();
+                    leftIndex = analyzedData.getLeftIndexBound();
+                    rightIndex = analyzedData.getRightIndexBound();
+
+                    if ((xData != null) && (yData != null) && (rightIndex >= 0) && (leftIndex <= rightIndex)) {
+                        if (scatterPlotPath == null) {
+                            scatterPlotPath = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+                        }
+
+                        // Draw the first point and setup the xdrawn and ydrawn values.
+                        xp = layout.x2pix(xData[leftIndex]);
+                        yp = layout.y2pix(yData[leftIndex]);
+                        scatterPlotPath.moveTo(xp,yp);
+                        scatterPlotPath.lineTo(xp,yp);
+                        xdrawn = xp;
+                        ydrawn = yp;
+
+                        // Draw the remaining points.
+                        for (i = leftIndex+1; i <= rightIndex; i++) {
+                            xp = layout.x2pix(xData[i]);
+                            yp = layout.y2pix(yData[i]);
+
+                            // Draw the point if we have not drawn it before.
+                            // This will exclude duplicates.
+                            if ((xp != xdrawn) || (yp != ydrawn)) {
+                                scatterPlotPath.moveTo(xp,yp);
+                                scatterPlotPath.lineTo(xp,yp);
+                                xdrawn = xp;
+                                ydrawn = yp;
+                            }
+                        }
+
+                        // Move to the last point drawn and close the path.
+                        scatterPlotPath.moveTo(xdrawn,ydrawn);
+                        scatterPlotPath.closePath();
+                    }
+                }
+            }
+        }
+
+        g2.setStroke(new BasicStroke(settings.getLineSize()));
+
+        // Set the line color to use for the plotted data.
+        if (useBlackAndWhiteShade) {
+            g2.setColor(Color.black);
+        } else {
+            g2.setColor(settings.getLineColor());
+        }
+
+        // Enable antialiasing
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        // Draw the line path.
+        g2.draw(path);
+
+        // Disable antialiasing
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+
+        // Draw the scatter plot path.
+        if ((scatterPlotPath != null) && settings.isDataPointsShown()) {
+            // Draw the real-data points as a dot with an odd width that is larger
+            // than the line width used to line-plot the model data.
+            int lineWidth = Math.max(3,(2 * settings.getLineSize()) - 1);
+            g2.setStroke(new BasicStroke(lineWidth));
+            if (useBlackAndWhiteShade) {
+                g2.setColor(Color.black);
+            } else {
+                g2.setColor(settings.getDataPointColor());
+            }
+            g2.draw(scatterPlotPath);
+        }
+        return new GeneralPath[] { path, scatterPlotPath };
+    }
+
+    /**
+     * Draws the sonification trace at the given coordinates. If the solution
+     * is polar then a ball is drawn, otherwise a vertical line.
+     *
+     * @param solver the solver being sonified.
+     * @param layout the pixel layout of the graph.
+     * @param g2 the target to draw to.
+     * @param traceX the X coordinate of the trace.
+     * @param traceY the Y coordinate of the trace.
+     */
+    void drawSonificationTrace(Solver solver, Layout layout, Graphics2D g2, double traceX, double traceY) {
+        int traceXaxisPixel = layout.x2pix(traceX);
+
+        if ((traceXaxisPixel >= 0) && (traceXaxisPixel <= layout.graphBounds.width)) {
+
+            // Use the Polar graph trace only if we have one polar graph to
+            // sonify and no other graphs to sonify.
+            if ((solver.getSonifyPolarCount() == 1) &&
+                    (solver.getSonifyCartesianCount() == 0)) {
+
+                int traceYaxisPixel = layout.y2pix(traceY);
+                if (traceYaxisPixel == 0) {
+                    traceYaxisPixel = 1; // <== TODO: Why is this needed?????
+                }
+
+                // Draw a blue ball with a line around it.
+                double x = (traceXaxisPixel >= 0) ? traceXaxisPixel - 3 : traceXaxisPixel + 3;
+                double y = (traceYaxisPixel >= 0) ? traceYaxisPixel - 3 : traceYaxisPixel + 3;
+                g2.setColor(Color.blue);
+                g2.fill(new Ellipse2D.Double(x, y, BALL_DIAMETER, BALL_DIAMETER));
+
+                // Moving Object Simulation (circle)
+                g2.setColor(Color.white);
+                g2.draw(new Ellipse2D.Double(x, y, BALL_DIAMETER, BALL_DIAMETER));
+            } else {
+                g2.setColor(Color.white);
+                drawLine(traceXaxisPixel, layout.graphBounds.height, traceXaxisPixel, 0, g2);
+            }
+        }
+    }
+
+    private static void drawLine(int x1, int y1, int x2, int y2, Graphics2D g2) {
+        g2.draw(new Line2D.Float(x1, y1, x2, y2));
+    } // end drawLine
+
+    /**
+     * The pixel geometry of one drawing: the drawing area, the part of it
+     * used for the graph itself, and the solver bounds mapped onto it.
+     */
+    static class Layout {
+        final Rectangle bounds;
+        final Rectangle graphBounds;
+        final Bounds solverBounds;
+        final FontMetrics fontMetrics;
+        final int bottomBorderHeight;
+
+        // NumberFormat is not thread-safe so each layout gets its own.
+        private final NumberFormat displayNumberFormat;
+
+        Layout(Rectangle bounds, Rectangle graphBounds, Bounds solverBounds, FontMetrics fontMetrics,
+                int bottomBorderHeight) {
+            this.bounds = bounds;
+            this.graphBounds = graphBounds;
+            this.solverBounds = solverBounds;
+            this.fontMetrics = fontMetrics;
+            this.bottomBorderHeight = bottomBorderHeight;
+
+            // This is used to format the numbers displayed on the graph.
+            displayNumberFormat = NumberFormat.getInstance();
+            displayNumberFormat.setMinimumFractionDigits(1);
+            displayNumberFormat.setMaximumFractionDigits(3);
+        }
+
+        int x2pix(double x) {
+            // We need to do clipping to avoid a known Java2D bug caused by drawing
+            // lines for large coordinates with AntiAliasing turn on. DDexter 12/8/2003
+            if (x < solverBounds.left) {
+                return -1;
+            }
+            if (x > solverBounds.right) {
+                return bounds.width + 1;
+            }
+            return (int)(((x - solverBounds.left) / (solverBounds.right - solverBounds.left)) * graphBounds.width);
+        } // end x2pix
+
+        int y2pix(double y) {
+            // We need to do clipping to avoid a known Java2D bug caused by drawing
+            // lines for large coordinates with AntiAliasing turn on. DDexter 12/8/2003
+            if (y > solverBounds.top) {
+                return -1;
+            }
+            if (y < solverBounds.bottom) {
+                return bounds.height + 1;
+            }
+            return (int)(((solverBounds.top - y) / (solverBounds.top - solverBounds.bottom)) * graphBounds.height);
+        } // end y2pix
+
+        String displayDouble(double x) {
+            if (x < -MAX_VALUE) {
+                return "-infinity";
+            }
+            if (x > MAX_VALUE) {
+                return "infinity";
+            }
+            return displayNumberFormat.format(x);
+        } // end displayDouble
+    }
+
+} // end class CartesianGraphRenderer
@@ -44,10 +44,13 @@ public class MathUtil {
                                             1.5619206968586225E-16,
                                             8.22063524662433E-18 };
     private final static int MAX_TERMS = inverseFactorials.length;
-    private final static double[] terms = new double[MAX_TERMS];
     
-    private static MdeNumberFormat MNF = MdeNumberFormat.getInstance();
-    private static int defaultNumDigits = -1;
+    // Number formats are not thread-safe, so each thread keeps its own.
+    private static final ThreadLocal<TrimFormat> TRIM_FORMAT = new ThreadLocal<TrimFormat>() {
+        protected TrimFormat initialValue() {
+            return new TrimFormat();
+        }
+    };
 
 	private static final double INV_LOG2 = 1.0 / Math.log(2.0);
 	private static final double INV_LOG10 = 1.0 / Math.log(10.0);
@@ -98,6 +101,7 @@ public class MathUtil {
         }
 
         double r = 0.0, t = x;
+        double[] terms = new double[MAX_TERMS];
         int i, l;
 
         for (l = 0; l < MAX_TERMS; l++, t *= (-x)) {
@@ -131,6 +135,7 @@ public class MathUtil {
 
         int i, l;
         double r = 0.0, t = 1.0;
+        double[] terms = new double[MAX_TERMS];
 
         if (Math.abs(x) < 0.1) {
             for (i = 0; i < n; i++, t *= x) {
@@ -201,13 +206,14 @@ public class MathUtil {
      * number of digits in the number format.
      */
     public static String trimDouble(double x, int numDigits) {
-        if (defaultNumDigits != numDigits) {
-            MNF.setMaximumFractionDigits(defaultNumDigits = numDigits);
-            MNF.setMinimumFractionDigits(0);
-            MNF.setGroupingUsed(false);
+        TrimFormat tf = TRIM_FORMAT.get();
+        if (tf.numDigits != numDigits) {
+            tf.format.setMaximumFractionDigits(tf.numDigits = numDigits);
+            tf.format.setMinimumFractionDigits(0);
+            tf.format.setGroupingUsed(false);
         } // end if
 
-        return MNF.format(x);
+        return tf.format.format(x);
     } // end trimDouble
 
     /**
@@ -494,4 +500,9 @@ public class MathUtil {
 //        System.out.println("The value = " + s);
 //    } // end main
 
+    // A thread's number format for trimDouble and the digits it is set up for.
+    private static class TrimFormat {
+        final MdeNumberFormat format = MdeNumberFormat.getInstance();
+        int numDigits = -1;
+    } // end class TrimFormat
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2006, United States Government as represented by the Administrator
+ * for the National Aeronautics and Space Administration. No copyright is
+ * claimed in the United States under Title 17, U.S. Code. All Other Rights
+ * Reserved.
+ */
+package gov.nasa.ial.mde.util;
+
+/**
+ * Times the expensive stages of solving, describing and graphing an
+ * equation and reports them to an optional {@link Listener}. With no
+ * listener installed a timed stage costs one volatile read.
+ * <p>
+ * A stage is timed like this:
+ * <pre>
+ * long start = StageTimer.start();
+ * ...
+ * StageTimer.stop(StageTimer.PARSE, start);
+ * </pre>
+ * A stage that throws is not reported. Stage times are inclusive, so a stage
+ * that runs inside another one is counted in both.
+ *
+ * @version 1.0
+ */
+public class StageTimer {
+
+    /** Parsing the equation string into an <code>Equation</code>. */
+    public static final String PARSE = "parse";
+
+    /** Sampling the points of an analyzed item over the solver bounds. */
+    public static final String SAMPLE = "sample";
+
+    /** Classifying an analyzed item and computing its features. */
+    public static final String CLASSIFY = "classify";
+
+    /** Transforming the feature XML into a description with XSLT. */
+    public static final String TRANSFORM = "transform";
+
+    /** Rendering the graph of the solutions to SVG. */
+    public static final String RENDER = "render";
+
+    /** All the stage names, in pipeline order. */
+    public static final String[] STAGES = { PARSE, SAMPLE, CLASSIFY, TRANSFORM, RENDER };
+
+    /**
+     * Receives the time taken by each stage. Called on the thread that ran
+     * the stage, so implementations must be thread-safe and fast.
+     */
+    public interface Listener {
+
+        /**
+         * @param stage one of the stage names in {@link StageTimer#STAGES}.
+         * @param nanos the time the stage took in nanoseconds.
+         */
+        void stageCompleted(String stage, long nanos);
+    }
+
+    private static volatile Listener listener;
+
+    /**
+     * Default constructor not allowed.
+     */
+    private StageTimer() {
+        throw new RuntimeException("Default constructor not allowed.");
+    }
+
+    /**
+     * Installs the listener that receives stage times, replacing any previous
+     * one.
+     *
+     * @param l the listener, or null to stop timing.
+     */
+    public static void setListener(Listener l) {
+        listener = l;
+    }
+
+    public static Listener getListener() {
+        return listener;
+    }
+
+    /**
+     * Marks the start of a stage.
+     *
+     * @return the start time to pass to {@link #stop(String, long)}, or 0 if
+     *         no listener is installed.
+     */
+    public static long start() {
+        return (listener != null) ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Marks the end of a stage and reports its time to the listener.
+     *
+     * @param stage one of the stage names in {@link #STAGES}.
+     * @param start the value returned by {@link #start()}.
+     */
+    public static void stop(String stage, long start) {
+        Listener l = listener;
+        if ((l != null) && (start != 0L)) {
+            l.stageCompleted(stage, System.nanoTime() - start);
+        }
+    }
+}